@@ -0,0 +1,235 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.lang.invoke.MethodHandles;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Structured access log: one JSON object per request, written to the logger {@code access}.
+ * <p>
+ * The {@link LogFilter} puts the requests into a ring buffer of preallocated slots, without locks or allocations.
+ * A single thread takes them out, formats them, and writes them, so the request threads never wait for the log file.
+ * When the buffer is full, the request is not logged, but counted as dropped.
+ * The writer reports drops in the access log itself, and {@code GET /metrics} their total.
+ * </p>
+ */
+@Component
+public class AccessLog {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private static final Logger ACCESS = LoggerFactory.getLogger("access");
+  private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  private final Slot[] slots;
+  private final int mask;
+  // Next slot to claim by the request threads, and next slot to write by the writer
+  private final AtomicLong head = new AtomicLong();
+  private volatile long tail;
+  private final LongAdder dropped = new LongAdder();
+  private long droppedReported;
+  private volatile boolean running;
+  private Thread writer;
+
+  /**
+   * Create the access log with an empty buffer.
+   *
+   * @param bufferSize the number of requests the buffer holds, a power of two
+   * @throws IllegalArgumentException if the buffer size is not a power of two
+   */
+  public AccessLog(@Value("${access-log.buffer-size:8192}") int bufferSize) {
+    if (Integer.bitCount(bufferSize) != 1) {
+      throw new IllegalArgumentException("Buffer size %d is not a power of two".formatted(bufferSize));
+    }
+    slots = new Slot[bufferSize];
+    for (int i = 0; i < bufferSize; i++) {
+      slots[i] = new Slot();
+    }
+    mask = bufferSize - 1;
+  }
+
+  /**
+   * Start the thread, that writes the buffered requests to the log.
+   */
+  @PostConstruct
+  public void start() {
+    running = true;
+    writer = new Thread(this::write, "access-log");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Stop the writer, once it has written the requests still in the buffer, waiting for it at most 5 seconds.
+   *
+   * @throws InterruptedException if the thread is interrupted while waiting for the writer
+   */
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    LockSupport.unpark(writer);
+    writer.join(TimeUnit.SECONDS.toMillis(5));
+  }
+
+  /**
+   * Put a finished request into the buffer, or count it as dropped, if the buffer is full.
+   *
+   * @param timestampMillis the time the request arrived, in milliseconds since the epoch
+   * @param requestId the ID of the request, as in the application log
+   * @param ip the address of the client
+   * @param method the HTTP method
+   * @param uri the path of the request
+   * @param query the query string, {@code null} if there is none
+   * @param route the pattern of the handler, that matched the request, {@code null} if none did
+   * @param status the status of the response
+   * @param nanos the time it took to handle the request, in nanoseconds
+   * @param responseBytes the size of the response body, -1 if it is not known
+   * @param userAgent the user agent of the client, {@code null} if it did not send one
+   */
+  public void log(long timestampMillis, String requestId, String ip, String method, String uri, String query, String route,
+                  int status, long nanos, long responseBytes, String userAgent) {
+    long sequence;
+    do {
+      sequence = head.get();
+      if (sequence - tail >= slots.length) {
+        dropped.increment();
+        return;
+      }
+    } while (!head.compareAndSet(sequence, sequence + 1));
+    var slot = slots[(int) sequence & mask];
+    slot.timestampMillis = timestampMillis;
+    slot.requestId = requestId;
+    slot.ip = ip;
+    slot.method = method;
+    slot.uri = uri;
+    slot.query = query;
+    slot.route = route;
+    slot.status = status;
+    slot.nanos = nanos;
+    slot.responseBytes = responseBytes;
+    slot.userAgent = userAgent;
+    // Publishes the fields to the writer
+    slot.published = sequence + 1;
+  }
+
+  /**
+   * Get the number of requests, that were not logged, because the buffer was full.
+   *
+   * @return the total since the start
+   */
+  public long dropped() {
+    return dropped.sum();
+  }
+
+  private void write() {
+    var line = new StringBuilder(512);
+    while (running || tail != head.get()) {
+      var sequence = tail;
+      var slot = slots[(int) sequence & mask];
+      if (slot.published != sequence + 1) {
+        reportDropped(line);
+        if (!running && tail == head.get()) {
+          break;
+        }
+        LockSupport.parkNanos(IDLE_NANOS);
+        continue;
+      }
+      line.setLength(0);
+      slot.appendTo(line);
+      slot.clear();
+      tail = sequence + 1;
+      try {
+        ACCESS.info(line.toString());
+      } catch (RuntimeException e) {
+        LOG.error("Could not write the access log", e);
+      }
+    }
+    reportDropped(line);
+  }
+
+  private void reportDropped(StringBuilder line) {
+    var total = dropped.sum();
+    if (total != droppedReported) {
+      line.setLength(0);
+      line.append("{\"time\":\"").append(Instant.now()).append("\",\"dropped\":").append(total - droppedReported).append('}');
+      ACCESS.warn(line.toString());
+      LOG.warn("Access log buffer full, dropped {} requests", total - droppedReported);
+      droppedReported = total;
+    }
+  }
+
+  private static final class Slot {
+    private volatile long published;
+    private long timestampMillis;
+    private String requestId;
+    private String ip;
+    private String method;
+    private String uri;
+    private String query;
+    private String route;
+    private int status;
+    private long nanos;
+    private long responseBytes;
+    private String userAgent;
+
+    void appendTo(StringBuilder line) {
+      line.append("{\"time\":\"").append(Instant.ofEpochMilli(timestampMillis)).append('"');
+      field(line, "r", requestId);
+      field(line, "ip", ip);
+      field(line, "method", method);
+      field(line, "uri", uri);
+      field(line, "query", query);
+      field(line, "route", route);
+      line.append(",\"status\":").append(status);
+      line.append(",\"ms\":").append(nanos / 1000 / 1000.0);
+      if (responseBytes >= 0) {
+        line.append(",\"bytes\":").append(responseBytes);
+      }
+      field(line, "ua", userAgent);
+      line.append('}');
+    }
+
+    // Drop the references, so the strings of the request can be collected
+    void clear() {
+      requestId = null;
+      ip = null;
+      method = null;
+      uri = null;
+      query = null;
+      route = null;
+      userAgent = null;
+    }
+
+    private static void field(StringBuilder line, String name, String value) {
+      if (value == null) {
+        return;
+      }
+      line.append(",\"").append(name).append("\":\"");
+      for (int i = 0; i < value.length(); i++) {
+        var c = value.charAt(i);
+        switch (c) {
+          case '"' -> line.append("\\\"");
+          case '\\' -> line.append("\\\\");
+          case '\n' -> line.append("\\n");
+          case '\r' -> line.append("\\r");
+          case '\t' -> line.append("\\t");
+          default -> {
+            if (c < ' ') {
+              line.append("\\u%04x".formatted((int) c));
+            } else {
+              line.append(c);
+            }
+          }
+        }
+      }
+      line.append('"');
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.OwnerDto;
+import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * The in-memory caches of the application.
+ * They are bounded and evict the entries least likely to be used again (W-TinyLFU) when they are full,
+ * and record their hits, misses and evictions, which {@code GET /statistics/caches} reports.
+ */
+@Configuration
+public class CacheConfiguration {
+
+  /**
+   * Owners are bounded by their number, as they are all about the same size.
+   *
+   * @param maximumSize the number of owners the cache holds at most
+   * @return the cache of owners by ID
+   */
+  @Bean
+  public Cache<Long, OwnerDto> ownerCache(@Value("${cache.owners.maximum-size:10000}") long maximumSize) {
+    return Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * Horses are bounded by the memory they take, as they vary in size with their texts.
+   *
+   * @param maximumSize the memory the cached horses take at most, estimated
+   * @return the cache of horses by ID
+   */
+  @Bean
+  public Cache<Long, Horse> horseCache(@Value("${cache.horses.maximum-size:64MB}") DataSize maximumSize) {
+    return Caffeine.newBuilder()
+        .maximumWeight(maximumSize.toBytes())
+        .weigher(CacheConfiguration::estimateSize)
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * Estimate the bytes a cached horse takes, with its cache entry:
+   * the entry, the key, the entity with its boxed IDs and date, and two bytes per character of its texts.
+   */
+  private static int estimateSize(Long id, Horse horse) {
+    var size = 200;
+    size += 2 * horse.getName().length();
+    if (horse.getDescription() != null) {
+      size += 56 + 2 * horse.getDescription().length();
+    }
+    return size;
+  }
+}
@@ -0,0 +1,288 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Latencies, response sizes and requests in flight of the HTTP requests, as recorded by the {@link LogFilter},
+ * written in the Prometheus text format by {@code GET /metrics}.
+ * <p>
+ * Requests are grouped by route: the path pattern of their handler, their method and their status.
+ * Recording neither locks nor allocates, once a route has been seen:
+ * the routes are looked up by their pattern, which is the same string for every request of a handler,
+ * and the series of a route are in an array indexed by method and status.
+ * </p>
+ * <p>
+ * The latencies are kept in log-linear buckets, exact below 64 microseconds, and with 32 buckets per power of two above,
+ * so the percentiles are off by at most about 3%.
+ * They are exported as a histogram with a bucket per power of two, and the percentiles as a separate gauge.
+ * </p>
+ */
+@Component
+public class HttpMetrics {
+  // Requests that no handler matched, so the cardinality of the routes is bounded by the handlers
+  static final String UNMATCHED = "UNMATCHED";
+  private static final String[] METHODS = {"GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS", "OTHER"};
+  private static final int MIN_STATUS = 100;
+  private static final int STATUSES = 500;
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+  // Exported bucket bounds, 2^i microseconds for the latencies and 2^i bytes for the sizes
+  private static final int FIRST_LATENCY_BOUND = 6;
+  private static final int LAST_LATENCY_BOUND = 25;
+  private static final int FIRST_SIZE_BOUND = 6;
+  private static final int LAST_SIZE_BOUND = 30;
+
+  private final ConcurrentHashMap<String, Route> routes = new ConcurrentHashMap<>();
+  private final AtomicLongArray inFlight = new AtomicLongArray(METHODS.length);
+
+  /**
+   * Record a request, that is being handled from now on, until it is {@link #finished}.
+   *
+   * @param method the HTTP method of the request
+   */
+  public void started(String method) {
+    inFlight.incrementAndGet(methodIndex(method));
+  }
+
+  /**
+   * Record a finished request.
+   *
+   * @param pattern the path pattern of the handler of the request, {@code null} if there was none
+   * @param method the HTTP method of the request
+   * @param status the HTTP status of the response
+   * @param nanos the time the request took
+   * @param responseBytes the size of the response body, -1 if it is not known
+   */
+  public void finished(String pattern, String method, int status, long nanos, long responseBytes) {
+    var methodIndex = methodIndex(method);
+    inFlight.decrementAndGet(methodIndex);
+    var route = routes.get(pattern == null ? UNMATCHED : pattern);
+    if (route == null) {
+      route = routes.computeIfAbsent(pattern == null ? UNMATCHED : pattern, Route::new);
+    }
+    route.series(methodIndex, status).record(nanos, responseBytes);
+  }
+
+  private static int methodIndex(String method) {
+    return switch (method) {
+      case "GET" -> 0;
+      case "HEAD" -> 1;
+      case "POST" -> 2;
+      case "PUT" -> 3;
+      case "PATCH" -> 4;
+      case "DELETE" -> 5;
+      case "OPTIONS" -> 6;
+      default -> 7;
+    };
+  }
+
+  /**
+   * Write all metrics in the Prometheus text exposition format.
+   *
+   * @param out the text to append the metrics to
+   */
+  public void writeTo(StringBuilder out) {
+    out.append("# HELP http_server_requests_in_flight Requests currently being handled.\n");
+    out.append("# TYPE http_server_requests_in_flight gauge\n");
+    for (int i = 0; i < METHODS.length; i++) {
+      out.append("http_server_requests_in_flight{method=\"").append(METHODS[i]).append("\"} ")
+          .append(inFlight.get(i)).append('\n');
+    }
+
+    Map<String, Route> sorted = new TreeMap<>(routes);
+    out.append("# HELP http_server_requests_seconds Duration of the handled requests.\n");
+    out.append("# TYPE http_server_requests_seconds histogram\n");
+    for (var route : sorted.values()) {
+      route.forEachSeries((labels, series) -> {
+        var cumulative = 0L;
+        for (int bound = FIRST_LATENCY_BOUND; bound <= LAST_LATENCY_BOUND; bound++) {
+          cumulative += series.latency.countBelow(1L << bound, bound == FIRST_LATENCY_BOUND ? 0 : 1L << (bound - 1));
+          sample(out, "http_server_requests_seconds_bucket", labels, "le", Double.toString((1L << bound) / 1e6), cumulative);
+        }
+        sample(out, "http_server_requests_seconds_bucket", labels, "le", "+Inf", series.latency.count());
+        sample(out, "http_server_requests_seconds_count", labels, series.latency.count());
+        sample(out, "http_server_requests_seconds_sum", labels, series.latency.totalNanos.sum() / 1e9);
+      });
+    }
+
+    out.append("# HELP http_server_requests_seconds_percentile Percentiles of the duration of the handled requests.\n");
+    out.append("# TYPE http_server_requests_seconds_percentile gauge\n");
+    for (var route : sorted.values()) {
+      route.forEachSeries((labels, series) -> {
+        for (double quantile : QUANTILES) {
+          sample(out, "http_server_requests_seconds_percentile", labels, "quantile", Double.toString(quantile),
+              series.latency.percentileMicros(quantile) / 1e6);
+        }
+      });
+    }
+
+    out.append("# HELP http_server_response_size_bytes Size of the bodies of the responses.\n");
+    out.append("# TYPE http_server_response_size_bytes histogram\n");
+    for (var route : sorted.values()) {
+      route.forEachSeries((labels, series) -> {
+        var cumulative = 0L;
+        for (int bound = 0; bound <= LAST_SIZE_BOUND; bound++) {
+          cumulative += series.sizes.get(bound);
+          if (bound >= FIRST_SIZE_BOUND) {
+            sample(out, "http_server_response_size_bytes_bucket", labels, "le", Long.toString(1L << bound), cumulative);
+          }
+        }
+        sample(out, "http_server_response_size_bytes_bucket", labels, "le", "+Inf", series.sizeCount.sum());
+        sample(out, "http_server_response_size_bytes_count", labels, series.sizeCount.sum());
+        sample(out, "http_server_response_size_bytes_sum", labels, series.sizeTotal.sum());
+      });
+    }
+  }
+
+  private static void sample(StringBuilder out, String name, String labels, Object value) {
+    out.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+  }
+
+  private static void sample(StringBuilder out, String name, String labels, String label, String labelValue, Object value) {
+    out.append(name).append('{').append(labels).append(',').append(label).append("=\"").append(labelValue).append("\"} ")
+        .append(value).append('\n');
+  }
+
+  private static final class Route {
+    private final String pattern;
+    private final AtomicReferenceArray<Series> series = new AtomicReferenceArray<>(METHODS.length * STATUSES);
+
+    Route(String pattern) {
+      this.pattern = pattern;
+    }
+
+    Series series(int methodIndex, int status) {
+      var statusIndex = Math.max(0, Math.min(status - MIN_STATUS, STATUSES - 1));
+      var index = methodIndex * STATUSES + statusIndex;
+      var existing = series.get(index);
+      if (existing == null) {
+        series.compareAndSet(index, null, new Series());
+        existing = series.get(index);
+      }
+      return existing;
+    }
+
+    void forEachSeries(SeriesConsumer consumer) {
+      for (int i = 0; i < series.length(); i++) {
+        var existing = series.get(i);
+        if (existing != null) {
+          var labels = "route=\"%s\",method=\"%s\",status=\"%d\"".formatted(
+              escape(pattern), METHODS[i / STATUSES], i % STATUSES + MIN_STATUS);
+          consumer.accept(labels, existing);
+        }
+      }
+    }
+
+    private static String escape(String labelValue) {
+      return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+  }
+
+  @FunctionalInterface
+  private interface SeriesConsumer {
+    void accept(String labels, Series series);
+  }
+
+  private static final class Series {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    // Bucket i counts the sizes up to 2^i bytes, that are not in a lower bucket
+    private final AtomicLongArray sizes = new AtomicLongArray(LAST_SIZE_BOUND + 2);
+    private final LongAdder sizeCount = new LongAdder();
+    private final LongAdder sizeTotal = new LongAdder();
+
+    void record(long nanos, long responseBytes) {
+      latency.record(nanos);
+      if (responseBytes >= 0) {
+        var bucket = 64 - Long.numberOfLeadingZeros(Math.max(responseBytes - 1, 0));
+        sizes.incrementAndGet(Math.min(bucket, LAST_SIZE_BOUND + 1));
+        sizeCount.increment();
+        sizeTotal.add(responseBytes);
+      }
+    }
+  }
+
+  /**
+   * Log-linear histogram of durations in microseconds:
+   * exact below 64, above that each power of two is split into 32 buckets.
+   */
+  static final class LatencyHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int EXACT = 2 * SUB_BUCKETS;
+    // 2^36 microseconds are about 19 hours
+    private static final int MAX_EXPONENT = 35;
+    private static final int BUCKETS = EXACT + (MAX_EXPONENT - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalNanos = new LongAdder();
+
+    void record(long nanos) {
+      totalNanos.add(nanos);
+      buckets.incrementAndGet(index(Math.max(nanos / 1000, 0)));
+    }
+
+    static int index(long micros) {
+      if (micros < EXACT) {
+        return (int) micros;
+      }
+      var exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT);
+      var sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+      if (exponent == MAX_EXPONENT && micros >>> (MAX_EXPONENT + 1) != 0) {
+        sub = SUB_BUCKETS - 1;
+      }
+      return EXACT + (exponent - SUB_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the smallest duration, that is not counted in the bucket
+     */
+    static long upperBound(int index) {
+      if (index < EXACT) {
+        return index + 1;
+      }
+      var exponent = (index - EXACT) / SUB_BUCKETS + SUB_BITS + 1;
+      var sub = (index - EXACT) % SUB_BUCKETS;
+      return (long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS);
+    }
+
+    long count() {
+      var count = 0L;
+      for (int i = 0; i < BUCKETS; i++) {
+        count += buckets.get(i);
+      }
+      return count;
+    }
+
+    /**
+     * @return the count of the durations at least {@code from} and below {@code to} microseconds,
+     *     both powers of two, so they are bounds of buckets
+     */
+    long countBelow(long to, long from) {
+      var count = 0L;
+      for (int i = from == 0 ? 0 : index(from); i < BUCKETS && upperBound(i) <= to; i++) {
+        count += buckets.get(i);
+      }
+      return count;
+    }
+
+    double percentileMicros(double quantile) {
+      var total = count();
+      if (total == 0) {
+        return 0;
+      }
+      var seen = 0L;
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += buckets.get(i);
+        if (seen >= quantile * total) {
+          return upperBound(i);
+        }
+      }
+      return upperBound(BUCKETS - 1);
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import at.ac.tuwien.sepm.assignment.individual.persistence.JdbcStatistics;
+import at.ac.tuwien.sepm.assignment.individual.persistence.impl.InstrumentedDataSource;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Every data source is wrapped, so the statements run on it are recorded in the {@link JdbcStatistics},
+ * which {@code GET /statistics/jdbc} reports.
+ */
+@Configuration
+public class JdbcConfiguration {
+
+  /**
+   * Wrap every data source in an {@link InstrumentedDataSource}.
+   * Static, so the data sources are wrapped before any other bean uses them.
+   *
+   * @param statistics the statistics to record the statements in, looked up once the first data source is wrapped
+   * @return the post processor, that wraps the data sources
+   */
+  @Bean
+  public static BeanPostProcessor instrumentDataSources(ObjectProvider<JdbcStatistics> statistics) {
+    return new BeanPostProcessor() {
+      @Override
+      public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource && !(bean instanceof InstrumentedDataSource)) {
+          return new InstrumentedDataSource(dataSource, statistics.getObject());
+        }
+        return bean;
+      }
+    };
+  }
+}
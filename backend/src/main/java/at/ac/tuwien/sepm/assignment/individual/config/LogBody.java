@@ -0,0 +1,77 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A request body as argument of a log message.
+ * It is rendered as JSON only when the message is formatted, i.e. not at all, if the level is disabled,
+ * and cut off after {@value #MAX_CHARS} characters, so e.g. a deep pedigree does not end up in the log in full.
+ */
+public final class LogBody {
+  static final int MAX_CHARS = 2048;
+  private static final ObjectMapper MAPPER = JsonMapper.builder()
+      .addModule(new JavaTimeModule())
+      .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+      .build();
+
+  private final Object body;
+
+  private LogBody(Object body) {
+    this.body = body;
+  }
+
+  /**
+   * Wrap a request body for logging.
+   *
+   * @param body the request body, rendered as JSON once the message is formatted
+   * @return the wrapped body
+   */
+  public static LogBody of(Object body) {
+    return new LogBody(body);
+  }
+
+  @Override
+  public String toString() {
+    var out = new BoundedWriter();
+    try {
+      MAPPER.writeValue(out, body);
+    } catch (IOException e) {
+      if (!out.full) {
+        return String.valueOf(body);
+      }
+      out.text.append("... (cut off)");
+    }
+    return out.text.toString();
+  }
+
+  /**
+   * Stops the rendering by failing, once it is full.
+   */
+  private static final class BoundedWriter extends Writer {
+    private final StringBuilder text = new StringBuilder();
+    private boolean full;
+
+    @Override
+    public void write(char[] chars, int offset, int length) throws IOException {
+      var fitting = Math.min(length, MAX_CHARS - text.length());
+      text.append(chars, offset, fitting);
+      if (fitting < length) {
+        full = true;
+        throw new IOException("Log body longer than " + MAX_CHARS + " characters");
+      }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -1,6 +1,7 @@
 package at.ac.tuwien.sepm.assignment.individual.config;
 
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -11,8 +12,9 @@ import org.springframework.web.filter.OncePerRequestFilter;
 public class LogConfiguration {
 
   @Bean
-  public FilterRegistrationBean<OncePerRequestFilter> logFilter() {
-    var reg = new FilterRegistrationBean<OncePerRequestFilter>(new LogFilter());
+  public FilterRegistrationBean<OncePerRequestFilter> logFilter(HttpMetrics metrics, AccessLog accessLog,
+                                                            @Value("${request-threads:platform}") ThreadConfiguration.Mode requestThreads) {
+    var reg = new FilterRegistrationBean<OncePerRequestFilter>(new LogFilter(metrics, accessLog, requestThreads));
     reg.addUrlPatterns("/*");
     reg.setName("logFilter");
     reg.setOrder(Ordered.LOWEST_PRECEDENCE);
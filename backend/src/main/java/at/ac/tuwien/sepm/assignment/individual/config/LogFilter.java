@@ -1,85 +1,117 @@
 package at.ac.tuwien.sepm.assignment.individual.config;
 
 import at.ac.tuwien.sepm.assignment.individual.exception.FatalException;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.lang.invoke.MethodHandles;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Locale;
 import java.util.UUID;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
 
 /**
- * ServletFilter to log every request.
+ * ServletFilter to log every request to the {@link AccessLog}, and record it in the {@link HttpMetrics}.
+ * Other logs of the request are correlated with it by the request ID {@code r} in the MDC.
+ * <p>
+ * The size of a response is counted by a wrapper of the response, that every thread reuses for its requests,
+ * unless a request goes on asynchronously, and keeps it.
+ * Virtual threads handle a single request each, so with them every request gets a wrapper of its own.
+ * Responses written through {@link HttpServletResponse#getWriter()} are not counted.
+ * </p>
  */
 public class LogFilter extends OncePerRequestFilter {
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-  private static final  DecimalFormat REQUEST_RUNTIME_FORMAT = new DecimalFormat("#.###", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
-  private static final Long NANOSECONDS_PER_MS = 1000_000L;
   private static final List<String> MUTED_PATHS = Arrays.asList(
       "/swagger-ui/",
       "/swagger.yaml"
   );
 
+  private final HttpMetrics metrics;
+  private final AccessLog accessLog;
+  private final ThreadLocal<RecordedResponse> responses;
+
+  /**
+   * Create the filter.
+   *
+   * @param metrics the metrics to record every request in
+   * @param accessLog the access log to write every request to, that is not muted
+   * @param requestThreads the threads requests are handled on, the recorded response is reused per thread only on platform threads
+   */
+  public LogFilter(HttpMetrics metrics, AccessLog accessLog, ThreadConfiguration.Mode requestThreads) {
+    this.metrics = metrics;
+    this.accessLog = accessLog;
+    this.responses = requestThreads == ThreadConfiguration.Mode.PLATFORM ? new ThreadLocal<>() : null;
+  }
 
   @Override
   public void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) {
-    var runtime = -1L;
     var shouldLog = shouldLog(request);
     if (shouldLog) {
       populateMDC(request);
-      beforeRequest(request);
     }
+    var recorded = responses != null ? responses.get() : null;
+    if (recorded == null) {
+      recorded = new RecordedResponse(response);
+      if (responses != null) {
+        responses.set(recorded);
+      }
+    } else {
+      recorded.start(response);
+    }
+    recorded.logged = shouldLog;
+    recorded.requestId = MDC.get("r");
+    recorded.ip = MDC.get("ip");
+    recorded.timestampMillis = System.currentTimeMillis();
+    metrics.started(request.getMethod());
+    var failed = true;
     try {
       //keep timestamp
-      runtime = System.nanoTime();
+      recorded.startNanos = System.nanoTime();
       //do the work
-      filterChain.doFilter(request, response);
+      filterChain.doFilter(request, recorded);
+      failed = false;
     } catch (ServletException | IOException e) {
       throw new FatalException(e);
     } finally {
-      //runtime = end - start
-      runtime = System.nanoTime() - runtime;
-      if (shouldLog) {
-        afterRequest(request, response, runtime);
+      if (request.isAsyncStarted()) {
+        // The response is written on, by another thread
+        if (responses != null) {
+          responses.remove();
+        }
+        request.getAsyncContext().addListener(new CompletionListener(request, recorded, failed));
+      } else {
+        finished(request, recorded, failed);
       }
       MDC.clear();
     }
   }
 
-  private void beforeRequest(HttpServletRequest request) {
-    var b = getUrlString(">>> ", request);
-    var agent = request.getHeader("User-Agent");
-    if (agent != null) {
-      b.append(" UA=").append(agent);
-    }
-    logWithRightCategory(200, b.toString());
-  }
-
-  private void afterRequest(HttpServletRequest request, HttpServletResponse response, Long runtime) {
-    var b = getUrlString("<<< ", request);
-    var logStatus = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
-    if (response != null) {
-      logStatus = response.getStatus();
-      MDC.put("status", "" + logStatus);
-      b.append(" status=").append(logStatus);
-    } else {
-      b.append(" NO RESPONSE");
+  private void finished(HttpServletRequest request, RecordedResponse response, boolean failed) {
+    var runtime = System.nanoTime() - response.startNanos;
+    var pattern = (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+    var status = failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus();
+    metrics.finished(pattern, request.getMethod(), status, runtime, response.bytesWritten());
+    if (response.logged) {
+      accessLog.log(response.timestampMillis, response.requestId, response.ip, request.getMethod(), request.getRequestURI(),
+          request.getQueryString(), pattern, status, runtime, response.bytesWritten(), request.getHeader("User-Agent"));
+      if (status >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR) {
+        LOG.error("<<< {} {} status={}", request.getMethod(), request.getRequestURI(), status);
+      }
     }
-    var time = REQUEST_RUNTIME_FORMAT.format(runtime / NANOSECONDS_PER_MS);
-    MDC.put("duration", time);
-    b.append(" time=").append(time).append("ms");
-    logWithRightCategory(logStatus, b.toString());
   }
 
   private void populateMDC(HttpServletRequest request) {
@@ -102,18 +134,6 @@ public class LogFilter extends OncePerRequestFilter {
     return uuid;
   }
 
-  private StringBuilder getUrlString(String prefix, HttpServletRequest request) {
-    var b = new StringBuilder(prefix)
-        .append(request.getMethod())
-        .append(" ")
-        .append(request.getRequestURI());
-    var qs = request.getQueryString();
-    if (qs != null) {
-      b.append("?").append(qs);
-    }
-    return b;
-  }
-
   private boolean shouldLog(HttpServletRequest request) {
     //Log everything in TRACE
     if (LOG.isTraceEnabled()) {
@@ -125,13 +145,113 @@ public class LogFilter extends OncePerRequestFilter {
     return MUTED_PATHS.stream().noneMatch(url::startsWith);
   }
 
-  private void logWithRightCategory(int status, String logMsg) {
-    var x = status / 100;
-    switch (x) {
-      case 2, 3 -> LOG.info(logMsg);
-      case 1, 4 -> LOG.warn(logMsg);
-      default -> LOG.error(logMsg);
+
+  private final class CompletionListener implements AsyncListener {
+    private final HttpServletRequest request;
+    private final RecordedResponse response;
+    private final boolean failed;
+
+    CompletionListener(HttpServletRequest request, RecordedResponse response, boolean failed) {
+      this.request = request;
+      this.response = response;
+      this.failed = failed;
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      finished(request, response, failed);
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+      event.getAsyncContext().addListener(this);
     }
   }
 
+  /**
+   * The response, that counts the bytes written to its output stream, with what is recorded about its request.
+   */
+  private static final class RecordedResponse extends HttpServletResponseWrapper {
+    private final CountingOutputStream out = new CountingOutputStream();
+    private boolean writer;
+    private boolean logged;
+    private String requestId;
+    private String ip;
+    private long timestampMillis;
+    private long startNanos;
+
+    RecordedResponse(HttpServletResponse response) {
+      super(response);
+    }
+
+    void start(HttpServletResponse response) {
+      setResponse(response);
+      out.delegate = null;
+      out.count = 0;
+      writer = false;
+    }
+
+    long bytesWritten() {
+      return writer ? -1 : out.count;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+      if (out.delegate == null) {
+        out.delegate = super.getOutputStream();
+      }
+      return out;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+      writer = true;
+      return super.getWriter();
+    }
+  }
+
+  private static final class CountingOutputStream extends ServletOutputStream {
+    private ServletOutputStream delegate;
+    private long count;
+
+    @Override
+    public void write(int b) throws IOException {
+      delegate.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      delegate.write(b, off, len);
+      count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      delegate.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      delegate.close();
+    }
+
+    @Override
+    public boolean isReady() {
+      return delegate.isReady();
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      delegate.setWriteListener(writeListener);
+    }
+  }
 }
@@ -0,0 +1,85 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import java.util.concurrent.ExecutorService;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+/**
+ * The threads requests are handled on, chosen by {@code request-threads} in the application.yml.
+ * <p>
+ * With {@link Mode#PLATFORM} Tomcat handles requests on its pool of platform threads, limited by
+ * {@code server.tomcat.threads.max}.
+ * With {@link Mode#VIRTUAL} every request, and every request going on asynchronously (e.g. streamed responses),
+ * gets a virtual thread of its own, so a request waiting for the database does not hold a platform thread.
+ * The DAOs run on the thread of the request, so their JDBC calls run on virtual threads too;
+ * how many of them hit the database at once is then only limited by the connection pool.
+ * Virtual threads need the backend built with Java 21, which the {@code java21} profile of the pom.xml does,
+ * otherwise the application fails to start, instead of quietly falling back.
+ * </p>
+ * <p>
+ * H2 guards its sessions and its storage with {@code synchronized}.
+ * A virtual thread, that blocks inside of such a block, or waits to enter one, pins its carrier thread on Java 21,
+ * and while it is pinned, no other virtual thread runs on that carrier, of which there is one per core.
+ * The {@code HttpLoadBenchmark} run with {@code -Djdk.tracePinnedThreads=short} reported no pinned thread:
+ * on an in-memory database H2 does not block inside its monitors, and waiting for a pooled connection happens outside of them.
+ * A database file, that is read from disk inside of them, may pin carriers, though.
+ * </p>
+ */
+@Configuration
+public class ThreadConfiguration {
+
+  /**
+   * The threads requests are handled on, as set by {@code request-threads}.
+   */
+  public enum Mode {
+    /**
+     * The thread pool of Tomcat, the default.
+     */
+    PLATFORM,
+    /**
+     * A new virtual thread per request, needs the backend built with Java 21.
+     */
+    VIRTUAL
+  }
+
+  /**
+   * The executor, that starts a virtual thread per request.
+   *
+   * @return the executor, that names its threads {@code request-0}, {@code request-1}, …
+   */
+  @Bean
+  @ConditionalOnProperty(name = "request-threads", havingValue = "virtual")
+  public ExecutorService requestThreads() {
+    return VirtualThreads.newThreadPerTaskExecutor("request-");
+  }
+
+  /**
+   * Replaces the thread pool of Tomcat, that it handles requests on.
+   *
+   * @param requestThreads the executor, that starts a virtual thread per request
+   * @return the customizer, that sets the executor of the protocol handler of Tomcat
+   */
+  @Bean
+  @ConditionalOnProperty(name = "request-threads", havingValue = "virtual")
+  public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualTomcatThreads(ExecutorService requestThreads) {
+    return protocolHandler -> protocolHandler.setExecutor(requestThreads);
+  }
+
+  /**
+   * Replaces the thread pool of Spring Boot, that Spring MVC runs asynchronous requests on.
+   *
+   * @param requestThreads the executor, that starts a virtual thread per request
+   * @return the executor for the asynchronous requests
+   */
+  @Bean(name = TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+  @ConditionalOnProperty(name = "request-threads", havingValue = "virtual")
+  public AsyncTaskExecutor virtualTaskExecutor(ExecutorService requestThreads) {
+    return new TaskExecutorAdapter(requestThreads);
+  }
+}
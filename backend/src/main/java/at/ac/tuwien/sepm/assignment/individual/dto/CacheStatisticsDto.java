@@ -0,0 +1,15 @@
+package at.ac.tuwien.sepm.assignment.individual.dto;
+
+/**
+ * Usage of one cache since the application started.
+ * {@code size} is the current number of entries, as far as the cache can estimate it.
+ */
+public record CacheStatisticsDto(
+    String name,
+    long size,
+    long hits,
+    long misses,
+    long evictions,
+    double hitRatio
+) {
+}
@@ -0,0 +1,16 @@
+package at.ac.tuwien.sepm.assignment.individual.dto;
+
+/**
+ * DTO for a common ancestor of two horses {@code a} and {@code b}.
+ * A horse, that is an ancestor of the other, is a common ancestor of both, {@code 0} generations back from itself.
+ *
+ * @param generationsFromA the number of generations between horse {@code a} and the common ancestor
+ * @param generationsFromB the number of generations between horse {@code b} and the common ancestor
+ */
+public record CommonAncestorDto(
+    Long id,
+    String name,
+    int generationsFromA,
+    int generationsFromB
+) {
+}
@@ -0,0 +1,20 @@
+package at.ac.tuwien.sepm.assignment.individual.dto;
+
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import java.time.LocalDate;
+
+/**
+ * DTO for a descendant of a horse.
+ *
+ * @param generation the number of generations between the horse and this descendant, {@code 1} for its children
+ */
+public record HorseDescendantDto(
+    Long id,
+    String name,
+    LocalDate dateOfBirth,
+    Sex sex,
+    Long motherId,
+    Long fatherId,
+    int generation
+) {
+}
@@ -0,0 +1,20 @@
+package at.ac.tuwien.sepm.assignment.individual.dto;
+
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import java.time.LocalDate;
+
+/**
+ * DTO for one node of a horse's family tree, that is limited to a number of generations.
+ *
+ * @param hasMoreAncestors whether the horse has parents, that were cut off by the generation limit
+ */
+public record HorseFamilyTreeDto(
+    Long id,
+    String name,
+    LocalDate dateOfBirth,
+    Sex sex,
+    HorseFamilyTreeDto mother,
+    HorseFamilyTreeDto father,
+    boolean hasMoreAncestors
+) {
+}
@@ -0,0 +1,24 @@
+package at.ac.tuwien.sepm.assignment.individual.dto;
+
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import java.time.LocalDate;
+
+/**
+ * One row of a bulk import of horses.
+ * A parent is either an existing horse, given by its ID in {@code motherId} or {@code fatherId},
+ * or another row of the same import, given by that row's {@code ref} in {@code motherRef} or {@code fatherRef}.
+ * {@code ref} is only a name for the row within the import, and can be left out if no other row refers to it.
+ */
+public record HorseImportDto(
+    String ref,
+    String name,
+    String description,
+    LocalDate dateOfBirth,
+    Sex sex,
+    Long ownerId,
+    Long motherId,
+    String motherRef,
+    Long fatherId,
+    String fatherRef
+) {
+}
@@ -0,0 +1,13 @@
+package at.ac.tuwien.sepm.assignment.individual.dto;
+
+import java.util.List;
+
+/**
+ * The result of a bulk import, with one entry per row in the order of the import.
+ */
+public record HorseImportReportDto(
+    int created,
+    int rejected,
+    List<HorseImportRowDto> rows
+) {
+}
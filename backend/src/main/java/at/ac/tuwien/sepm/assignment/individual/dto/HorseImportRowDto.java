@@ -0,0 +1,16 @@
+package at.ac.tuwien.sepm.assignment.individual.dto;
+
+import java.util.List;
+
+/**
+ * The result of importing one row of a bulk import, {@code row} counts from 1.
+ * A created row has the {@code id} of the new horse and no errors,
+ * a rejected row has no {@code id} and the reasons it was rejected for.
+ */
+public record HorseImportRowDto(
+    int row,
+    String ref,
+    Long id,
+    List<String> errors
+) {
+}
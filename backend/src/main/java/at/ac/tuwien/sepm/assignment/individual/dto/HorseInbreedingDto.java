@@ -0,0 +1,15 @@
+package at.ac.tuwien.sepm.assignment.individual.dto;
+
+/**
+ * DTO for the inbreeding coefficient of a horse, over a limited number of generations of its pedigree.
+ *
+ * @param coefficient Wright's coefficient of inbreeding, from {@code 0} to {@code 1}
+ * @param ancestors the number of distinct ancestors within the generations, that the coefficient is computed from
+ */
+public record HorseInbreedingDto(
+    long id,
+    int generations,
+    double coefficient,
+    int ancestors
+) {
+}
@@ -0,0 +1,18 @@
+package at.ac.tuwien.sepm.assignment.individual.dto;
+
+import java.util.List;
+
+/**
+ * DTO for the relationship of two horses {@code a} and {@code b}.
+ *
+ * @param coefficient Wright's coefficient of relationship, from {@code 0} for unrelated horses to {@code 1}
+ * @param nearestCommonAncestors the common ancestors, that are the fewest generations back from both horses together,
+ *     empty if the horses are not related
+ */
+public record HorseRelationshipDto(
+    long a,
+    long b,
+    double coefficient,
+    List<CommonAncestorDto> nearestCommonAncestors
+) {
+}
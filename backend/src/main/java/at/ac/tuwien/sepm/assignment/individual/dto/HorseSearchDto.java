@@ -7,6 +7,7 @@ import org.springframework.format.annotation.DateTimeFormat;
 /**
  * DTO to bundle the query parameters used in searching horses.
  * Each field can be null, in which case this field is not filtered by.
+ * {@code limit} is the size of a page of results and {@code cursor} the {@link PageDto#next()} of the previous page.
  */
 public record HorseSearchDto(
     String name,
@@ -15,6 +16,7 @@ public record HorseSearchDto(
     LocalDate bornBefore,
     Sex sex,
     String ownerName,
-    Integer limit
+    Integer limit,
+    String cursor
 ) {
 }
@@ -0,0 +1,19 @@
+package at.ac.tuwien.sepm.assignment.individual.dto;
+
+import java.util.List;
+
+/**
+ * Durations in buckets of powers of two.
+ * Bucket {@code i} counts the durations below 2<sup>i</sup> microseconds, that are not in a lower bucket,
+ * the last bucket all longer ones.
+ * The percentiles are the upper bounds of their buckets, so they overestimate by at most a factor of two.
+ */
+public record LatencyHistogramDto(
+    long count,
+    double totalMillis,
+    double maxMillis,
+    double p50Millis,
+    double p99Millis,
+    List<Long> buckets
+) {
+}
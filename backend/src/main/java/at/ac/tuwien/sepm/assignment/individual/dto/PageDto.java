@@ -0,0 +1,14 @@
+package at.ac.tuwien.sepm.assignment.individual.dto;
+
+import java.util.List;
+
+/**
+ * One page of results.
+ * {@code next} is an opaque cursor, that continues right after the last result of this page,
+ * or {@code null} if there are no more results.
+ */
+public record PageDto<T>(
+    List<T> content,
+    String next
+) {
+}
@@ -0,0 +1,17 @@
+package at.ac.tuwien.sepm.assignment.individual.dto;
+
+/**
+ * Executions of one statement shape since the application started.
+ * The shape is the SQL with its literals and lists of parameters collapsed, so e.g. every {@code IN} list looks the same.
+ * {@code rows} are the rows read for queries, and the rows changed for updates.
+ * {@code connectionAcquire} is the time waited for the connection, counted for the first statement run on it.
+ */
+public record StatementStatisticsDto(
+    String statement,
+    long calls,
+    long errors,
+    long rows,
+    LatencyHistogramDto latency,
+    LatencyHistogramDto connectionAcquire
+) {
+}
@@ -1,6 +1,8 @@
 package at.ac.tuwien.sepm.assignment.individual.mapper;
 
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseDescendantDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseFamilyTreeDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseListDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.OwnerDto;
 import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
@@ -75,6 +77,57 @@ public class HorseMapper {
     );
   }
 
+  /**
+   * Convert a horse entity object to a node of a {@link HorseFamilyTreeDto}.
+   *
+   * @param horse the horse to convert
+   * @param mother the already converted family tree of the mother, or {@code null} if it is unknown or cut off
+   * @param father the already converted family tree of the father, or {@code null} if it is unknown or cut off
+   * @param hasMoreAncestors whether parents of {@code horse} were cut off by the generation limit
+   * @return the converted {@link HorseFamilyTreeDto}
+   */
+  public HorseFamilyTreeDto entityToFamilyTreeDto(
+      Horse horse, HorseFamilyTreeDto mother, HorseFamilyTreeDto father, boolean hasMoreAncestors) {
+    LOG.trace("entityToFamilyTreeDto({})", horse);
+    if (horse == null) {
+      return null;
+    }
+
+    return new HorseFamilyTreeDto(
+        horse.getId(),
+        horse.getName(),
+        horse.getDateOfBirth(),
+        horse.getSex(),
+        mother,
+        father,
+        hasMoreAncestors
+    );
+  }
+
+  /**
+   * Convert a horse entity object to a {@link HorseDescendantDto}.
+   *
+   * @param horse the horse to convert
+   * @param generation the number of generations between the horse and the ancestor it descends from
+   * @return the converted {@link HorseDescendantDto}
+   */
+  public HorseDescendantDto entityToDescendantDto(Horse horse, int generation) {
+    LOG.trace("entityToDescendantDto({})", horse);
+    if (horse == null) {
+      return null;
+    }
+
+    return new HorseDescendantDto(
+        horse.getId(),
+        horse.getName(),
+        horse.getDateOfBirth(),
+        horse.getSex(),
+        horse.getMotherId(),
+        horse.getFatherId(),
+        generation
+    );
+  }
+
   private OwnerDto getOwner(Horse horse, Map<Long, OwnerDto> owners) {
     OwnerDto owner = null;
     var ownerId = horse.getOwnerId();
@@ -0,0 +1,12 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence;
+
+/**
+ * A common ancestor of two horses.
+ * A horse, that is an ancestor of the other, counts as a common ancestor of both, {@code 0} generations back from itself.
+ *
+ * @param id the ID of the common ancestor
+ * @param generationsFromA the number of generations between the one horse and the common ancestor
+ * @param generationsFromB the number of generations between the other horse and the common ancestor
+ */
+public record CommonAncestor(long id, int generationsFromA, int generationsFromB) {
+}
@@ -3,9 +3,11 @@ package at.ac.tuwien.sepm.assignment.individual.persistence;
 import jakarta.annotation.PostConstruct;
 import java.lang.invoke.MethodHandles;
 import java.sql.SQLException;
+import java.util.List;
 import javax.sql.DataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.jdbc.datasource.init.ScriptUtils;
@@ -14,18 +16,40 @@ import org.springframework.stereotype.Component;
 /**
  * This component is only created, if the profile {@code datagen} is active
  * You can activate this profile by adding {@code -Dspring.profiles.active=datagen} to your maven command line
+ * <p>
+ * Besides the hand-written test data, it can generate a synthetic registry with a {@link PedigreeGenerator},
+ * e.g. with {@code -Ddatagen.horses=5000000 -Ddatagen.owners=100000 -Ddatagen.generations=30}.
+ * Without {@code datagen.horses}, no synthetic data is generated.
+ * </p>
  */
 @Component
 @Profile("datagen")
 public class DataGeneratorBean {
   private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
   private final DataSource dataSource;
+  private final List<DerivedData> derivedData;
+  private final PedigreeGenerator generator;
 
   /**
    * Executed once when the component is instantiated. Inserts some dummy data.
+   *
+   * @param dataSource the data source to insert the data into
+   * @param derivedData the data derived from the data store, that is rebuilt after the scripts bypassed the DAOs
+   * @param owners the number of synthetic owners to generate
+   * @param horses the number of synthetic horses to generate, none if 0
+   * @param generations the number of generations the synthetic horses are spread over
+   * @param seed the seed of the synthetic data, the same seed generates the same data
    */
-  public DataGeneratorBean(DataSource dataSource) {
+  public DataGeneratorBean(
+      DataSource dataSource,
+      List<DerivedData> derivedData,
+      @Value("${datagen.owners:0}") int owners,
+      @Value("${datagen.horses:0}") int horses,
+      @Value("${datagen.generations:20}") int generations,
+      @Value("${datagen.seed:42}") long seed) {
     this.dataSource = dataSource;
+    this.derivedData = derivedData;
+    this.generator = horses > 0 ? new PedigreeGenerator(owners, horses, generations, seed) : null;
   }
 
   @PostConstruct
@@ -35,6 +59,10 @@ public class DataGeneratorBean {
       ScriptUtils.executeSqlScript(connection, new ClassPathResource("sql/insertData.sql"));
       LOGGER.info("Finished generating data without error.");
     }
+    if (generator != null) {
+      generator.generate(dataSource);
+    }
+    rebuildDerivedData();
   }
 
   public void cleanData() throws SQLException {
@@ -43,5 +71,13 @@ public class DataGeneratorBean {
       ScriptUtils.executeSqlScript(connection, new ClassPathResource("sql/delete.sql"));
       LOGGER.info("Finished cleaning up data without error.");
     }
+    rebuildDerivedData();
+  }
+
+  /**
+   * The scripts bypass the DAOs, so everything derived from the data has to be rebuilt afterwards.
+   */
+  private void rebuildDerivedData() {
+    derivedData.forEach(DerivedData::rebuild);
   }
 }
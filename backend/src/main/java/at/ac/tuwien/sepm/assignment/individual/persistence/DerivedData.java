@@ -0,0 +1,15 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence;
+
+/**
+ * Data that is derived from the persistent data store, but kept outside of it (indexes, caches, …).
+ * The DAOs keep it up to date on every write they perform.
+ * Whenever the persistent data store is modified without going through the DAOs
+ * (e.g. by running an SQL script like {@link DataGeneratorBean} does),
+ * the derived data has to be rebuilt.
+ */
+public interface DerivedData {
+  /**
+   * Discard the derived data and rebuild it from the current state of the persistent data store.
+   */
+  void rebuild();
+}
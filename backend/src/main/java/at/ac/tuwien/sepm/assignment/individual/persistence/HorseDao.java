@@ -2,18 +2,30 @@ package at.ac.tuwien.sepm.assignment.individual.persistence;
 
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseSearchDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.PageDto;
 import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
 import at.ac.tuwien.sepm.assignment.individual.exception.ConflictException;
 import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
+import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Data Access Object for horses.
  * Implements access functionality to the application's persistent data store regarding horses.
  */
 public interface HorseDao {
+  /**
+   * The number of generations, that the ancestry window reaches,
+   * and {@link #getDescendantsInGeneration(long, int)} can look up.
+   * The ancestry window is the closure of the parent relation, cut off after this many generations:
+   * ancestors and descendants within it are a single indexed lookup, questions about all of them are not.
+   * Those are answered from the pedigree index, or generation by generation beyond the window.
+   */
+  int ANCESTRY_WINDOW = 5;
+
   /**
    * Get all horses stored in the persistent data store.
    *
@@ -26,12 +38,16 @@ public interface HorseDao {
    * Update the horse with the ID given in {@code horse}
    *  with the data given in {@code horse}
    *  in the persistent data store.
+   * If the parents change, the update checks in its transaction, that the new parents are not descendants of the horse,
+   * holding a lock in the data store, that every such change takes,
+   * so that no pedigree can become a cycle, not even by concurrent updates from several instances of the backend.
    *
    * @param horse the horse to update
    * @return the updated horse
    * @throws NotFoundException if the Horse with the given ID does not exist in the persistent data store
+   * @throws ConflictException if the mother or father of {@code horse} is a descendant of it
    */
-  Horse update(HorseDetailDto horse) throws NotFoundException;
+  Horse update(HorseDetailDto horse) throws NotFoundException, ConflictException;
 
   /**
    * Creates a new horse with the data given in {@code horse}
@@ -43,6 +59,18 @@ public interface HorseDao {
    */
   Horse create(HorseDetailDto horse) throws ConflictException;
 
+  /**
+   * Create new horses with the data given in {@code horses}
+   * in the persistent data store, all in one transaction.
+   * A mother or father without ID is one of the other horses in {@code horses} (the same instance),
+   * and must come before its children in the list.
+   * The data is expected to be valid already, it is not checked again.
+   *
+   * @param horses the horses to create, parents of the batch before their children
+   * @return the created horses, in the same order as {@code horses}
+   */
+  List<Horse> createAll(List<HorseDetailDto> horses);
+
   /**
    * Delete the horse with given ID from the
    * persistent data store.
@@ -62,14 +90,77 @@ public interface HorseDao {
    */
   Horse getById(long id) throws NotFoundException;
 
+  /**
+   * Fetch a set of horses by their IDs from the persistent data store.
+   * This is best effort, if some horse can not be found in the data store, it is simply not in the returned set.
+   *
+   * @param ids a collection of ids, to fetch the referenced horses by.
+   * @return the collection of all found horses, without those, that are not in the persistent data store
+   */
+  Collection<Horse> getAllById(Collection<Long> ids);
+
+  /**
+   * Get the horse with ID {@code id} together with all of its ancestors
+   * from the persistent data store.
+   * The whole pedigree is fetched with a single query, no matter how many generations it spans.
+   *
+   * @param id the ID of the horse to get the pedigree of
+   * @return the horse with ID {@code id} and all of its ancestors, each contained exactly once
+   * @throws NotFoundException if the horse with the given ID does not exist in the persistent data store
+   */
+  Collection<Horse> getWithAncestors(long id) throws NotFoundException;
+
+  /**
+   * Get the horse with ID {@code id} together with its ancestors
+   * up to {@code generations} generations back from the persistent data store.
+   * The traversal stops at the given depth, ancestors further back are never read:
+   * up to {@link #ANCESTRY_WINDOW} generations, inside a single lookup in the ancestry window,
+   * further back, in the pedigree index, which the rows are then fetched by ID for.
+   *
+   * @param id the ID of the horse to get the pedigree of
+   * @param generations the number of generations to include, {@code 0} means only the horse itself
+   * @return the horse with ID {@code id} and its ancestors within {@code generations} generations, each contained exactly once
+   * @throws NotFoundException if the horse with the given ID does not exist in the persistent data store
+   */
+  Collection<Horse> getWithAncestors(long id, int generations) throws NotFoundException;
+
   /**
    * Search horses that match the given parameters in the
    * persistent data store.
+   * The horses are sorted by name and ID, ranked by how well they match the text filters first.
+   * If the parameters have a limit, only one page of at most that many horses is returned,
+   * starting after the cursor of the parameters.
+   * Pages of searches with text filters read all matches, as no index is sorted by their rank.
+   *
+   * @param searchParameters parameters to search horses by
+   * @return the page of horses which match with the parameters, with the cursor to the next page
+   * @throws ValidationException if the limit or the cursor of the parameters is invalid
+   */
+  PageDto<Horse> search(HorseSearchDto searchParameters) throws ValidationException;
+
+  /**
+   * Search horses that match the given parameters in the
+   * persistent data store, and stream them straight from the result set.
+   * The horses are sorted like {@link #search(HorseSearchDto)} sorts them.
+   * There are no pages: the stream continues after the cursor of the parameters, up to their limit.
+   * The parameters are checked right away, but the search only runs, when the stream is consumed,
+   * on the connection of the transaction of the consuming thread, if there is one.
+   * From then on, the stream holds on to a connection to the persistent data store, until it is closed.
    *
    * @param searchParameters parameters to search horses by
-   * @return Collection of horses which match with the parameters
+   * @return the lazily read stream of the horses which match with the parameters, to be closed after use
+   * @throws ValidationException if the limit or the cursor of the parameters is invalid
    */
-  Collection<Horse> search(HorseSearchDto searchParameters);
+  Stream<Horse> streamSearch(HorseSearchDto searchParameters) throws ValidationException;
+
+  /**
+   * Stream all horses stored in the persistent data store, sorted by ID,
+   * straight from the result set.
+   * The stream holds on to a connection to the persistent data store, until it is closed.
+   *
+   * @return the lazily read stream of all stored horses, to be closed after use
+   */
+  Stream<Horse> streamAll();
 
   /**
    * Get all children of the horse with ID {@code id}
@@ -80,4 +171,24 @@ public interface HorseDao {
    */
   List<Horse> getChildren(Long id);
 
+  /**
+   * Get all children of any of the horses with the IDs in {@code ids}
+   * from the persistent data store, using a single query.
+   *
+   * @param ids the IDs of the horses to get the children of
+   * @return the children of the horses with the given IDs, each contained exactly once
+   */
+  Collection<Horse> getChildrenOfAll(Collection<Long> ids);
+
+  /**
+   * Get the descendants of the horse with ID {@code id}, that are {@code generation} generations down,
+   * from the persistent data store, with a single lookup in the ancestry window.
+   * A descendant on more than one line only counts for its nearest generation.
+   *
+   * @param id the ID of the horse to get the descendants of
+   * @param generation the generation of the descendants, from {@code 1} for the children to {@link #ANCESTRY_WINDOW}
+   * @return the descendants in that generation, each contained exactly once, empty if there are none
+   */
+  List<Horse> getDescendantsInGeneration(long id, int generation);
+
 }
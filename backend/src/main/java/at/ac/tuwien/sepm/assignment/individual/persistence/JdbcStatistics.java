@@ -0,0 +1,193 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.LatencyHistogramDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.StatementStatisticsDto;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts and latencies of the SQL statements run on the data source, by statement shape.
+ * <p>
+ * The shape of a statement is its SQL with white space, literals and lists of parameters collapsed,
+ * so e.g. {@code IN (?, ?, ?)} and {@code IN (?, ?)} are the same shape.
+ * Normalizing takes time linear in the length of the SQL, and is done only once for every distinct SQL text.
+ * Recording takes no locks, only a few atomic additions, so the statistics can be left on in production.
+ * </p>
+ * <p>
+ * There are at most {@value #MAX_SHAPES} shapes, any more are counted together,
+ * in case some code ever builds its SQL with inlined values the normalizing does not recognize.
+ * </p>
+ */
+@Component
+public class JdbcStatistics {
+  static final int MAX_SHAPES = 1000;
+  private static final int MAX_CACHED_SQL = 10 * MAX_SHAPES;
+  private static final String OTHER_SHAPES = "(other statements)";
+  private static final Pattern PARAMETER_LIST = Pattern.compile("\\?(?: ?+, ?+\\?)++");
+
+  private final ConcurrentHashMap<String, Shape> shapes = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Shape> shapeOfSql = new ConcurrentHashMap<>();
+
+  /**
+   * Get the statistics of the shape of the given SQL, creating them on its first execution.
+   *
+   * @param sql the SQL of the statement
+   * @return the statistics of the shape of the given SQL
+   */
+  public Shape shape(String sql) {
+    var shape = shapeOfSql.get(sql);
+    if (shape == null) {
+      var normalized = normalize(sql);
+      shape = shapes.size() < MAX_SHAPES || shapes.containsKey(normalized)
+          ? shapes.computeIfAbsent(normalized, Shape::new)
+          : shapes.computeIfAbsent(OTHER_SHAPES, Shape::new);
+      if (shapeOfSql.size() < MAX_CACHED_SQL) {
+        shapeOfSql.put(sql, shape);
+      }
+    }
+    return shape;
+  }
+
+  /**
+   * @return the statistics of all shapes, the ones that took the most time first
+   */
+  public List<StatementStatisticsDto> getAll() {
+    return shapes.values().stream()
+        .sorted(Comparator.comparingLong((Shape shape) -> shape.latency.totalNanos.sum()).reversed())
+        .map(Shape::toDto)
+        .toList();
+  }
+
+  static String normalize(String sql) {
+    var shape = new StringBuilder(sql.length());
+    var i = 0;
+    while (i < sql.length()) {
+      var c = sql.charAt(i);
+      if (Character.isWhitespace(c)) {
+        while (i < sql.length() && Character.isWhitespace(sql.charAt(i))) {
+          i++;
+        }
+        if (!shape.isEmpty() && i < sql.length()) {
+          shape.append(' ');
+        }
+      } else if (c == '\'') {
+        // A string literal, where '' is a quote
+        i++;
+        while (i < sql.length() && (sql.charAt(i) != '\'' || i + 1 < sql.length() && sql.charAt(i + 1) == '\'')) {
+          i += sql.charAt(i) == '\'' ? 2 : 1;
+        }
+        i++;
+        shape.append('?');
+      } else if (Character.isDigit(c) && (shape.isEmpty() || !isIdentifierPart(shape.charAt(shape.length() - 1)))) {
+        while (i < sql.length() && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+          i++;
+        }
+        shape.append('?');
+      } else {
+        shape.append(c);
+        i++;
+      }
+    }
+    return PARAMETER_LIST.matcher(shape).replaceAll("?, ...");
+  }
+
+  private static boolean isIdentifierPart(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '"';
+  }
+
+  /**
+   * The statistics of one statement shape.
+   */
+  public static final class Shape {
+    private final String statement;
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final Histogram latency = new Histogram();
+    private final Histogram connectionAcquire = new Histogram();
+
+    private Shape(String statement) {
+      this.statement = statement;
+    }
+
+    /**
+     * Record one execution.
+     *
+     * @param nanos the time the data store took, for a query including reading its rows
+     * @param rows the rows read or changed
+     * @param failed whether the execution failed with an exception
+     */
+    public void executed(long nanos, long rows, boolean failed) {
+      latency.record(nanos);
+      this.rows.add(rows);
+      if (failed) {
+        errors.increment();
+      }
+    }
+
+    /**
+     * Record the time the connection of a statement took to get, for the first statement run on that connection.
+     *
+     * @param nanos the time {@link javax.sql.DataSource#getConnection()} took
+     */
+    public void connectionAcquired(long nanos) {
+      connectionAcquire.record(nanos);
+    }
+
+    private StatementStatisticsDto toDto() {
+      return new StatementStatisticsDto(statement, latency.count.sum(), errors.sum(), rows.sum(),
+          latency.toDto(), connectionAcquire.toDto());
+    }
+  }
+
+  private static final class Histogram {
+    // Up to 2^25 microseconds, about half a minute
+    private static final int BUCKETS = 27;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    void record(long nanos) {
+      count.increment();
+      totalNanos.add(nanos);
+      if (nanos > maxNanos.get()) {
+        maxNanos.accumulateAndGet(nanos, Math::max);
+      }
+      var micros = nanos / 1000;
+      buckets.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1));
+    }
+
+    LatencyHistogramDto toDto() {
+      List<Long> counts = new ArrayList<>(BUCKETS);
+      for (int i = 0; i < BUCKETS; i++) {
+        counts.add(buckets.get(i));
+      }
+      var total = counts.stream().mapToLong(Long::longValue).sum();
+      return new LatencyHistogramDto(total, millis(totalNanos.sum()), millis(maxNanos.get()),
+          percentile(counts, total, 0.5), percentile(counts, total, 0.99), counts);
+    }
+
+    private double percentile(List<Long> counts, long total, double percentile) {
+      var seen = 0L;
+      for (int i = 0; i < counts.size(); i++) {
+        seen += counts.get(i);
+        if (seen > 0 && seen >= percentile * total) {
+          return i == BUCKETS - 1 ? millis(maxNanos.get()) : (1L << i) / 1000.0;
+        }
+      }
+      return 0;
+    }
+
+    private static double millis(long nanos) {
+      return nanos / 1_000_000.0;
+    }
+  }
+}
@@ -5,6 +5,7 @@ import at.ac.tuwien.sepm.assignment.individual.dto.OwnerSearchDto;
 import at.ac.tuwien.sepm.assignment.individual.entity.Owner;
 import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
 import java.util.Collection;
+import java.util.stream.Stream;
 
 /**
  * Data Access Object for owners.
@@ -35,6 +36,8 @@ public interface OwnerDao {
    * A owner is considered matched, if its name contains {@code searchParameters.name} as a substring.
    * The returned stream of owners never contains more than {@code searchParameters.maxAmount} elements,
    *  even if there would be more matches in the persistent data store.
+   * Owners with a word of their name, that starts with {@code searchParameters.name}, come first, ready for autocompletion.
+   * It is answered from an in-memory index of the names, without a query.
    * </p>
    *
    * @param searchParameters object containing the search parameters to match
@@ -49,4 +52,13 @@ public interface OwnerDao {
    * @return the newly created owner
    */
   Owner create(OwnerCreateDto newOwner);
+
+  /**
+   * Stream all owners stored in the persistent data store, sorted by ID,
+   * straight from the result set.
+   * The stream holds on to a connection to the persistent data store, until it is closed.
+   *
+   * @return the lazily read stream of all stored owners, to be closed after use
+   */
+  Stream<Owner> streamAll();
 }
@@ -0,0 +1,50 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence;
+
+/**
+ * The ancestors of a horse, or of some horses, limited to a number of generations, numbered densely from 0 to {@code size() - 1}.
+ * Parents are numbered before their children, so the horse itself is the last one.
+ * Parents that are not known, or that are beyond the generation limit, are {@link #UNKNOWN}.
+ *
+ * @param ids the IDs of the horses by number
+ * @param mothers the number of the mother of each horse
+ * @param fathers the number of the father of each horse
+ */
+public record Pedigree(long[] ids, int[] mothers, int[] fathers) {
+  /**
+   * The number of a parent, that is not known.
+   */
+  public static final int UNKNOWN = -1;
+
+  /**
+   * Get the number of horses in the pedigree.
+   *
+   * @return the number of horses, one more than the highest number
+   */
+  public int size() {
+    return ids.length;
+  }
+
+  /**
+   * Get the number of the horse, whose ancestors this pedigree consists of, if it is the pedigree of a single horse.
+   *
+   * @return the number of the horse the pedigree belongs to
+   */
+  public int subject() {
+    return ids.length - 1;
+  }
+
+  /**
+   * Find the number of a horse in the pedigree.
+   *
+   * @param id the ID of the horse
+   * @return the number of the horse, or {@link #UNKNOWN} if it is not in the pedigree
+   */
+  public int indexOf(long id) {
+    for (int i = ids.length - 1; i >= 0; i--) {
+      if (ids[i] == id) {
+        return i;
+      }
+    }
+    return UNKNOWN;
+  }
+}
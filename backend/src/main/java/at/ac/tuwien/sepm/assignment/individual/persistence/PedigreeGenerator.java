@@ -0,0 +1,289 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence;
+
+import java.lang.invoke.MethodHandles;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Random;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates a synthetic registry of owners and horses, that is large enough to reproduce production-scale behavior.
+ * <p>
+ * The horses are bred over a number of generations of equal size. Generation 0 are founders without parents,
+ * every later foal has a mare as mother and a stallion as father, that were born at least
+ * {@link #YEARS_PER_GENERATION} - {@link #BIRTH_SPREAD_YEARS} years before it.
+ * Mares are picked uniformly, but stallions are picked with a strong bias towards a few popular sires,
+ * which father a large share of each generation. A small share of the foals is sired by a stallion two generations back,
+ * who is likely to be the grandsire of the mare as well. Both make for half sibling matings and inbreeding, like in real studbooks.
+ * </p>
+ * <p>
+ * The rows are inserted with explicit IDs past the highest existing ones,
+ * in JDBC batches of {@link #BATCH_SIZE} rows and transactions of {@link #TRANSACTION_SIZE} rows.
+ * Everything is derived from the seed, so the same settings always generate the same registry.
+ * </p>
+ */
+public class PedigreeGenerator {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  // Generated owners are recognized by this e-mail domain, which is reserved to never resolve.
+  static final String EMAIL_DOMAIN = "@datagen.invalid";
+  static final String SQL_DELETE_GENERATED_OWNERS = "DELETE FROM owner WHERE email LIKE '%" + EMAIL_DOMAIN + "'";
+  static final String SQL_MAX_OWNER_ID = "SELECT COALESCE(MAX(id), 0) FROM owner";
+  static final String SQL_MAX_HORSE_ID = "SELECT COALESCE(MAX(id), 0) FROM horse";
+  static final String SQL_INSERT_OWNER = "INSERT INTO owner (id, first_name, last_name, email) VALUES (?, ?, ?, ?)";
+  static final String SQL_INSERT_HORSE = "INSERT INTO horse (id, name, description, date_of_birth, sex, owner_id, mother_id, father_id)"
+      + " VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+  private static final String[] NAME_SYLLABLES = {"an", "bel", "car", "dor", "el", "fa", "gol", "hen", "is", "jo", "ka", "lil", "mo", "nor", "ol",
+      "pe", "qui", "ros", "sil", "ta", "ur", "val", "win", "xa", "ye", "zor"};
+  private static final String[] WORDS = {"fast", "calm", "gallops", "jumps", "brown", "white", "black", "spotted", "gentle", "wild", "pony",
+      "stallion", "mare", "loves", "apples", "carrots", "meadow", "winner", "show", "dressage", "trail", "chestnut", "bay", "grey"};
+  private static final String[] FIRST_NAMES = {"Anna", "Ben", "Clara", "David", "Eva", "Felix", "Greta", "Hans", "Ida", "Jakob", "Lena", "Max",
+      "Nina", "Oskar", "Paula", "Rosa", "Stefan", "Theresa", "Valentin", "Xaver"};
+  private static final String[] LAST_NAMES = {"Mayer", "Huber", "Wagner", "Berger", "Gruber", "Hofer", "Steiner", "Moser", "Bauer", "Eder",
+      "Fischer", "Leitner", "Pichler", "Schmid", "Winkler"};
+  private static final int BATCH_SIZE = 1000;
+  private static final int TRANSACTION_SIZE = 100_000;
+  private static final int YEARS_PER_GENERATION = 8;
+  private static final int BIRTH_SPREAD_YEARS = 5;
+  private static final LocalDate LAST_GENERATION_BORN = LocalDate.of(2018, 1, 1);
+  // The higher, the more foals the most popular stallions sire, and the more horses the biggest studs own
+  private static final double POPULARITY = 3;
+  private static final double LINE_BREEDING_RATE = 0.05;
+  private static final double WITHOUT_OWNER_RATE = 0.2;
+  private static final double WITH_DESCRIPTION_RATE = 0.3;
+
+  private final int owners;
+  private final int horses;
+  private final int generations;
+  private final long seed;
+  private long firstHorseId;
+
+  /**
+   * Create a generator for a registry of the given size.
+   *
+   * @param owners the number of owners
+   * @param horses the number of horses
+   * @param generations the number of generations to spread the horses over, at least 1
+   * @param seed the seed to derive all data from
+   */
+  public PedigreeGenerator(int owners, int horses, int generations, long seed) {
+    if (generations < 1) {
+      throw new IllegalArgumentException("At least one generation is needed, not %d".formatted(generations));
+    }
+    this.owners = owners;
+    this.horses = horses;
+    this.generations = generations;
+    this.seed = seed;
+  }
+
+  /**
+   * Get the ID of the first generated horse of {@code generation}.
+   * It has a pedigree of {@code generation} generations, since its mother comes from the generation right before it.
+   * Only valid after {@link #generate(DataSource)}.
+   *
+   * @param generation the generation, 0 for the founders
+   * @return the ID of the first horse of the generation
+   */
+  public long firstHorseOf(int generation) {
+    return firstHorseId + (long) generation * generationSize();
+  }
+
+  /**
+   * Insert the registry into the data store.
+   * Owners that have been generated before are removed first.
+   * The generated keys of the tables are moved past the inserted IDs afterwards.
+   *
+   * @param dataSource the data store to insert into
+   * @throws SQLException if the data store fails
+   */
+  public void generate(DataSource dataSource) throws SQLException {
+    LOG.info("Generating {} owners and {} horses over {} generations…", owners, horses, generations);
+    final var start = System.nanoTime();
+    try (var connection = dataSource.getConnection()) {
+      var autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+      try {
+        try (var statement = connection.createStatement()) {
+          statement.executeUpdate(SQL_DELETE_GENERATED_OWNERS);
+        }
+        var random = new Random(seed);
+        var firstOwnerId = maxId(connection, SQL_MAX_OWNER_ID) + 1;
+        firstHorseId = maxId(connection, SQL_MAX_HORSE_ID) + 1;
+        insertOwners(connection, random, firstOwnerId);
+        insertHorses(connection, random, firstOwnerId);
+        connection.commit();
+        try (var statement = connection.createStatement()) {
+          statement.execute("ALTER TABLE owner ALTER COLUMN id RESTART WITH " + (firstOwnerId + owners));
+          statement.execute("ALTER TABLE horse ALTER COLUMN id RESTART WITH " + (firstHorseId + horses));
+        }
+      } catch (SQLException | RuntimeException e) {
+        connection.rollback();
+        throw e;
+      } finally {
+        connection.setAutoCommit(autoCommit);
+      }
+    }
+    LOG.info("Generated {} owners and {} horses in {} s", owners, horses, (System.nanoTime() - start) / 1_000_000_000);
+  }
+
+  private void insertOwners(Connection connection, Random random, long firstOwnerId) throws SQLException {
+    try (var insert = new BatchInsert(connection, SQL_INSERT_OWNER)) {
+      for (long id = firstOwnerId; id < firstOwnerId + owners; id++) {
+        var firstName = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+        var lastName = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+        insert.statement.setLong(1, id);
+        insert.statement.setString(2, firstName);
+        insert.statement.setString(3, lastName);
+        insert.statement.setString(4, (firstName + "." + lastName + id).toLowerCase() + EMAIL_DOMAIN);
+        insert.add();
+      }
+    }
+  }
+
+  private void insertHorses(Connection connection, Random random, long firstOwnerId) throws SQLException {
+    var firstBorn = LAST_GENERATION_BORN.minusYears((long) (generations - 1) * YEARS_PER_GENERATION);
+    // The mares and stallions of the previous two generations, to pick the parents from
+    long[][] mares = new long[2][];
+    long[][] stallions = new long[2][];
+    try (var insert = new BatchInsert(connection, SQL_INSERT_HORSE)) {
+      for (int generation = 0; generation < generations; generation++) {
+        var size = generation < generations - 1 ? generationSize() : horses - (generations - 1) * generationSize();
+        var generationMares = new long[size];
+        var generationStallions = new long[size];
+        int mareCount = 0;
+        int stallionCount = 0;
+        var born = firstBorn.plusYears((long) generation * YEARS_PER_GENERATION);
+        for (int i = 0; i < size; i++) {
+          var id = firstHorseOf(generation) + i;
+          // The first horse of each generation is a mare, so that there is a mother for the next generation
+          var female = i == 0 || random.nextBoolean();
+          if (female) {
+            generationMares[mareCount++] = id;
+          } else {
+            generationStallions[stallionCount++] = id;
+          }
+          insert.statement.setLong(1, id);
+          insert.statement.setString(2, name(random));
+          insert.statement.setString(3, random.nextDouble() < WITH_DESCRIPTION_RATE ? description(random) : null);
+          insert.statement.setDate(4, Date.valueOf(born.plusDays(random.nextInt(BIRTH_SPREAD_YEARS * 365))));
+          insert.statement.setString(5, female ? "FEMALE" : "MALE");
+          setNullable(insert.statement, 6,
+              owners == 0 || random.nextDouble() < WITHOUT_OWNER_RATE ? null : firstOwnerId + popular(random, owners));
+          var sireGeneration = stallions[1] != null && random.nextDouble() < LINE_BREEDING_RATE ? 1 : 0;
+          setNullable(insert.statement, 7, pick(mares[0], random.nextInt(Math.max(1, length(mares[0])))));
+          setNullable(insert.statement, 8, pick(stallions[sireGeneration], popular(random, length(stallions[sireGeneration]))));
+          insert.add();
+        }
+        mares[1] = mares[0];
+        stallions[1] = stallions[0];
+        mares[0] = Arrays.copyOf(generationMares, mareCount);
+        stallions[0] = Arrays.copyOf(generationStallions, stallionCount);
+        LOG.debug("Generated generation {} of {} with {} horses", generation + 1, generations, size);
+      }
+    }
+  }
+
+  private int generationSize() {
+    return horses / generations;
+  }
+
+  /**
+   * Pick an index below {@code count}, where the lowest indexes are by far the most likely.
+   */
+  private static int popular(Random random, int count) {
+    return (int) (count * Math.pow(random.nextDouble(), POPULARITY));
+  }
+
+  private static int length(long[] ids) {
+    return ids == null ? 0 : ids.length;
+  }
+
+  private static Long pick(long[] ids, int index) {
+    return ids == null || ids.length == 0 ? null : ids[index];
+  }
+
+  private static void setNullable(PreparedStatement statement, int index, Long value) throws SQLException {
+    if (value == null) {
+      statement.setNull(index, Types.BIGINT);
+    } else {
+      statement.setLong(index, value);
+    }
+  }
+
+  private static long maxId(Connection connection, String sql) throws SQLException {
+    try (var statement = connection.createStatement(); var result = statement.executeQuery(sql)) {
+      result.next();
+      // The test data has negative IDs, generated IDs start at 1 at least
+      return Math.max(0, result.getLong(1));
+    }
+  }
+
+  private static String name(Random random) {
+    var name = new StringBuilder();
+    var syllables = 2 + random.nextInt(2);
+    for (int i = 0; i < syllables; i++) {
+      name.append(NAME_SYLLABLES[random.nextInt(NAME_SYLLABLES.length)]);
+    }
+    name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+    return name.toString();
+  }
+
+  private static String description(Random random) {
+    var description = new StringBuilder(WORDS[random.nextInt(WORDS.length)]);
+    var words = 3 + random.nextInt(10);
+    for (int i = 1; i < words; i++) {
+      description.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+    }
+    return description.toString();
+  }
+
+  /**
+   * Adds rows to a JDBC batch, executes it every {@link #BATCH_SIZE} rows and commits every {@link #TRANSACTION_SIZE} rows.
+   */
+  private static final class BatchInsert implements AutoCloseable {
+    private final Connection connection;
+    private final PreparedStatement statement;
+    private int batched;
+    private int uncommitted;
+
+    BatchInsert(Connection connection, String sql) throws SQLException {
+      this.connection = connection;
+      this.statement = connection.prepareStatement(sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    void add() throws SQLException {
+      statement.addBatch();
+      if (++batched == BATCH_SIZE) {
+        flush();
+      }
+    }
+
+    private void flush() throws SQLException {
+      statement.executeBatch();
+      uncommitted += batched;
+      batched = 0;
+      if (uncommitted >= TRANSACTION_SIZE) {
+        connection.commit();
+        uncommitted = 0;
+      }
+    }
+
+    @Override
+    public void close() throws SQLException {
+      try {
+        if (batched > 0) {
+          flush();
+        }
+      } finally {
+        statement.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,104 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Resident index of the parent/child relations of all horses in the persistent data store.
+ * Answers pedigree questions in memory, without querying the data store.
+ * It is kept up to date by {@link HorseDao} on every write.
+ */
+public interface PedigreeIndex extends DerivedData {
+  /**
+   * Get the number of horses in the index.
+   *
+   * @return the number of indexed horses
+   */
+  int size();
+
+  /**
+   * Check whether the horse with ID {@code id} is the mother or father of any other horse.
+   *
+   * @param id the ID of the horse to check
+   * @return {@code true} if the horse has at least one child, {@code false} if it has none or is not indexed
+   */
+  boolean hasChildren(long id);
+
+  /**
+   * Get the date of birth of the oldest child of the horse with ID {@code id}.
+   *
+   * @param id the ID of the horse to get the oldest child's date of birth of
+   * @return the earliest date of birth of any of the horse's children, or {@code null} if it has none
+   */
+  LocalDate earliestBirthOfChildren(long id);
+
+  /**
+   * Check whether the horse with ID {@code ancestor} is an ancestor of the horse with ID {@code descendant}.
+   * The ancestors of {@code descendant} are walked breadth first, until {@code ancestor} is reached.
+   * A horse is not its own ancestor.
+   *
+   * @param ancestor the ID of the presumed ancestor
+   * @param descendant the ID of the presumed descendant
+   * @return {@code true} if {@code ancestor} is an ancestor of {@code descendant}, {@code false} if it is not or either is not indexed
+   */
+  boolean isAncestor(long ancestor, long descendant);
+
+  /**
+   * Get the IDs of the ancestors of the horse with ID {@code id}
+   * up to {@code generations} generations back.
+   * The horse itself is not included, every ancestor is contained exactly once.
+   *
+   * @param id the ID of the horse to get the ancestors of
+   * @param generations the number of generations to walk back
+   * @return the IDs of the ancestors in breadth first order, empty if the horse is not indexed
+   */
+  long[] ancestors(long id, int generations);
+
+  /**
+   * Get the IDs of the descendants of the horse with ID {@code id}
+   * up to {@code generations} generations down.
+   * The horse itself is not included, every descendant is contained exactly once.
+   *
+   * @param id the ID of the horse to get the descendants of
+   * @param generations the number of generations to walk down
+   * @return the IDs of the descendants in breadth first order, empty if the horse is not indexed
+   */
+  long[] descendants(long id, int generations);
+
+  /**
+   * Get the ancestors of the horse with ID {@code id} up to {@code generations} generations back,
+   * with the parent relations between them.
+   * The parents of the ancestors in generation {@code generations} are left out, even if they are
+   * ancestors in a closer generation on another line.
+   *
+   * @param id the ID of the horse to get the pedigree of
+   * @param generations the number of generations to walk back
+   * @return the pedigree of the horse, or {@code null} if the horse is not indexed
+   */
+  Pedigree pedigree(long id, int generations);
+
+  /**
+   * Get the ancestors of the horses with IDs {@code ids} up to {@code generations} generations back from the closest of them,
+   * with the parent relations between them, see {@link #pedigree(long, int)}.
+   * The horses are found in the pedigree by {@link Pedigree#indexOf(long)}.
+   *
+   * @param ids the IDs of the horses to get the pedigree of
+   * @param generations the number of generations to walk back
+   * @return the pedigree of the horses, or {@code null} if any of them is not indexed
+   */
+  Pedigree pedigree(long[] ids, int generations);
+
+  /**
+   * Find the nearest common ancestors of two horses, i.e. those with the least generations between them and the two horses,
+   * up to {@code generations} generations back from each of them.
+   * The ancestors of both horses are walked breadth first, one generation at a time, always on the side, that is
+   * fewer generations deep, and the walk stops, as soon as no common ancestor further back can be closer.
+   *
+   * @param a the ID of the one horse
+   * @param b the ID of the other horse
+   * @param generations the number of generations to walk back from each horse
+   * @return the nearest common ancestors, empty if the horses are not related within {@code generations} generations,
+   *     or {@code null} if either horse is not indexed
+   */
+  List<CommonAncestor> nearestCommonAncestors(long a, long b, int generations);
+}
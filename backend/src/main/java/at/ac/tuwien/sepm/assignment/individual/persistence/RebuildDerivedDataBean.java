@@ -0,0 +1,45 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence;
+
+import jakarta.annotation.PostConstruct;
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * This component is only created, if the profile {@code rebuild} is active,
+ * e.g. with {@code -Dspring-boot.run.profiles=rebuild} on the maven command line.
+ * It rebuilds all {@link DerivedData} (the ancestry window, the trigram index, …) of an existing database on startup,
+ * after it has been modified without going through the DAOs, or by a version of the backend that did not maintain all of it yet.
+ * <p>
+ * Derived data that is missing entirely is built on startup anyway, this is for data that is there, but out of date.
+ * </p>
+ */
+@Component
+@Profile("rebuild")
+public class RebuildDerivedDataBean {
+  private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private final List<DerivedData> derivedData;
+
+  /**
+   * Create the bean.
+   *
+   * @param derivedData all derived data to rebuild
+   */
+  public RebuildDerivedDataBean(List<DerivedData> derivedData) {
+    this.derivedData = derivedData;
+  }
+
+  /**
+   * Rebuild all derived data, one kind after the other.
+   */
+  @PostConstruct
+  public void rebuildDerivedData() {
+    LOGGER.info("Rebuilding derived data…");
+    var start = System.nanoTime();
+    derivedData.forEach(DerivedData::rebuild);
+    LOGGER.info("Rebuilt {} kinds of derived data in {} ms", derivedData.size(), (System.nanoTime() - start) / 1_000_000);
+  }
+}
@@ -0,0 +1,236 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseSearchDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.PageDto;
+import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
+import at.ac.tuwien.sepm.assignment.individual.exception.ConflictException;
+import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
+import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
+import at.ac.tuwien.sepm.assignment.individual.persistence.DerivedData;
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseDao;
+import at.ac.tuwien.sepm.assignment.individual.persistence.PedigreeIndex;
+import com.github.benmanes.caffeine.cache.Cache;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+
+/**
+ * {@link HorseDao} that reads horses by ID through a cache, and delegates everything else to {@link HorseJdbcDao}.
+ * <p>
+ * Popular sires and dams are part of thousands of pedigrees, so {@link #getWithAncestors(long)} looks the pedigree up
+ * in the pedigree index and only reads the horses from the data store, that are not cached yet.
+ * Family trees within {@link #ANCESTRY_WINDOW} generations are a single lookup in the ancestry window anyway,
+ * so they are read from the data store directly.
+ * The cache holds the entities, every reader gets its own copy.
+ * </p>
+ * <p>
+ * Writes invalidate exactly the horses whose rows they change:
+ * an update the updated horse, a delete the deleted horse and its children, whose parent the data store sets to {@code NULL}.
+ * A reader could still load a row right before a write, and put it into the cache right after the write invalidated it.
+ * So every write is counted after it is done, and a reader that saw the count change while it was loading
+ * invalidates what it just cached. Either that, or the write's own invalidation comes after the reader's put.
+ * </p>
+ */
+@Primary
+@Repository
+public class CachingHorseDao implements HorseDao, DerivedData {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private final HorseJdbcDao delegate;
+  private final Cache<Long, Horse> cache;
+  private final PedigreeIndex pedigreeIndex;
+  private final AtomicLong writes = new AtomicLong();
+
+  /**
+   * Create the DAO in front of the one of the data store.
+   *
+   * @param delegate the DAO, that reads and writes the data store
+   * @param horseCache the cache of horses by ID
+   * @param pedigreeIndex the index, that the IDs of the ancestors of a horse are looked up in
+   */
+  public CachingHorseDao(HorseJdbcDao delegate, Cache<Long, Horse> horseCache, PedigreeIndex pedigreeIndex) {
+    this.delegate = delegate;
+    this.cache = horseCache;
+    this.pedigreeIndex = pedigreeIndex;
+  }
+
+  @Override
+  public Horse getById(long id) throws NotFoundException {
+    LOG.trace("getById({})", id);
+    var horse = cache.getIfPresent(id);
+    if (horse == null) {
+      var writesBefore = writes.get();
+      horse = delegate.getById(id);
+      cache.put(id, horse);
+      if (writes.get() != writesBefore) {
+        cache.invalidate(id);
+      }
+    }
+    return copy(horse);
+  }
+
+  @Override
+  public Collection<Horse> getAllById(Collection<Long> ids) {
+    LOG.trace("getAllById({})", ids);
+    return getAll(ids).values().stream().map(CachingHorseDao::copy).toList();
+  }
+
+  @Override
+  public Collection<Horse> getWithAncestors(long id) throws NotFoundException {
+    LOG.trace("getWithAncestors({})", id);
+    return getWithAncestors(id, pedigreeIndex.ancestors(id, Integer.MAX_VALUE));
+  }
+
+  @Override
+  public Collection<Horse> getWithAncestors(long id, int generations) throws NotFoundException {
+    LOG.trace("getWithAncestors({}, {})", id, generations);
+    if (generations <= ANCESTRY_WINDOW) {
+      return delegate.getWithAncestors(id, generations);
+    }
+    return getWithAncestors(id, pedigreeIndex.ancestors(id, generations));
+  }
+
+  private Collection<Horse> getWithAncestors(long id, long[] ancestors) throws NotFoundException {
+    var ids = new ArrayList<Long>(ancestors.length + 1);
+    ids.add(id);
+    for (long ancestor : ancestors) {
+      ids.add(ancestor);
+    }
+    var pedigree = getAll(ids);
+    if (!pedigree.containsKey(id)) {
+      throw new NotFoundException("No horse with ID %d found".formatted(id));
+    }
+    return pedigree.values().stream().map(CachingHorseDao::copy).toList();
+  }
+
+  /**
+   * Get the horses with the given IDs from the cache, and read those that are not cached with one query.
+   */
+  private Map<Long, Horse> getAll(Collection<Long> ids) {
+    Map<Long, Horse> horses = new LinkedHashMap<>(cache.getAllPresent(ids));
+    var missing = new HashSet<Long>(ids);
+    missing.removeAll(horses.keySet());
+    if (!missing.isEmpty()) {
+      var writesBefore = writes.get();
+      Map<Long, Horse> loaded = new LinkedHashMap<>();
+      for (Horse horse : delegate.getAllById(missing)) {
+        loaded.put(horse.getId(), horse);
+      }
+      cache.putAll(loaded);
+      if (writes.get() != writesBefore) {
+        cache.invalidateAll(loaded.keySet());
+      }
+      horses.putAll(loaded);
+    }
+    return horses;
+  }
+
+  @Override
+  public Horse update(HorseDetailDto horse) throws NotFoundException, ConflictException {
+    LOG.trace("update({})", horse);
+    try {
+      return delegate.update(horse);
+    } finally {
+      written(List.of(horse.id()));
+    }
+  }
+
+  @Override
+  public Horse delete(long id) throws NotFoundException {
+    LOG.trace("delete({})", id);
+    var changed = new ArrayList<Long>();
+    changed.add(id);
+    for (long child : pedigreeIndex.descendants(id, 1)) {
+      changed.add(child);
+    }
+    try {
+      return delegate.delete(id);
+    } finally {
+      written(changed);
+    }
+  }
+
+  private void written(Collection<Long> ids) {
+    writes.incrementAndGet();
+    cache.invalidateAll(ids);
+  }
+
+  /**
+   * The data store was changed by a script, so nothing in the cache can be trusted anymore.
+   */
+  @Override
+  public void rebuild() {
+    LOG.trace("rebuild()");
+    writes.incrementAndGet();
+    cache.invalidateAll();
+  }
+
+  @Override
+  public Horse create(HorseDetailDto horse) throws ConflictException {
+    return delegate.create(horse);
+  }
+
+  @Override
+  public List<Horse> createAll(List<HorseDetailDto> horses) {
+    return delegate.createAll(horses);
+  }
+
+  @Override
+  public List<Horse> getAll() {
+    return delegate.getAll();
+  }
+
+  @Override
+  public PageDto<Horse> search(HorseSearchDto searchParameters) throws ValidationException {
+    return delegate.search(searchParameters);
+  }
+
+  @Override
+  public Stream<Horse> streamSearch(HorseSearchDto searchParameters) throws ValidationException {
+    return delegate.streamSearch(searchParameters);
+  }
+
+  @Override
+  public Stream<Horse> streamAll() {
+    return delegate.streamAll();
+  }
+
+  @Override
+  public List<Horse> getChildren(Long id) {
+    return delegate.getChildren(id);
+  }
+
+  @Override
+  public Collection<Horse> getChildrenOfAll(Collection<Long> ids) {
+    return delegate.getChildrenOfAll(ids);
+  }
+
+  @Override
+  public List<Horse> getDescendantsInGeneration(long id, int generation) {
+    return delegate.getDescendantsInGeneration(id, generation);
+  }
+
+  private static Horse copy(Horse horse) {
+    return new Horse()
+        .setId(horse.getId())
+        .setName(horse.getName())
+        .setDescription(horse.getDescription())
+        .setDateOfBirth(horse.getDateOfBirth())
+        .setSex(horse.getSex())
+        .setOwnerId(horse.getOwnerId())
+        .setMotherId(horse.getMotherId())
+        .setFatherId(horse.getFatherId())
+        ;
+  }
+}
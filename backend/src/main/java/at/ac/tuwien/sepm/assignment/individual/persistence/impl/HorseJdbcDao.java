@@ -2,26 +2,42 @@ package at.ac.tuwien.sepm.assignment.individual.persistence.impl;
 
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseSearchDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.PageDto;
 import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
 import at.ac.tuwien.sepm.assignment.individual.exception.ConflictException;
 import at.ac.tuwien.sepm.assignment.individual.exception.FatalException;
 import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
+import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
 import at.ac.tuwien.sepm.assignment.individual.persistence.HorseDao;
 import at.ac.tuwien.sepm.assignment.individual.type.Sex;
 
 import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
 
 
 
@@ -30,12 +46,39 @@ import org.springframework.stereotype.Repository;
 public class HorseJdbcDao implements HorseDao {
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
-  private static final String TABLE_NAME = "horse";
-  private static final String SQL_SELECT_ALL = "SELECT * FROM " + TABLE_NAME;
-  private static final String SQL_SELECT_BY_ID = "SELECT * FROM " + TABLE_NAME + " WHERE id = ?";
-  private static final String SQL_DELETE_BY_ID = "DELETE FROM " + TABLE_NAME + " WHERE id = ?";
-
-  private static final String SQL_UPDATE = "UPDATE " + TABLE_NAME
+  static final String TABLE_NAME = "horse";
+  static final String SQL_SELECT_ALL = "SELECT * FROM " + TABLE_NAME;
+  static final String SQL_SELECT_ALL_ORDERED = SQL_SELECT_ALL + " ORDER BY id";
+  static final String SQL_SELECT_BY_ID = "SELECT * FROM " + TABLE_NAME + " WHERE id = ?";
+  static final String SQL_SELECT_ALL_BY_ID = "SELECT * FROM " + TABLE_NAME + " WHERE id IN (:ids)";
+  // Two index lookups instead of an OR over both parent columns, which can not use either index.
+  static final String SQL_SELECT_CHILDREN = "SELECT * FROM " + TABLE_NAME + " WHERE mother_id = ?"
+      + " UNION SELECT * FROM " + TABLE_NAME + " WHERE father_id = ?";
+  static final String SQL_SELECT_CHILDREN_OF_ALL = "SELECT * FROM " + TABLE_NAME + " WHERE mother_id IN (:ids)"
+      + " UNION SELECT * FROM " + TABLE_NAME + " WHERE father_id IN (:ids)";
+  // A generation of descendants, nearest generation only, from the index of the closure on (ancestor_id, depth), see AncestryWindow.
+  static final String SQL_SELECT_DESCENDANTS_IN_GENERATION = "SELECT " + TABLE_NAME + ".* FROM horse_ancestry"
+      + " JOIN " + TABLE_NAME + " ON " + TABLE_NAME + ".id = horse_ancestry.descendant_id"
+      + " WHERE horse_ancestry.ancestor_id = ? AND horse_ancestry.depth = ?";
+  static final String SQL_SELECT_PARENTS_FOR_UPDATE = "SELECT mother_id, father_id FROM " + TABLE_NAME + " WHERE id = ? FOR UPDATE";
+  // Row locks on the horse and its parents do not keep two changes from closing a cycle together, this single row does.
+  static final String SQL_LOCK_PARENT_CHANGES = "SELECT id FROM pedigree_lock WHERE id = 1 FOR UPDATE";
+  // Horses (or owners) that contain the rarest trigram of a search term, see TrigramIndex.
+  static final String SQL_HORSE_CANDIDATES_CLAUSE = "horse.id IN (SELECT horse_id FROM horse_trigram WHERE field = ? AND trigram = ?)";
+  static final String SQL_OWNER_CANDIDATES_CLAUSE = "horse.owner_id IN (SELECT owner_id FROM owner_trigram WHERE trigram = ?)";
+  private static final String OWNER_FULL_NAME = "owner.first_name||' '||owner.last_name";
+  static final String SQL_DELETE_BY_ID = "DELETE FROM " + TABLE_NAME + " WHERE id = ?";
+
+  // The pedigree index knows the IDs of the ancestors, so their rows are fetched with one primary key lookup each.
+  // A recursive query can not do that in H2: it joins every generation by scanning the table,
+  // and its UNION does not drop ancestors reached on more than one path across generations, so inbred pedigrees explode.
+  static final String SQL_SELECT_ANY_ID = "SELECT * FROM " + TABLE_NAME + " WHERE id = ANY(?)";
+  // Within the generations of the closure, the depth limit is applied by the lookup itself, see AncestryWindow.
+  static final String SQL_SELECT_WITH_ANCESTORS_IN_CLOSURE = "SELECT " + TABLE_NAME + ".* FROM horse_ancestry"
+      + " JOIN " + TABLE_NAME + " ON " + TABLE_NAME + ".id = horse_ancestry.ancestor_id"
+      + " WHERE horse_ancestry.descendant_id = ? AND horse_ancestry.depth <= ?";
+
+  static final String SQL_UPDATE = "UPDATE " + TABLE_NAME
       + " SET name = ?"
       + "  , description = ?"
       + "  , date_of_birth = ?"
@@ -45,15 +88,38 @@ public class HorseJdbcDao implements HorseDao {
       + "  , father_id = ?"
       + " WHERE id = ?";
 
-  private static final String SQL_CREATE = "INSERT INTO " + TABLE_NAME
+  static final String SQL_CREATE = "INSERT INTO " + TABLE_NAME
           + "(name, description, date_of_birth, sex, owner_id, mother_id, father_id) "
           + "VALUES (?, ?, ?, ?, ?, ?, ?)";
 
+  // Rows a streaming query fetches from the database at once
+  private static final int STREAM_FETCH_SIZE = 500;
+  // Rows createAll sends to the database in one batch
+  private static final int INSERT_BATCH_SIZE = 1000;
+
   private final JdbcTemplate jdbcTemplate;
+  private final JdbcTemplate streamingJdbcTemplate;
+  private final NamedParameterJdbcTemplate jdbcNamed;
+  private final PedigreeArrayIndex pedigreeIndex;
+  private final TrigramIndex trigramIndex;
+  private final AncestryWindow ancestryWindow;
+  private final TransactionTemplate transactionTemplate;
 
   public HorseJdbcDao(
-      JdbcTemplate jdbcTemplate) {
+      JdbcTemplate jdbcTemplate,
+      NamedParameterJdbcTemplate jdbcNamed,
+      PedigreeArrayIndex pedigreeIndex,
+      TrigramIndex trigramIndex,
+      AncestryWindow ancestryWindow,
+      TransactionTemplate transactionTemplate) {
     this.jdbcTemplate = jdbcTemplate;
+    this.streamingJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+    this.streamingJdbcTemplate.setFetchSize(STREAM_FETCH_SIZE);
+    this.jdbcNamed = jdbcNamed;
+    this.pedigreeIndex = pedigreeIndex;
+    this.trigramIndex = trigramIndex;
+    this.ancestryWindow = ancestryWindow;
+    this.transactionTemplate = transactionTemplate;
   }
 
   @Override
@@ -79,97 +145,288 @@ public class HorseJdbcDao implements HorseDao {
     return horses.get(0);
   }
 
+  @Override
+  public Collection<Horse> getAllById(Collection<Long> ids) {
+    LOG.trace("getAllById({})", ids);
+    var statementParams = Collections.singletonMap("ids", ids);
+    return jdbcNamed.query(SQL_SELECT_ALL_BY_ID, statementParams, this::mapRow);
+  }
+
+  @Override
+  public Collection<Horse> getWithAncestors(long id) throws NotFoundException {
+    LOG.trace("getWithAncestors({})", id);
+    return getWithAncestors(id, pedigreeIndex.ancestors(id, Integer.MAX_VALUE));
+  }
 
   @Override
-  public Collection<Horse> search(HorseSearchDto searchParameters) {
+  public Collection<Horse> getWithAncestors(long id, int generations) throws NotFoundException {
+    LOG.trace("getWithAncestors({}, {})", id, generations);
+    if (generations <= ANCESTRY_WINDOW) {
+      List<Horse> horses = jdbcTemplate.query(SQL_SELECT_WITH_ANCESTORS_IN_CLOSURE, this::mapRow, id, generations);
+      if (horses.stream().anyMatch(horse -> horse.getId() == id)) {
+        return horses;
+      }
+      // Not in the closure, either the horse does not exist, or it was inserted bypassing the DAO
+    }
+    return getWithAncestors(id, pedigreeIndex.ancestors(id, generations));
+  }
+
+  private Collection<Horse> getWithAncestors(long id, long[] ancestors) throws NotFoundException {
+    var ids = new Long[ancestors.length + 1];
+    ids[0] = id;
+    for (int i = 0; i < ancestors.length; i++) {
+      ids[i + 1] = ancestors[i];
+    }
+    List<Horse> horses = jdbcTemplate.query(SQL_SELECT_ANY_ID, this::mapRow, (Object) ids);
+
+    if (horses.stream().noneMatch(horse -> horse.getId() == id)) {
+      throw new NotFoundException("No horse with ID %d found".formatted(id));
+    }
+
+    return horses;
+  }
+
+
+  @Override
+  public PageDto<Horse> search(HorseSearchDto searchParameters) throws ValidationException {
     LOG.trace("search({})", searchParameters);
-    String query = SQL_SELECT_ALL;
-    ArrayList<String> params = new ArrayList<>();
-    boolean first = true;
+    var query = searchQuery(searchParameters, trigramIndex);
+    List<SearchRow> rows = jdbcTemplate.query(query.sql(),
+        (rs, i) -> new SearchRow(mapRow(rs, i), sortKey(rs, query.ranks())),
+        query.params().toArray());
+
+    // One row more than the limit is fetched, to know whether there is another page.
+    String next = null;
+    var limit = searchParameters.limit();
+    if (limit != null && rows.size() > limit) {
+      rows = rows.subList(0, limit);
+      next = encodeCursor(rows.get(limit - 1).sortKey());
+    }
+    return new PageDto<>(rows.stream().map(SearchRow::horse).toList(), next);
+  }
 
-    if (searchParameters.ownerName() != null && !searchParameters.ownerName().isBlank()) {
-      query += " JOIN owner ON horse.owner_id = owner.id "
-              + "WHERE UPPER(owner.first_name||' '||owner.last_name) like UPPER('%'||COALESCE(?, '')||'%')";
-      params.add(searchParameters.ownerName());
-      first = false;
+  @Override
+  public Stream<Horse> streamSearch(HorseSearchDto searchParameters) throws ValidationException {
+    LOG.trace("streamSearch({})", searchParameters);
+    var query = searchQuery(searchParameters, trigramIndex);
+    // Unlike search, the limit is not raised by one: there is no next page to look for.
+    var params = new ArrayList<>(query.params());
+    if (searchParameters.limit() != null) {
+      params.set(params.size() - 1, searchParameters.limit());
     }
+    // The statement is only run, when the stream is consumed: on the consuming thread, in its transaction if there is one
+    var horses = new AtomicReference<Stream<Horse>>();
+    return StreamSupport.stream(() -> {
+      horses.set(streamingJdbcTemplate.queryForStream(query.sql(), this::mapRow, params.toArray()));
+      return horses.get().spliterator();
+    }, Spliterator.ORDERED | Spliterator.NONNULL, false)
+        .onClose(() -> {
+          if (horses.get() != null) {
+            horses.get().close();
+          }
+        });
+  }
 
-    if (searchParameters.name() != null && !searchParameters.name().isBlank()) {
-      if (first) {
-        query += " WHERE UPPER(name) like UPPER('%'||COALESCE(?, '')||'%')";
-      } else {
-        query += " AND UPPER(name) like UPPER('%'||COALESCE(?, '')||'%')";
-      }
-      params.add(searchParameters.name());
-      first = false;
+  @Override
+  public Stream<Horse> streamAll() {
+    LOG.trace("streamAll()");
+    return streamingJdbcTemplate.queryForStream(SQL_SELECT_ALL_ORDERED, this::mapRow);
+  }
+
+  /**
+   * Build the statement, that searches for horses matching {@code searchParameters}.
+   * Only filters that are set are added to the statement.
+   * <p>
+   * The horses are sorted by name and ID.
+   * If there are text filters, they are ranked by how well they match them before that:
+   * exact matches first, then prefix matches, then all others,
+   * comparing the name before the owner name before the description.
+   * A page starts right after the sort key in the cursor.
+   * Without text filters, it seeks there in the index on {@code (name, id)}, or {@code (sex, name, id)},
+   * instead of skipping the previous pages.
+   * The rank depends on the search terms, so with text filters, the cursor can only be compared to each match,
+   * and a page costs as much as reading and sorting all matches after it.
+   * </p>
+   *
+   * @param searchParameters the search parameters to build the statement for
+   * @param trigramIndex the index to look up the text filters in
+   * @return the statement and its parameters
+   * @throws ValidationException if the limit or the cursor is invalid
+   */
+  static SearchQuery searchQuery(HorseSearchDto searchParameters, TrigramIndex trigramIndex) throws ValidationException {
+    if (searchParameters.limit() != null && searchParameters.limit() < 1) {
+      throw new ValidationException("Searching horses failed", List.of("Limit must be at least 1"));
     }
+    String from = " FROM " + TABLE_NAME;
+    var conditions = new ArrayList<String>();
+    var params = new ArrayList<>();
+    var ranks = new ArrayList<String>();
+    var rankParams = new ArrayList<>();
 
+    if (searchParameters.ownerName() != null && !searchParameters.ownerName().isBlank()) {
+      from += " JOIN owner ON horse.owner_id = owner.id";
+    }
+    if (searchParameters.name() != null && !searchParameters.name().isBlank()) {
+      var name = searchParameters.name();
+      addTextFilter(conditions, params, "horse.name", name, SQL_HORSE_CANDIDATES_CLAUSE, List.of(TrigramIndex.FIELD_NAME),
+          trigramIndex.selectiveHorseTrigram(TrigramIndex.FIELD_NAME, name));
+      addRank(ranks, rankParams, "horse.name", searchParameters.name());
+    }
+    if (searchParameters.ownerName() != null && !searchParameters.ownerName().isBlank()) {
+      var ownerName = searchParameters.ownerName();
+      addTextFilter(conditions, params, OWNER_FULL_NAME, ownerName, SQL_OWNER_CANDIDATES_CLAUSE, List.of(),
+          trigramIndex.selectiveOwnerTrigram(ownerName));
+      addRank(ranks, rankParams, OWNER_FULL_NAME, searchParameters.ownerName());
+    }
     if (searchParameters.description() != null && !searchParameters.description().isBlank()) {
-      if (first) {
-        query += " WHERE UPPER(description) like UPPER('%'||COALESCE(?, '')||'%')";
-      } else {
-        query += " AND UPPER(description) like UPPER('%'||COALESCE(?, '')||'%')";
-      }
-      params.add(searchParameters.description());
-      first = false;
+      var description = searchParameters.description();
+      addTextFilter(conditions, params, "horse.description", description, SQL_HORSE_CANDIDATES_CLAUSE, List.of(TrigramIndex.FIELD_DESCRIPTION),
+          trigramIndex.selectiveHorseTrigram(TrigramIndex.FIELD_DESCRIPTION, description));
+      addRank(ranks, rankParams, "horse.description", searchParameters.description());
     }
-
     if (searchParameters.bornBefore() != null) {
-      if (first) {
-        query += " WHERE date_of_birth < ?";
-      } else {
-        query += " AND date_of_birth < ?";
-      }
-      params.add(searchParameters.bornBefore().toString());
-      first = false;
+      conditions.add("date_of_birth < ?");
+      params.add(searchParameters.bornBefore());
     }
-
     if (searchParameters.sex() != null) {
-      if (first) {
-        query += " WHERE sex = ?";
+      conditions.add("sex = ?");
+      params.add(searchParameters.sex().toString());
+    }
+    if (searchParameters.cursor() != null) {
+      var after = decodeCursor(searchParameters.cursor(), ranks.size());
+      if (ranks.isEmpty()) {
+        // Spelled out instead of a row value comparison, so the index on (name, id) can seek to the name.
+        conditions.add("horse.name >= ? AND (horse.name > ? OR horse.id > ?)");
+        params.addAll(List.of(after.get(0), after.get(0), after.get(1)));
       } else {
-        query += " AND sex = ?";
+        var placeholders = String.join(", ", Collections.nCopies(after.size(), "?"));
+        conditions.add("(" + String.join(", ", ranks) + ", horse.name, horse.id) > (" + placeholders + ")");
+        params.addAll(rankParams);
+        params.addAll(after);
       }
-      params.add(searchParameters.sex().toString());
     }
 
+    var select = new StringBuilder("SELECT horse.*");
+    var orderBy = new StringBuilder(" ORDER BY ");
+    for (int i = 0; i < ranks.size(); i++) {
+      select.append(", ").append(ranks.get(i)).append(" AS rank_").append(i);
+      orderBy.append("rank_").append(i).append(", ");
+    }
+    orderBy.append("horse.name, horse.id");
+    var query = select + from;
+    if (!conditions.isEmpty()) {
+      query += " WHERE " + String.join(" AND ", conditions);
+    }
+    query += orderBy;
+    // The parameters of the rank columns come first, they are selected before anything else.
+    var allParams = new ArrayList<>(rankParams);
+    allParams.addAll(params);
     if (searchParameters.limit() != null) {
-
       query += " LIMIT ?";
-      params.add(searchParameters.limit().toString());
+      allParams.add(searchParameters.limit() + 1);
+    }
+    return new SearchQuery(query, allParams, ranks.size());
+  }
+
+  /**
+   * Add a filter for texts in {@code column}, that contain {@code term}.
+   * If the term has a selective trigram, the horses are narrowed down to the candidates from the {@link TrigramIndex} first,
+   * so the substring only has to be checked for those.
+   */
+  private static void addTextFilter(List<String> conditions, List<Object> params, String column, String term,
+      String candidatesClause, List<Object> candidatesParams, String trigram) {
+    // LIKE wildcards and escapes in the term do not stand for themselves, so the trigrams of the term do not apply.
+    if (trigram != null && term.chars().noneMatch(c -> c == '%' || c == '_' || c == '\\')) {
+      conditions.add(candidatesClause);
+      params.addAll(candidatesParams);
+      params.add(trigram);
     }
+    conditions.add("UPPER(" + column + ") like UPPER('%'||COALESCE(?, '')||'%')");
+    params.add(term);
+  }
 
-    return jdbcTemplate.query(query, this::mapRow, params.toArray());
+  private static void addRank(List<String> ranks, List<Object> params, String column, String term) {
+    ranks.add("CASE WHEN UPPER(" + column + ") = UPPER(?) THEN 0 WHEN LOCATE(UPPER(?), UPPER(" + column + ")) = 1 THEN 1 ELSE 2 END");
+    params.add(term);
+    params.add(term);
   }
 
   public List<Horse> getChildren(Long id) {
     LOG.trace("getChildren({})", id);
-    String query = SQL_SELECT_ALL;
-    query += " WHERE father_id = ? OR mother_id = ?";
-    Object[] arr = {id, id};
+    return jdbcTemplate.query(SQL_SELECT_CHILDREN, this::mapRow, id, id);
+  }
 
-    List<Horse> horses;
-    horses = jdbcTemplate.query(query, this::mapRow, arr);
+  @Override
+  public Collection<Horse> getChildrenOfAll(Collection<Long> ids) {
+    LOG.trace("getChildrenOfAll({})", ids);
+    var statementParams = Collections.singletonMap("ids", ids);
+    return jdbcNamed.query(SQL_SELECT_CHILDREN_OF_ALL, statementParams, this::mapRow);
+  }
 
-    return horses;
+  @Override
+  public List<Horse> getDescendantsInGeneration(long id, int generation) {
+    LOG.trace("getDescendantsInGeneration({}, {})", id, generation);
+    return jdbcTemplate.query(SQL_SELECT_DESCENDANTS_IN_GENERATION, this::mapRow, id, generation);
   }
 
 
   @Override
-  public Horse update(HorseDetailDto horse) throws NotFoundException {
+  public Horse update(HorseDetailDto horse) throws NotFoundException, ConflictException {
     LOG.trace("update({})", horse);
-    int updated = jdbcTemplate.update(SQL_UPDATE,
-        horse.name(),
-        horse.description(),
-        horse.dateOfBirth(),
-        horse.sex().toString(),
-        horse.ownerId(),
-        horse.motherId(),
-        horse.fatherId(),
-        horse.id()
-    );
-    if (updated == 0) {
-      throw new NotFoundException("Could not update horse with ID " + horse.id() + ", because it does not exist");
+    List<String> conflictErrors = new ArrayList<>();
+    pedigreeIndex.writes().lock();
+    try {
+      Boolean updated = transactionTemplate.execute(status -> {
+        List<Long[]> parents = jdbcTemplate.query(SQL_SELECT_PARENTS_FOR_UPDATE,
+            (rs, i) -> new Long[] {rs.getObject("mother_id", Long.class), rs.getObject("father_id", Long.class)},
+            horse.id());
+        if (parents.isEmpty()) {
+          return false;
+        }
+        var parentsChange = !Arrays.equals(parents.get(0), new Long[] {horse.motherId(), horse.fatherId()});
+        if (parentsChange) {
+          // Checked in the transaction, under the lock of all parent changes, which holds across instances of the backend
+          jdbcTemplate.queryForList(SQL_LOCK_PARENT_CHANGES, Integer.class);
+          if (horse.motherId() != null && ancestryWindow.isAncestor(horse.id(), horse.motherId())) {
+            conflictErrors.add("Mother cannot be a descendant of the horse");
+          }
+          if (horse.fatherId() != null && ancestryWindow.isAncestor(horse.id(), horse.fatherId())) {
+            conflictErrors.add("Father cannot be a descendant of the horse");
+          }
+          if (!conflictErrors.isEmpty()) {
+            status.setRollbackOnly();
+            return false;
+          }
+        }
+        jdbcTemplate.update(SQL_UPDATE,
+            horse.name(),
+            horse.description(),
+            horse.dateOfBirth(),
+            horse.sex().toString(),
+            horse.ownerId(),
+            horse.motherId(),
+            horse.fatherId(),
+            horse.id()
+        );
+        if (parentsChange) {
+          // The ancestors of the horse have changed, and so have those of its descendants, that are close enough to reach them
+          var relinked = new ArrayList<Long>();
+          relinked.add(horse.id());
+          relinked.addAll(ancestryWindow.descendants(horse.id(), ANCESTRY_WINDOW - 1));
+          ancestryWindow.relink(relinked);
+        }
+        trigramIndex.indexHorse(horse.id(), horse.name(), horse.description());
+        return true;
+      });
+      if (!conflictErrors.isEmpty()) {
+        throw new ConflictException("Updating horse failed", conflictErrors);
+      }
+      if (!Boolean.TRUE.equals(updated)) {
+        throw new NotFoundException("Could not update horse with ID " + horse.id() + ", because it does not exist");
+      }
+      pedigreeIndex.update(horse.id(), horse.motherId(), horse.fatherId(), horse.dateOfBirth());
+    } finally {
+      pedigreeIndex.writes().unlock();
     }
 
     return new Horse()
@@ -196,36 +453,157 @@ public class HorseJdbcDao implements HorseDao {
     }
 
     GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
-    jdbcTemplate.update(con -> {
-      PreparedStatement stmt = con.prepareStatement(SQL_CREATE,
-              Statement.RETURN_GENERATED_KEYS);
-      stmt.setString(1, horse.name());
-      stmt.setString(2, horse.description());
-      stmt.setString(3, horse.dateOfBirth().toString());
-      stmt.setString(4, horse.sex().toString());
-      stmt.setString(5, horse.ownerId() != null ? horse.ownerId().toString() : null);
-      stmt.setString(6, horse.motherId() != null ? horse.motherId().toString() : null);
-      stmt.setString(7, horse.fatherId() != null ? horse.fatherId().toString() : null);
-      return stmt;
-    }, keyHolder);
-
-    Number key = keyHolder.getKey();
-    if (key == null) {
-      // This should never happen. If it does, something is wrong with the
-      //DB or the way the prepared statement is set up.
-      throw new FatalException("Could not extract key for newly created horse. There is probably a programming error…");
+    Horse created;
+    // Held until the index has the horse, so a child of it can not be indexed before it
+    pedigreeIndex.writes().lock();
+    try {
+      created = transactionTemplate.execute(status -> {
+        jdbcTemplate.update(con -> {
+          PreparedStatement stmt = con.prepareStatement(SQL_CREATE,
+                  Statement.RETURN_GENERATED_KEYS);
+          stmt.setString(1, horse.name());
+          stmt.setString(2, horse.description());
+          stmt.setString(3, horse.dateOfBirth().toString());
+          stmt.setString(4, horse.sex().toString());
+          stmt.setString(5, horse.ownerId() != null ? horse.ownerId().toString() : null);
+          stmt.setString(6, horse.motherId() != null ? horse.motherId().toString() : null);
+          stmt.setString(7, horse.fatherId() != null ? horse.fatherId().toString() : null);
+          return stmt;
+        }, keyHolder);
+
+        Number key = keyHolder.getKey();
+        if (key == null) {
+          // This should never happen. If it does, something is wrong with the
+          //DB or the way the prepared statement is set up.
+          throw new FatalException("Could not extract key for newly created horse. There is probably a programming error…");
+        }
+        var horseWithKey = new Horse()
+                .setId(key.longValue())
+                .setName(horse.name())
+                .setDescription(horse.description())
+                .setDateOfBirth(horse.dateOfBirth())
+                .setSex(horse.sex())
+                .setOwnerId(horse.ownerId())
+                .setMotherId(horse.motherId())
+                .setFatherId(horse.fatherId())
+                ;
+        ancestryWindow.addNewHorses(List.of(horseWithKey));
+        trigramIndex.indexNewHorses(List.of(horseWithKey));
+        return horseWithKey;
+      });
+      pedigreeIndex.add(created.getId(), horse.motherId(), horse.fatherId(), horse.dateOfBirth());
+    } finally {
+      pedigreeIndex.writes().unlock();
     }
 
-    return new Horse()
-            .setId(key.longValue())
-            .setName(horse.name())
-            .setDescription(horse.description())
-            .setDateOfBirth(horse.dateOfBirth())
-            .setSex(horse.sex())
-            .setOwnerId(horse.ownerId())
-            .setMotherId(horse.motherId())
-            .setFatherId(horse.fatherId())
-            ;
+    return created;
+  }
+
+  @Override
+  public List<Horse> createAll(List<HorseDetailDto> horses) {
+    LOG.trace("createAll({} horses)", horses.size());
+    List<Horse> created;
+    pedigreeIndex.writes().lock();
+    try {
+      created = transactionTemplate.execute(status -> {
+        var inserted = insertAll(horses);
+        trigramIndex.indexNewHorses(inserted);
+        ancestryWindow.addNewHorses(inserted);
+        return inserted;
+      });
+      // Only after the commit, the pedigree index must not know horses of a rolled back batch
+      for (Horse horse : created) {
+        pedigreeIndex.add(horse.getId(), horse.getMotherId(), horse.getFatherId(), horse.getDateOfBirth());
+      }
+    } finally {
+      pedigreeIndex.writes().unlock();
+    }
+    return created;
+  }
+
+  /**
+   * Insert the horses layer by layer: a horse is in the layer after the latest layer of its parents of the batch.
+   * The keys of a layer are known once it is inserted, and all horses of the next layer can be inserted in batches.
+   */
+  private List<Horse> insertAll(List<HorseDetailDto> horses) {
+    Map<HorseDetailDto, Integer> positions = new IdentityHashMap<>();
+    Map<HorseDetailDto, Integer> layerOfHorse = new IdentityHashMap<>();
+    List<List<HorseDetailDto>> layers = new ArrayList<>();
+    for (HorseDetailDto horse : horses) {
+      int layer = Math.max(layerOf(horse.mother(), layerOfHorse), layerOf(horse.father(), layerOfHorse)) + 1;
+      if (layer == layers.size()) {
+        layers.add(new ArrayList<>());
+      }
+      layers.get(layer).add(horse);
+      layerOfHorse.put(horse, layer);
+      positions.put(horse, positions.size());
+    }
+
+    var created = new Horse[horses.size()];
+    for (List<HorseDetailDto> layer : layers) {
+      for (int from = 0; from < layer.size(); from += INSERT_BATCH_SIZE) {
+        var batch = layer.subList(from, Math.min(from + INSERT_BATCH_SIZE, layer.size()));
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+          insertBatch(con, batch, positions, created);
+          return null;
+        });
+      }
+    }
+    return Arrays.asList(created);
+  }
+
+  private static int layerOf(HorseDetailDto parent, Map<HorseDetailDto, Integer> layerOfHorse) {
+    if (parent == null || parent.id() != null) {
+      return -1;
+    }
+    var layer = layerOfHorse.get(parent);
+    if (layer == null) {
+      throw new FatalException("Parent of a new horse is neither stored nor created before it. There is probably a programming error…");
+    }
+    return layer;
+  }
+
+  private void insertBatch(Connection con, List<HorseDetailDto> batch, Map<HorseDetailDto, Integer> positions, Horse[] created)
+      throws SQLException {
+    try (var stmt = con.prepareStatement(SQL_CREATE, Statement.RETURN_GENERATED_KEYS)) {
+      for (HorseDetailDto horse : batch) {
+        stmt.setString(1, horse.name());
+        stmt.setString(2, horse.description());
+        stmt.setObject(3, horse.dateOfBirth());
+        stmt.setString(4, horse.sex().toString());
+        stmt.setObject(5, horse.ownerId());
+        stmt.setObject(6, parentId(horse.mother(), positions, created));
+        stmt.setObject(7, parentId(horse.father(), positions, created));
+        stmt.addBatch();
+      }
+      stmt.executeBatch();
+      try (var keys = stmt.getGeneratedKeys()) {
+        for (HorseDetailDto horse : batch) {
+          if (!keys.next()) {
+            throw new FatalException("Could not extract keys for newly created horses. There is probably a programming error…");
+          }
+          created[positions.get(horse)] = new Horse()
+              .setId(keys.getLong(1))
+              .setName(horse.name())
+              .setDescription(horse.description())
+              .setDateOfBirth(horse.dateOfBirth())
+              .setSex(horse.sex())
+              .setOwnerId(horse.ownerId())
+              .setMotherId(parentId(horse.mother(), positions, created))
+              .setFatherId(parentId(horse.father(), positions, created))
+              ;
+        }
+      }
+    }
+  }
+
+  private static Long parentId(HorseDetailDto parent, Map<HorseDetailDto, Integer> positions, Horse[] created) {
+    if (parent == null) {
+      return null;
+    }
+    return parent.id() != null
+        ? parent.id()
+        : created[positions.get(parent)].getId();
   }
 
   @Override
@@ -235,10 +613,25 @@ public class HorseJdbcDao implements HorseDao {
     List<Horse> horses;
     horses = jdbcTemplate.query(SQL_SELECT_BY_ID, this::mapRow, id);
 
-    int deletedHorse = jdbcTemplate.update(SQL_DELETE_BY_ID, id);
-
-    if (deletedHorse == 0) {
-      throw new NotFoundException("No horse with ID %d found".formatted(id));
+    pedigreeIndex.writes().lock();
+    try {
+      Boolean deleted = transactionTemplate.execute(status -> {
+        // Close descendants lose the deleted horse and its ancestors, the rows of the horse itself cascade
+        var descendants = ancestryWindow.descendants(id, ANCESTRY_WINDOW - 1);
+        trigramIndex.unindexHorse(id);
+        if (jdbcTemplate.update(SQL_DELETE_BY_ID, id) == 0) {
+          return false;
+        }
+        ancestryWindow.relink(descendants);
+        return true;
+      });
+
+      if (!Boolean.TRUE.equals(deleted)) {
+        throw new NotFoundException("No horse with ID %d found".formatted(id));
+      }
+      pedigreeIndex.remove(id);
+    } finally {
+      pedigreeIndex.writes().unlock();
     }
 
     return horses.get(0);
@@ -257,4 +650,58 @@ public class HorseJdbcDao implements HorseDao {
         .setFatherId(result.getObject("father_id", Long.class))
         ;
   }
+
+  private static List<Object> sortKey(ResultSet result, int ranks) throws SQLException {
+    var key = new ArrayList<>();
+    for (int i = 0; i < ranks; i++) {
+      key.add(result.getInt("rank_" + i));
+    }
+    key.add(result.getString("name"));
+    key.add(result.getLong("id"));
+    return key;
+  }
+
+  /**
+   * Encode a sort key as an opaque cursor.
+   * The ranks come first, then the ID and then the name, which may contain any character.
+   */
+  static String encodeCursor(List<Object> sortKey) {
+    var ranks = sortKey.subList(0, sortKey.size() - 2).stream().map(String::valueOf).toList();
+    var plain = String.join(",", ranks) + ":" + sortKey.get(sortKey.size() - 1) + ":" + sortKey.get(sortKey.size() - 2);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static List<Object> decodeCursor(String cursor, int ranks) throws ValidationException {
+    try {
+      var parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", 3);
+      if (parts.length != 3) {
+        throw new IllegalArgumentException("Cursor has %d parts".formatted(parts.length));
+      }
+      var key = new ArrayList<>();
+      if (!parts[0].isEmpty()) {
+        for (String rank : parts[0].split(",")) {
+          key.add(Integer.parseInt(rank));
+        }
+      }
+      if (key.size() != ranks) {
+        throw new IllegalArgumentException("Cursor is for a search with %d text filters, not %d".formatted(key.size(), ranks));
+      }
+      key.add(parts[2]);
+      key.add(Long.parseLong(parts[1]));
+      return key;
+    } catch (IllegalArgumentException e) {
+      LOG.debug("Invalid cursor {}", cursor, e);
+      throw new ValidationException("Searching horses failed", List.of("Cursor is invalid for this search"));
+    }
+  }
+
+  /**
+   * The search statement together with the values of its parameters.
+   * Each row of the result has a column {@code rank_i} for each of the {@code ranks} text filters.
+   */
+  record SearchQuery(String sql, List<Object> params, int ranks) {
+  }
+
+  private record SearchRow(Horse horse, List<Object> sortKey) {
+  }
 }
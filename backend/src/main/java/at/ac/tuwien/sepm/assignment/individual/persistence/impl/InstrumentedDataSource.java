@@ -0,0 +1,237 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.persistence.JdbcStatistics;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Data source that records every statement run on its connections in the {@link JdbcStatistics}.
+ * <p>
+ * The connections and statements it hands out are proxies of the ones of the wrapped data source.
+ * Their result sets are wrapped in a {@link DelegatingResultSet} instead, which only intercepts {@link ResultSet#next()}
+ * and {@link ResultSet#close()}, so the getters of every column of every row are plain calls.
+ * The latency of a statement is the time of its execution, and for a query also the time spent in {@link ResultSet#next()},
+ * but not the time the caller spends with the rows in between, e.g. while a stream of them is written to a client.
+ * The query is recorded when its result set is closed.
+ * </p>
+ */
+public class InstrumentedDataSource extends DelegatingDataSource {
+  private static final String BATCH_OF_STATEMENTS = "(batch of statements)";
+
+  private final JdbcStatistics statistics;
+
+  /**
+   * Wrap a data source.
+   *
+   * @param dataSource the data source to wrap
+   * @param statistics the statistics to record the statements run on it in
+   */
+  public InstrumentedDataSource(DataSource dataSource, JdbcStatistics statistics) {
+    super(dataSource);
+    this.statistics = statistics;
+  }
+
+  @Override
+  public Connection getConnection() throws SQLException {
+    var start = System.nanoTime();
+    var connection = super.getConnection();
+    return instrument(connection, System.nanoTime() - start);
+  }
+
+  @Override
+  public Connection getConnection(String username, String password) throws SQLException {
+    var start = System.nanoTime();
+    var connection = super.getConnection(username, password);
+    return instrument(connection, System.nanoTime() - start);
+  }
+
+  private Connection instrument(Connection connection, long acquireNanos) {
+    var handler = new ConnectionHandler(connection, acquireNanos);
+    handler.proxy = proxy(Connection.class, handler);
+    return handler.proxy;
+  }
+
+  private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+    return type.cast(Proxy.newProxyInstance(InstrumentedDataSource.class.getClassLoader(), new Class<?>[] {type}, handler));
+  }
+
+  private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  private final class ConnectionHandler implements InvocationHandler {
+    private final Connection connection;
+    private Connection proxy;
+    // Recorded for the first statement run on the connection
+    private long acquireNanos;
+
+    ConnectionHandler(Connection connection, long acquireNanos) {
+      this.connection = connection;
+      this.acquireNanos = acquireNanos;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      // Spring compares the connection bound to a transaction with the ones it is given
+      if (method.getName().equals("equals")) {
+        return proxy == args[0];
+      } else if (method.getName().equals("hashCode")) {
+        return System.identityHashCode(proxy);
+      }
+      var result = InstrumentedDataSource.invoke(connection, method, args);
+      return switch (method.getName()) {
+        case "prepareStatement" -> statement(PreparedStatement.class, (Statement) result, (String) args[0]);
+        case "prepareCall" -> statement(CallableStatement.class, (Statement) result, (String) args[0]);
+        case "createStatement" -> statement(Statement.class, (Statement) result, null);
+        default -> result;
+      };
+    }
+
+    private <T extends Statement> T statement(Class<T> type, Statement statement, String sql) {
+      var handler = new StatementHandler(this, statement, sql);
+      var proxy = proxy(type, handler);
+      handler.proxy = proxy;
+      return proxy;
+    }
+
+    void executed(JdbcStatistics.Shape shape, long nanos, long rows, boolean failed) {
+      if (acquireNanos >= 0) {
+        shape.connectionAcquired(acquireNanos);
+        acquireNanos = -1;
+      }
+      shape.executed(nanos, rows, failed);
+    }
+  }
+
+  private final class StatementHandler implements InvocationHandler {
+    private final ConnectionHandler connection;
+    private final Statement statement;
+    private Statement proxy;
+    // Of a prepared statement, a plain statement is given its SQL when it is executed
+    private final String sql;
+
+    StatementHandler(ConnectionHandler connection, Statement statement, String sql) {
+      this.connection = connection;
+      this.statement = statement;
+      this.sql = sql;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      return switch (method.getName()) {
+        case "executeQuery" -> executeQuery(method, args);
+        case "execute", "executeUpdate", "executeLargeUpdate", "executeBatch", "executeLargeBatch" -> execute(method, args);
+        // Spring releases the connection of a statement, which has to be the one bound to the transaction
+        case "getConnection" -> connection.proxy;
+        default -> InstrumentedDataSource.invoke(statement, method, args);
+      };
+    }
+
+    private Object executeQuery(Method method, Object[] args) throws Throwable {
+      var shape = statistics.shape(executedSql(args));
+      var start = System.nanoTime();
+      try {
+        var resultSet = (ResultSet) InstrumentedDataSource.invoke(statement, method, args);
+        return new InstrumentedResultSet(connection, proxy, shape, resultSet, System.nanoTime() - start);
+      } catch (Throwable e) {
+        connection.executed(shape, System.nanoTime() - start, 0, true);
+        throw e;
+      }
+    }
+
+    private Object execute(Method method, Object[] args) throws Throwable {
+      var shape = statistics.shape(executedSql(args));
+      var start = System.nanoTime();
+      Object result;
+      try {
+        result = InstrumentedDataSource.invoke(statement, method, args);
+      } catch (Throwable e) {
+        connection.executed(shape, System.nanoTime() - start, 0, true);
+        throw e;
+      }
+      connection.executed(shape, System.nanoTime() - start, rows(result), false);
+      return result;
+    }
+
+    private String executedSql(Object[] args) {
+      if (args != null && args.length > 0 && args[0] instanceof String executed) {
+        return executed;
+      }
+      return sql == null ? BATCH_OF_STATEMENTS : sql;
+    }
+
+    private static long rows(Object result) {
+      if (result instanceof Number count) {
+        return Math.max(count.longValue(), 0);
+      }
+      var rows = 0L;
+      if (result instanceof int[] counts) {
+        for (int count : counts) {
+          rows += Math.max(count, 0);
+        }
+      } else if (result instanceof long[] counts) {
+        for (long count : counts) {
+          rows += Math.max(count, 0);
+        }
+      }
+      return rows;
+    }
+  }
+
+  private static final class InstrumentedResultSet extends DelegatingResultSet {
+    private final ConnectionHandler connection;
+    private final Statement statement;
+    private final JdbcStatistics.Shape shape;
+    private long nanos;
+    private long rows;
+    private boolean recorded;
+
+    InstrumentedResultSet(ConnectionHandler connection, Statement statement, JdbcStatistics.Shape shape, ResultSet resultSet,
+        long executeNanos) {
+      super(resultSet);
+      this.connection = connection;
+      this.statement = statement;
+      this.shape = shape;
+      this.nanos = executeNanos;
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+      var start = System.nanoTime();
+      var hasNext = delegate.next();
+      nanos += System.nanoTime() - start;
+      if (hasNext) {
+        rows++;
+      }
+      return hasNext;
+    }
+
+    @Override
+    public void close() throws SQLException {
+      if (!recorded) {
+        recorded = true;
+        connection.executed(shape, nanos, rows, false);
+      }
+      delegate.close();
+    }
+
+    @Override
+    public Statement getStatement() {
+      return statement;
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence.impl;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from {@code long} keys to {@code int} values, that does not box either of them.
+ * Uses linear probing and backward shift deletion, so removals never leave tombstones behind.
+ * {@link Long#MIN_VALUE} is reserved to mark empty slots and can not be used as a key.
+ * Not thread safe.
+ */
+final class LongIntHashMap {
+  static final int NO_VALUE = -1;
+
+  private static final long EMPTY = Long.MIN_VALUE;
+  private static final float LOAD_FACTOR = 0.75f;
+
+  private long[] keys;
+  private int[] values;
+  private int mask;
+  private int threshold;
+  private int size;
+
+  LongIntHashMap(int expectedSize) {
+    allocate(capacityFor(expectedSize));
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Get the value stored for {@code key}.
+   *
+   * @param key the key to look up
+   * @return the value stored for {@code key}, or {@link #NO_VALUE} if there is none
+   */
+  int get(long key) {
+    for (int i = slotOf(key); ; i = (i + 1) & mask) {
+      long k = keys[i];
+      if (k == key) {
+        return values[i];
+      }
+      if (k == EMPTY) {
+        return NO_VALUE;
+      }
+    }
+  }
+
+  void put(long key, int value) {
+    if (key == EMPTY) {
+      throw new IllegalArgumentException("Key %d is reserved".formatted(key));
+    }
+    for (int i = slotOf(key); ; i = (i + 1) & mask) {
+      long k = keys[i];
+      if (k == key) {
+        values[i] = value;
+        return;
+      }
+      if (k == EMPTY) {
+        keys[i] = key;
+        values[i] = value;
+        if (++size > threshold) {
+          rehash(keys.length << 1);
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Remove the value stored for {@code key}.
+   *
+   * @param key the key to remove
+   * @return the value, that was stored for {@code key}, or {@link #NO_VALUE} if there was none
+   */
+  int remove(long key) {
+    int i = slotOf(key);
+    while (keys[i] != key) {
+      if (keys[i] == EMPTY) {
+        return NO_VALUE;
+      }
+      i = (i + 1) & mask;
+    }
+    final int removed = values[i];
+    // Shift the following entries of the probe sequence back into the gap,
+    // unless that would move them in front of their home slot.
+    int gap = i;
+    for (int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+      int home = slotOf(keys[j]);
+      if (((j - home) & mask) >= ((j - gap) & mask)) {
+        keys[gap] = keys[j];
+        values[gap] = values[j];
+        gap = j;
+      }
+    }
+    keys[gap] = EMPTY;
+    size--;
+    return removed;
+  }
+
+  private int slotOf(long key) {
+    long hash = key * 0x9E3779B97F4A7C15L;
+    return (int) (hash ^ (hash >>> 32)) & mask;
+  }
+
+  private void rehash(int capacity) {
+    var oldKeys = keys;
+    var oldValues = values;
+    allocate(capacity);
+    size = 0;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != EMPTY) {
+        put(oldKeys[i], oldValues[i]);
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    Arrays.fill(keys, EMPTY);
+    values = new int[capacity];
+    mask = capacity - 1;
+    threshold = (int) (capacity * LOAD_FACTOR);
+  }
+
+  private static int capacityFor(int expectedSize) {
+    int minimum = Math.max(4, (int) Math.ceil(expectedSize / LOAD_FACTOR) + 1);
+    return Integer.highestOneBit(minimum - 1) << 1;
+  }
+}
@@ -11,34 +11,50 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Repository
 public class OwnerJdbcDao implements OwnerDao {
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
-  private static final String TABLE_NAME = "owner";
-  private static final String SQL_SELECT_BY_ID = "SELECT * FROM " + TABLE_NAME + " WHERE id = ?";
-  private static final String SQL_SELECT_ALL = "SELECT * FROM " + TABLE_NAME + " WHERE id IN (:ids)";
-  private static final String SQL_SELECT_SEARCH = "SELECT * FROM " + TABLE_NAME
-      + " WHERE UPPER(first_name||' '||last_name) like UPPER('%'||COALESCE(?, '')||'%')";
-  private static final String SQL_SELECT_SEARCH_LIMIT_CLAUSE = " LIMIT ?";
-  private static final String SQL_CREATE = "INSERT INTO " + TABLE_NAME + " (first_name, last_name, email) VALUES (?, ?, ?)";
+  static final String TABLE_NAME = "owner";
+  static final String SQL_SELECT_BY_ID = "SELECT * FROM " + TABLE_NAME + " WHERE id = ?";
+  static final String SQL_SELECT_ALL = "SELECT * FROM " + TABLE_NAME + " WHERE id IN (:ids)";
+  static final String SQL_SELECT_ALL_ORDERED = "SELECT * FROM " + TABLE_NAME + " ORDER BY id";
+  static final String SQL_CREATE = "INSERT INTO " + TABLE_NAME + " (first_name, last_name, email) VALUES (?, ?, ?)";
+
+  // Rows a streaming query fetches from the database at once
+  private static final int STREAM_FETCH_SIZE = 500;
 
   private final JdbcTemplate jdbcTemplate;
+  private final JdbcTemplate streamingJdbcTemplate;
   private final NamedParameterJdbcTemplate jdbcNamed;
+  private final TrigramIndex trigramIndex;
+  private final OwnerNameIndex nameIndex;
+  private final TransactionTemplate transactionTemplate;
 
-  public OwnerJdbcDao(JdbcTemplate jdbcTemplate, NamedParameterJdbcTemplate jdbcNamed) {
+  public OwnerJdbcDao(
+      JdbcTemplate jdbcTemplate,
+      NamedParameterJdbcTemplate jdbcNamed,
+      TrigramIndex trigramIndex,
+      OwnerNameIndex nameIndex,
+      TransactionTemplate transactionTemplate) {
     this.jdbcTemplate = jdbcTemplate;
+    this.streamingJdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+    this.streamingJdbcTemplate.setFetchSize(STREAM_FETCH_SIZE);
     this.jdbcNamed = jdbcNamed;
+    this.trigramIndex = trigramIndex;
+    this.nameIndex = nameIndex;
+    this.transactionTemplate = transactionTemplate;
   }
 
 
@@ -56,31 +72,43 @@ public class OwnerJdbcDao implements OwnerDao {
     return owners.get(0);
   }
 
+  @Override
+  public Stream<Owner> streamAll() {
+    LOG.trace("streamAll()");
+    return streamingJdbcTemplate.queryForStream(SQL_SELECT_ALL_ORDERED, this::mapRow);
+  }
+
   @Override
   public Owner create(OwnerCreateDto newOwner) {
     LOG.trace("create({})", newOwner);
 
     GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
-    jdbcTemplate.update(con -> {
-      PreparedStatement stmt = con.prepareStatement(SQL_CREATE, Statement.RETURN_GENERATED_KEYS);
-      stmt.setString(1, newOwner.firstName());
-      stmt.setString(2, newOwner.lastName());
-      stmt.setString(3, newOwner.email());
-      return stmt;
-    }, keyHolder);
+    Owner owner = transactionTemplate.execute(status -> {
+      jdbcTemplate.update(con -> {
+        PreparedStatement stmt = con.prepareStatement(SQL_CREATE, Statement.RETURN_GENERATED_KEYS);
+        stmt.setString(1, newOwner.firstName());
+        stmt.setString(2, newOwner.lastName());
+        stmt.setString(3, newOwner.email());
+        return stmt;
+      }, keyHolder);
 
-    Number key = keyHolder.getKey();
-    if (key == null) {
-      // This should never happen. If it does, something is wrong with the DB or the way the prepared statement is set up.
-      throw new FatalException("Could not extract key for newly created owner. There is probably a programming error…");
-    }
+      Number key = keyHolder.getKey();
+      if (key == null) {
+        // This should never happen. If it does, something is wrong with the DB or the way the prepared statement is set up.
+        throw new FatalException("Could not extract key for newly created owner. There is probably a programming error…");
+      }
+      trigramIndex.indexOwner(key.longValue(), newOwner.firstName(), newOwner.lastName());
 
-    return new Owner()
-        .setId(key.longValue())
-        .setFirstName(newOwner.firstName())
-        .setLastName(newOwner.lastName())
-        .setEmail(newOwner.email())
-        ;
+      return new Owner()
+          .setId(key.longValue())
+          .setFirstName(newOwner.firstName())
+          .setLastName(newOwner.lastName())
+          .setEmail(newOwner.email())
+          ;
+    });
+    // Only after the commit, the name index must not find an owner, that was rolled back
+    nameIndex.add(owner);
+    return owner;
   }
 
   @Override
@@ -93,15 +121,7 @@ public class OwnerJdbcDao implements OwnerDao {
   @Override
   public Collection<Owner> search(OwnerSearchDto searchParameters) {
     LOG.trace("search({})", searchParameters);
-    var query = SQL_SELECT_SEARCH;
-    var params = new ArrayList<>();
-    params.add(searchParameters.name());
-    var maxAmount = searchParameters.maxAmount();
-    if (maxAmount != null) {
-      query += SQL_SELECT_SEARCH_LIMIT_CLAUSE;
-      params.add(maxAmount);
-    }
-    return jdbcTemplate.query(query, this::mapRow, params.toArray());
+    return nameIndex.search(searchParameters.name(), searchParameters.maxAmount());
   }
 
   private Owner mapRow(ResultSet resultSet, int i) throws SQLException {
@@ -0,0 +1,235 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.entity.Owner;
+import at.ac.tuwien.sepm.assignment.individual.persistence.DerivedData;
+import jakarta.annotation.PostConstruct;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * In-memory autocomplete index over the names of all owners, that answers the owner search without a query.
+ * <p>
+ * Names are normalized by upper casing them and collapsing their whitespace.
+ * Every word of the full name ({@code first_name||' '||last_name}) starts an entry with the rest of the name from there on,
+ * so the entries of "Fritz Mayer" are "FRITZ MAYER" and "MAYER".
+ * The entries are kept sorted, so all owners with a word, first name, last name or full name that starts with the search term
+ * are next to each other, and the first {@code k} of them are found with one lookup and {@code k} steps.
+ * Owners that only contain the term inside of a word come after those.
+ * For them, every trigram of a full name lists the IDs of the owners, whose name contains it, in ascending order,
+ * and only the owners listed for the rarest trigram of the term are checked.
+ * A term shorter than a trigram only matches the start of a word.
+ * </p>
+ * <p>
+ * Owners are only ever created, {@link OwnerJdbcDao} adds every new owner here, once it is committed.
+ * Reads do not lock, a rebuild swaps in the new entries at once,
+ * and a new owner replaces the ID lists of its trigrams with longer copies.
+ * Memory per owner is the owner itself plus one skip list node and one string per word of the name,
+ * and 8 bytes per trigram of the name, a few hundred bytes in all.
+ * </p>
+ */
+@Component
+public class OwnerNameIndex implements DerivedData {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private static final String SQL_SELECT_ALL = "SELECT * FROM owner";
+  private static final long[] NO_IDS = new long[0];
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+  private final JdbcTemplate jdbcTemplate;
+  private final Object writes = new Object();
+  private volatile Names names = new Names();
+
+  /**
+   * Create an empty index.
+   *
+   * @param jdbcTemplate the template to read the names of all owners with
+   */
+  public OwnerNameIndex(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  /**
+   * Load the names of all owners of the data store.
+   */
+  @PostConstruct
+  public void initialize() {
+    rebuild();
+  }
+
+  @Override
+  public void rebuild() {
+    LOG.trace("rebuild()");
+    var start = System.nanoTime();
+    synchronized (writes) {
+      var owners = new ArrayList<Owner>();
+      jdbcTemplate.query(SQL_SELECT_ALL, rs -> {
+        owners.add(new Owner()
+            .setId(rs.getLong("id"))
+            .setFirstName(rs.getString("first_name"))
+            .setLastName(rs.getString("last_name"))
+            .setEmail(rs.getString("email")));
+      });
+      names = Names.of(owners);
+    }
+    LOG.debug("Built owner name index of {} owners in {} ms", names.byId.size(), (System.nanoTime() - start) / 1_000_000);
+  }
+
+  /**
+   * Add a new owner to the index.
+   *
+   * @param owner the owner, that has just been inserted
+   */
+  void add(Owner owner) {
+    LOG.trace("add({})", owner.getId());
+    synchronized (writes) {
+      names.add(copy(owner));
+    }
+  }
+
+  /**
+   * Find the owners, whose full name contains {@code term}, ignoring case and extra whitespace.
+   * Owners with a word that starts with the term come first, sorted by the name from that word on,
+   * then those that contain it anywhere else, sorted by ID, if the term is at least a trigram long.
+   *
+   * @param term the term to search for, {@code null} or blank matches every owner
+   * @param limit the maximum number of owners to return, {@code null} for all of them
+   * @return the first {@code limit} matching owners, each contained once
+   */
+  List<Owner> search(String term, Integer limit) {
+    LOG.trace("search({}, {})", term, limit);
+    var max = limit == null ? Integer.MAX_VALUE : Math.max(0, limit);
+    var prefix = normalize(term);
+    var current = names;
+    var found = new LinkedHashMap<Long, Owner>();
+    for (var entry : current.byWord.tailMap(new Word(prefix, Long.MIN_VALUE)).entrySet()) {
+      if (found.size() >= max || !entry.getKey().text().startsWith(prefix)) {
+        break;
+      }
+      found.putIfAbsent(entry.getKey().id(), entry.getValue());
+    }
+    for (long id : current.candidates(prefix)) {
+      if (found.size() >= max) {
+        break;
+      }
+      var named = current.byId.get(id);
+      if (!found.containsKey(id) && named.fullName().contains(prefix)) {
+        found.put(id, named.owner());
+      }
+    }
+    var owners = new ArrayList<Owner>(found.size());
+    found.values().forEach(owner -> owners.add(copy(owner)));
+    return owners;
+  }
+
+  /**
+   * Normalize a name or search term the way the index compares them.
+   *
+   * @param text the text to normalize, may be {@code null}
+   * @return the text upper cased, with every run of whitespace replaced by a single space, and trimmed
+   */
+  static String normalize(String text) {
+    if (text == null) {
+      return "";
+    }
+    return WHITESPACE.matcher(text.strip()).replaceAll(" ").toUpperCase(Locale.ROOT);
+  }
+
+  private static Owner copy(Owner owner) {
+    return new Owner()
+        .setId(owner.getId())
+        .setFirstName(owner.getFirstName())
+        .setLastName(owner.getLastName())
+        .setEmail(owner.getEmail());
+  }
+
+  /**
+   * The rest of an owner's normalized full name, from the start of one of its words on.
+   */
+  private record Word(String text, long id) {
+    static final Comparator<Word> ORDER = Comparator.comparing(Word::text).thenComparingLong(Word::id);
+  }
+
+  private record Named(Owner owner, String fullName) {
+  }
+
+  private static class Names {
+    private final NavigableMap<Word, Owner> byWord = new ConcurrentSkipListMap<>(Word.ORDER);
+    private final NavigableMap<Long, Named> byId = new ConcurrentSkipListMap<>();
+    private final Map<String, long[]> byTrigram = new ConcurrentHashMap<>();
+
+    static Names of(List<Owner> owners) {
+      var names = new Names();
+      var idsByTrigram = new HashMap<String, List<Long>>();
+      for (Owner owner : owners) {
+        for (String trigram : TrigramIndex.trigrams(names.addName(owner))) {
+          idsByTrigram.computeIfAbsent(trigram, t -> new ArrayList<>()).add(owner.getId());
+        }
+      }
+      idsByTrigram.forEach((trigram, ids) -> names.byTrigram.put(trigram, ids.stream().mapToLong(Long::longValue).sorted().toArray()));
+      return names;
+    }
+
+    void add(Owner owner) {
+      for (String trigram : TrigramIndex.trigrams(addName(owner))) {
+        byTrigram.merge(trigram, new long[] {owner.getId()}, Names::insert);
+      }
+    }
+
+    /**
+     * Get the IDs of the owners, whose name contains the rarest trigram of the normalized {@code term}.
+     *
+     * @return the IDs in ascending order, none if the term is shorter than a trigram
+     */
+    long[] candidates(String term) {
+      long[] rarest = NO_IDS;
+      var first = true;
+      for (String trigram : TrigramIndex.trigrams(term)) {
+        var ids = byTrigram.getOrDefault(trigram, NO_IDS);
+        if (first || ids.length < rarest.length) {
+          rarest = ids;
+          first = false;
+        }
+      }
+      return rarest;
+    }
+
+    // Before the trigrams, so that every ID a reader finds for a trigram is in byId
+    private String addName(Owner owner) {
+      var fullName = normalize(TrigramIndex.fullName(owner.getFirstName(), owner.getLastName()));
+      byId.put(owner.getId(), new Named(owner, fullName));
+      for (int i = 0; i < fullName.length(); i++) {
+        if (i == 0 || fullName.charAt(i - 1) == ' ') {
+          byWord.put(new Word(fullName.substring(i), owner.getId()), owner);
+        }
+      }
+      return fullName;
+    }
+
+    private static long[] insert(long[] ids, long[] added) {
+      var position = Arrays.binarySearch(ids, added[0]);
+      if (position >= 0) {
+        return ids;
+      }
+      var at = -position - 1;
+      var result = new long[ids.length + 1];
+      System.arraycopy(ids, 0, result, 0, at);
+      result[at] = added[0];
+      System.arraycopy(ids, at, result, at + 1, ids.length - at);
+      return result;
+    }
+  }
+}
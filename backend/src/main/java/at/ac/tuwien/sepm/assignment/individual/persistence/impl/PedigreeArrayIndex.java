@@ -0,0 +1,660 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.persistence.CommonAncestor;
+import at.ac.tuwien.sepm.assignment.individual.persistence.Pedigree;
+import at.ac.tuwien.sepm.assignment.individual.persistence.PedigreeIndex;
+import jakarta.annotation.PostConstruct;
+import java.lang.invoke.MethodHandles;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link PedigreeIndex} that stores the pedigree graph in primitive arrays.
+ * <p>
+ * Every horse occupies one slot. The slot of a horse's ID is looked up in an open addressing
+ * {@code long -> int} map, all other references between horses are slot numbers.
+ * The children of a horse are kept as an intrusive linked list: {@code firstChild} points to the first child,
+ * and every child links to the next child of its mother ({@code nextByMother}) and of its father ({@code nextByFather}).
+ * </p>
+ * <p>
+ * Memory per horse: 8 bytes ID, 4 bytes date of birth and 5 × 4 bytes for mother, father and the child links
+ * make 32 bytes of slot arrays, plus 12 bytes per hash map slot at 1.33 to 2.67 map slots per horse (16 to 32 bytes).
+ * That is about 48 to 64 bytes per horse, i.e. 50 to 65 MB for 1M horses and 0.5 to 0.65 GB for 10M horses.
+ * While an array grows, the old and the new array briefly exist side by side.
+ * For comparison, 1M boxed {@code Horse} entities in a {@code HashMap} take several hundred MB before counting any text.
+ * </p>
+ */
+@Component
+public class PedigreeArrayIndex implements PedigreeIndex {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private static final String SQL_SELECT_ALL = "SELECT id, mother_id, father_id, date_of_birth FROM horse";
+  private static final int NONE = -1;
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final JdbcTemplate jdbcTemplate;
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final Lock writes = new ReentrantLock();
+
+  private LongIntHashMap slots;
+  private long[] ids;
+  private int[] birth;
+  private int[] mother;
+  private int[] father;
+  private int[] firstChild;
+  private int[] nextByMother;
+  private int[] nextByFather;
+  private int[] freeSlots;
+  private int freeCount;
+  private int usedSlots;
+
+  /**
+   * Create an empty index.
+   *
+   * @param jdbcTemplate the template to read the pedigree of all horses with
+   */
+  public PedigreeArrayIndex(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+    allocate(INITIAL_CAPACITY);
+  }
+
+  /**
+   * Load the pedigree of all horses of the data store.
+   */
+  @PostConstruct
+  public void initialize() {
+    rebuild();
+  }
+
+  @Override
+  public void rebuild() {
+    LOG.trace("rebuild()");
+    var start = System.nanoTime();
+    lock.writeLock().lock();
+    try {
+      var rows = new Rows();
+      jdbcTemplate.query(SQL_SELECT_ALL, rs -> {
+        var motherId = rs.getLong("mother_id");
+        motherId = rs.wasNull() ? Long.MIN_VALUE : motherId;
+        var fatherId = rs.getLong("father_id");
+        fatherId = rs.wasNull() ? Long.MIN_VALUE : fatherId;
+        rows.add(rs.getLong("id"), motherId, fatherId, (int) rs.getDate("date_of_birth").toLocalDate().toEpochDay());
+      });
+
+      allocate(Math.max(INITIAL_CAPACITY, rows.count + rows.count / 4));
+      // All horses need a slot, before the parent links between them can be resolved.
+      for (int i = 0; i < rows.count; i++) {
+        newSlot(rows.ids[i], rows.births[i]);
+      }
+      for (int i = 0; i < rows.count; i++) {
+        link(slots.get(rows.ids[i]), slotOrNone(rows.mothers[i]), slotOrNone(rows.fathers[i]));
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+    LOG.info("Built pedigree index of {} horses in {} ms", size(), (System.nanoTime() - start) / 1_000_000);
+  }
+
+  @Override
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return slots.size();
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public boolean hasChildren(long id) {
+    lock.readLock().lock();
+    try {
+      var slot = slots.get(id);
+      return slot != NONE && firstChild[slot] != NONE;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public LocalDate earliestBirthOfChildren(long id) {
+    lock.readLock().lock();
+    try {
+      var slot = slots.get(id);
+      if (slot == NONE || firstChild[slot] == NONE) {
+        return null;
+      }
+      var earliest = Integer.MAX_VALUE;
+      for (int child = firstChild[slot]; child != NONE; child = nextChild(child, slot)) {
+        earliest = Math.min(earliest, birth[child]);
+      }
+      return LocalDate.ofEpochDay(earliest);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public boolean isAncestor(long ancestor, long descendant) {
+    lock.readLock().lock();
+    try {
+      var target = slots.get(ancestor);
+      var start = slots.get(descendant);
+      if (target == NONE || start == NONE) {
+        return false;
+      }
+      var queue = new SlotQueue();
+      queue.offer(start);
+      while (!queue.isEmpty()) {
+        var slot = queue.poll();
+        if (mother[slot] == target || father[slot] == target) {
+          return true;
+        }
+        queue.offer(mother[slot]);
+        queue.offer(father[slot]);
+      }
+      return false;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public long[] ancestors(long id, int generations) {
+    return walk(id, generations, true);
+  }
+
+  @Override
+  public long[] descendants(long id, int generations) {
+    return walk(id, generations, false);
+  }
+
+  @Override
+  public Pedigree pedigree(long id, int generations) {
+    return pedigree(new long[] {id}, generations);
+  }
+
+  @Override
+  public Pedigree pedigree(long[] ids, int generations) {
+    lock.readLock().lock();
+    try {
+      var queue = new SlotQueue();
+      for (var id : ids) {
+        var start = slots.get(id);
+        if (start == NONE) {
+          return null;
+        }
+        queue.offer(start);
+      }
+      final var roots = queue.tail;
+      for (int generation = 0; generation < generations && !queue.isEmpty(); generation++) {
+        var generationEnd = queue.tail;
+        while (queue.head < generationEnd) {
+          var slot = queue.poll();
+          queue.offer(mother[slot]);
+          queue.offer(father[slot]);
+        }
+      }
+      // The parents of the horses polled from the queue are in the pedigree, those of the rest are beyond the limit.
+      var positions = new LongIntHashMap(queue.tail);
+      for (int i = 0; i < queue.tail; i++) {
+        positions.put(queue.slots[i], i);
+      }
+      var mothers = new int[queue.tail];
+      var fathers = new int[queue.tail];
+      Arrays.fill(mothers, Pedigree.UNKNOWN);
+      Arrays.fill(fathers, Pedigree.UNKNOWN);
+      for (int i = 0; i < queue.head; i++) {
+        var slot = queue.slots[i];
+        mothers[i] = mother[slot] == NONE ? Pedigree.UNKNOWN : positions.get(mother[slot]);
+        fathers[i] = father[slot] == NONE ? Pedigree.UNKNOWN : positions.get(father[slot]);
+      }
+      return parentsFirst(queue.slots, mothers, fathers, queue.tail, roots);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public List<CommonAncestor> nearestCommonAncestors(long a, long b, int generations) {
+    lock.readLock().lock();
+    try {
+      var slotA = slots.get(a);
+      var slotB = slots.get(b);
+      if (slotA == NONE || slotB == NONE) {
+        return null;
+      }
+      var sideA = new Side();
+      var sideB = new Side();
+      var search = new CommonAncestorSearch(sideA, sideB);
+      search.reached(sideA, slotA);
+      search.reached(sideB, slotB);
+      while (true) {
+        var expandA = sideA.depth < generations && sideA.frontierSize > 0;
+        var expandB = sideB.depth < generations && sideB.frontierSize > 0;
+        // A common ancestor, that a side has not reached yet, is further back from it than its current depth
+        var closestUnreached = Math.min(expandA ? sideA.depth + 1 : Integer.MAX_VALUE, expandB ? sideB.depth + 1 : Integer.MAX_VALUE);
+        if (closestUnreached == Integer.MAX_VALUE || closestUnreached > search.closest) {
+          break;
+        }
+        var side = !expandB || (expandA && sideA.depth <= sideB.depth) ? sideA : sideB;
+        var frontier = side.frontier;
+        var frontierSize = side.frontierSize;
+        side.frontier = new int[16];
+        side.frontierSize = 0;
+        side.depth++;
+        for (int i = 0; i < frontierSize; i++) {
+          var slot = frontier[i];
+          search.reached(side, mother[slot]);
+          search.reached(side, father[slot]);
+        }
+      }
+      var result = new ArrayList<CommonAncestor>(search.found.size());
+      for (var slot : search.found) {
+        result.add(new CommonAncestor(ids[slot], sideA.generations.get(slot), sideB.generations.get(slot)));
+      }
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Renumber the horses of a pedigree from their breadth first positions, so that parents come before their children.
+   * The horses are numbered in depth first post-order from the roots, the first positions, one after the other.
+   * A single root ends up last.
+   * A parent link, that would close a cycle, is dropped.
+   */
+  private Pedigree parentsFirst(int[] slotsByPosition, int[] mothers, int[] fathers, int size, int roots) {
+    var order = new int[size];
+    Arrays.fill(order, NONE);
+    var orderedIds = new long[size];
+    var orderedMothers = new int[size];
+    var orderedFathers = new int[size];
+    // Positions on the path from the root, and how many of its parents have been visited for each
+    var stack = new int[size];
+    var visitedParents = new int[size];
+    var onStack = new BitSet(size);
+    var next = 0;
+    for (int root = 0; root < roots; root++) {
+      if (order[root] != NONE) {
+        // An ancestor of an earlier root
+        continue;
+      }
+      stack[0] = root;
+      visitedParents[0] = 0;
+      onStack.set(root);
+      var depth = 0;
+      while (depth >= 0) {
+        var position = stack[depth];
+        if (visitedParents[depth] < 2) {
+          var parents = visitedParents[depth]++ == 0 ? mothers : fathers;
+          var parent = parents[position];
+          if (parent != Pedigree.UNKNOWN && onStack.get(parent)) {
+            parents[position] = Pedigree.UNKNOWN;
+          } else if (parent != Pedigree.UNKNOWN && order[parent] == NONE) {
+            stack[++depth] = parent;
+            visitedParents[depth] = 0;
+            onStack.set(parent);
+          }
+          continue;
+        }
+        order[position] = next;
+        orderedIds[next] = ids[slotsByPosition[position]];
+        next++;
+        onStack.clear(position);
+        depth--;
+      }
+    }
+    for (int position = 0; position < size; position++) {
+      orderedMothers[order[position]] = mothers[position] == Pedigree.UNKNOWN ? Pedigree.UNKNOWN : order[mothers[position]];
+      orderedFathers[order[position]] = fathers[position] == Pedigree.UNKNOWN ? Pedigree.UNKNOWN : order[fathers[position]];
+    }
+    return new Pedigree(orderedIds, orderedMothers, orderedFathers);
+  }
+
+  /**
+   * Add a newly created horse to the index.
+   */
+  void add(long id, Long motherId, Long fatherId, LocalDate dateOfBirth) {
+    put(id, motherId, fatherId, dateOfBirth);
+  }
+
+  /**
+   * Get the lock, that creates, updates and deletes of stored horses hold from their transaction until the index is changed,
+   * so the index applies them in the order they were committed.
+   * Without it, a child committed after its parent could be indexed before it, and would be linked to no parent for good.
+   * It does not guard against cycles, other instances of the backend do not see it:
+   * {@link HorseJdbcDao#update} checks the new parents in its transaction.
+   * Readers of the index are not blocked by it.
+   */
+  Lock writes() {
+    return writes;
+  }
+
+  /**
+   * Change the parents and date of birth of an indexed horse.
+   */
+  void update(long id, Long motherId, Long fatherId, LocalDate dateOfBirth) {
+    put(id, motherId, fatherId, dateOfBirth);
+  }
+
+  /**
+   * Remove a deleted horse from the index.
+   * Like the {@code ON DELETE SET NULL} foreign keys in the data store, this clears the parent links of its children.
+   */
+  void remove(long id) {
+    lock.writeLock().lock();
+    try {
+      var slot = slots.remove(id);
+      if (slot == NONE) {
+        return;
+      }
+      for (int child = firstChild[slot]; child != NONE; ) {
+        var next = nextChild(child, slot);
+        if (mother[child] == slot) {
+          mother[child] = NONE;
+          nextByMother[child] = NONE;
+        }
+        if (father[child] == slot) {
+          father[child] = NONE;
+          nextByFather[child] = NONE;
+        }
+        child = next;
+      }
+      unlink(slot);
+      ids[slot] = Long.MIN_VALUE;
+      firstChild[slot] = NONE;
+      if (freeCount == freeSlots.length) {
+        freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+      }
+      freeSlots[freeCount++] = slot;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private long[] walk(long id, int generations, boolean towardsAncestors) {
+    lock.readLock().lock();
+    try {
+      var start = slots.get(id);
+      if (start == NONE) {
+        return new long[0];
+      }
+      var queue = new SlotQueue();
+      queue.offer(start);
+      for (int generation = 0; generation < generations && !queue.isEmpty(); generation++) {
+        var generationEnd = queue.tail;
+        while (queue.head < generationEnd) {
+          var slot = queue.poll();
+          if (towardsAncestors) {
+            queue.offer(mother[slot]);
+            queue.offer(father[slot]);
+          } else {
+            for (int child = firstChild[slot]; child != NONE; child = nextChild(child, slot)) {
+              queue.offer(child);
+            }
+          }
+        }
+      }
+      var result = new long[queue.tail - 1];
+      for (int i = 1; i < queue.tail; i++) {
+        result[i - 1] = ids[queue.slots[i]];
+      }
+      return result;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private void put(long id, Long motherId, Long fatherId, LocalDate dateOfBirth) {
+    lock.writeLock().lock();
+    try {
+      var slot = slots.get(id);
+      if (slot == NONE) {
+        slot = newSlot(id, (int) dateOfBirth.toEpochDay());
+        link(slot, slotOrNone(motherId), slotOrNone(fatherId));
+      } else {
+        relink(slot, motherId, fatherId, dateOfBirth);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  private void relink(int slot, Long motherId, Long fatherId, LocalDate dateOfBirth) {
+    birth[slot] = (int) dateOfBirth.toEpochDay();
+    var newMother = slotOrNone(motherId);
+    var newFather = slotOrNone(fatherId);
+    if (newMother != mother[slot] || newFather != father[slot]) {
+      unlink(slot);
+      link(slot, newMother, newFather);
+    }
+  }
+
+  private void link(int slot, int motherSlot, int fatherSlot) {
+    mother[slot] = motherSlot;
+    father[slot] = fatherSlot;
+    if (motherSlot != NONE) {
+      nextByMother[slot] = firstChild[motherSlot];
+      firstChild[motherSlot] = slot;
+    }
+    // A horse, that is recorded as both mother and father, must only be linked into one child list.
+    if (fatherSlot != NONE && fatherSlot != motherSlot) {
+      nextByFather[slot] = firstChild[fatherSlot];
+      firstChild[fatherSlot] = slot;
+    }
+  }
+
+  private void unlink(int slot) {
+    if (mother[slot] != NONE) {
+      removeChild(mother[slot], slot);
+    }
+    if (father[slot] != NONE && father[slot] != mother[slot]) {
+      removeChild(father[slot], slot);
+    }
+    mother[slot] = NONE;
+    father[slot] = NONE;
+    nextByMother[slot] = NONE;
+    nextByFather[slot] = NONE;
+  }
+
+  private void removeChild(int parent, int child) {
+    var previous = NONE;
+    for (int current = firstChild[parent]; current != NONE; current = nextChild(current, parent)) {
+      if (current == child) {
+        var next = nextChild(current, parent);
+        if (previous == NONE) {
+          firstChild[parent] = next;
+        } else if (mother[previous] == parent) {
+          nextByMother[previous] = next;
+        } else {
+          nextByFather[previous] = next;
+        }
+        return;
+      }
+      previous = current;
+    }
+  }
+
+  private int nextChild(int child, int parent) {
+    return mother[child] == parent
+        ? nextByMother[child]
+        : nextByFather[child];
+  }
+
+  private int slotOrNone(Long id) {
+    return id == null
+        ? NONE
+        : slotOrNone(id.longValue());
+  }
+
+  private int slotOrNone(long id) {
+    return id == Long.MIN_VALUE
+        ? NONE
+        : slots.get(id);
+  }
+
+  private int newSlot(long id, int dateOfBirth) {
+    int slot;
+    if (freeCount > 0) {
+      slot = freeSlots[--freeCount];
+    } else {
+      if (usedSlots == ids.length) {
+        grow(ids.length * 2);
+      }
+      slot = usedSlots++;
+    }
+    ids[slot] = id;
+    birth[slot] = dateOfBirth;
+    mother[slot] = NONE;
+    father[slot] = NONE;
+    firstChild[slot] = NONE;
+    nextByMother[slot] = NONE;
+    nextByFather[slot] = NONE;
+    slots.put(id, slot);
+    return slot;
+  }
+
+  private void allocate(int capacity) {
+    slots = new LongIntHashMap(capacity);
+    ids = new long[capacity];
+    birth = new int[capacity];
+    mother = new int[capacity];
+    father = new int[capacity];
+    firstChild = new int[capacity];
+    nextByMother = new int[capacity];
+    nextByFather = new int[capacity];
+    freeSlots = new int[16];
+    freeCount = 0;
+    usedSlots = 0;
+  }
+
+  private void grow(int capacity) {
+    ids = Arrays.copyOf(ids, capacity);
+    birth = Arrays.copyOf(birth, capacity);
+    mother = Arrays.copyOf(mother, capacity);
+    father = Arrays.copyOf(father, capacity);
+    firstChild = Arrays.copyOf(firstChild, capacity);
+    nextByMother = Arrays.copyOf(nextByMother, capacity);
+    nextByFather = Arrays.copyOf(nextByFather, capacity);
+  }
+
+  /**
+   * Breadth first queue of slots, that ignores empty and already visited slots.
+   */
+  private static final class SlotQueue {
+    private final BitSet visited = new BitSet();
+    private int[] slots = new int[16];
+    private int head;
+    private int tail;
+
+    void offer(int slot) {
+      if (slot == NONE || visited.get(slot)) {
+        return;
+      }
+      visited.set(slot);
+      if (tail == slots.length) {
+        slots = Arrays.copyOf(slots, tail * 2);
+      }
+      slots[tail++] = slot;
+    }
+
+    int poll() {
+      return slots[head++];
+    }
+
+    boolean isEmpty() {
+      return head == tail;
+    }
+  }
+
+  /**
+   * The ancestors of one of two horses, that the search for their nearest common ancestors has reached so far,
+   * with the number of generations between the horse and each of them.
+   */
+  private static final class Side {
+    private final LongIntHashMap generations = new LongIntHashMap(16);
+    private int[] frontier = new int[16];
+    private int frontierSize;
+    private int depth;
+  }
+
+  /**
+   * The nearest common ancestors of two horses found so far.
+   */
+  private static final class CommonAncestorSearch {
+    private final Side sideA;
+    private final Side sideB;
+    private final List<Integer> found = new ArrayList<>();
+    private int closest = Integer.MAX_VALUE;
+
+    CommonAncestorSearch(Side sideA, Side sideB) {
+      this.sideA = sideA;
+      this.sideB = sideB;
+    }
+
+    /**
+     * Record, that a side has reached a horse in the generation it is at.
+     * Horses, that the side has already reached, and missing parents are ignored.
+     */
+    void reached(Side side, int slot) {
+      if (slot == NONE || side.generations.get(slot) != LongIntHashMap.NO_VALUE) {
+        return;
+      }
+      side.generations.put(slot, side.depth);
+      if (side.frontierSize == side.frontier.length) {
+        side.frontier = Arrays.copyOf(side.frontier, side.frontierSize * 2);
+      }
+      side.frontier[side.frontierSize++] = slot;
+      var fromOtherSide = (side == sideA ? sideB : sideA).generations.get(slot);
+      if (fromOtherSide == LongIntHashMap.NO_VALUE) {
+        return;
+      }
+      var distance = side.depth + fromOtherSide;
+      if (distance < closest) {
+        closest = distance;
+        found.clear();
+      }
+      if (distance == closest) {
+        found.add(slot);
+      }
+    }
+  }
+
+  /**
+   * Growable buffer for the rows read while rebuilding the index.
+   */
+  private static final class Rows {
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private long[] mothers = new long[INITIAL_CAPACITY];
+    private long[] fathers = new long[INITIAL_CAPACITY];
+    private int[] births = new int[INITIAL_CAPACITY];
+    private int count;
+
+    void add(long id, long motherId, long fatherId, int dateOfBirth) {
+      if (count == ids.length) {
+        var capacity = count * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        mothers = Arrays.copyOf(mothers, capacity);
+        fathers = Arrays.copyOf(fathers, capacity);
+        births = Arrays.copyOf(births, capacity);
+      }
+      ids[count] = id;
+      mothers[count] = motherId;
+      fathers[count] = fatherId;
+      births[count] = dateOfBirth;
+      count++;
+    }
+  }
+}
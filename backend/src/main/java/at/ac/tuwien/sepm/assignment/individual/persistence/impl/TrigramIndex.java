@@ -0,0 +1,325 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
+import at.ac.tuwien.sepm.assignment.individual.persistence.DerivedData;
+import jakarta.annotation.PostConstruct;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Trigram index over the texts, that the horse search matches substrings in:
+ * the name and description of every horse and the full name of every owner.
+ * <p>
+ * A text is upper cased and split into all of its overlapping substrings of length 3.
+ * A text can only contain a search term, if it contains every trigram of the term.
+ * So the trigram tables narrow a substring search down to the few candidate rows, that contain its rarest trigram,
+ * and only those have to be checked with the actual {@code LIKE}.
+ * Terms shorter than three characters have no trigrams and can not be looked up.
+ * </p>
+ * <p>
+ * The DAOs write the trigrams in the same transaction as the rows they belong to, and remove them before deleting a horse.
+ * {@code ON DELETE CASCADE} removes them along with rows, that are deleted any other way.
+ * </p>
+ * <p>
+ * The index only pays off for terms, that few rows contain.
+ * H2 evaluates the candidate subquery again for each candidate row, so its cost grows with the square of the candidates,
+ * while a search without it reads the horses in name order and stops as soon as a page is full.
+ * To pick the rarest trigram and tell whether it is rare enough, the index keeps in memory how many rows contain each trigram.
+ * Those counts only change, once the transaction that wrote the trigrams has committed.
+ * </p>
+ */
+@Component
+public class TrigramIndex implements DerivedData {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  static final String FIELD_NAME = "N";
+  static final String FIELD_DESCRIPTION = "D";
+  static final String SQL_INSERT_HORSE = "INSERT INTO horse_trigram (field, trigram, horse_id) VALUES (?, ?, ?)";
+  static final String SQL_INSERT_OWNER = "INSERT INTO owner_trigram (trigram, owner_id) VALUES (?, ?)";
+  static final String SQL_SELECT_HORSE = "SELECT field, trigram FROM horse_trigram WHERE horse_id = ?";
+  static final String SQL_DELETE_HORSE = "DELETE FROM horse_trigram WHERE horse_id = ?";
+  static final String SQL_DELETE_ALL_HORSES = "DELETE FROM horse_trigram";
+  static final String SQL_DELETE_ALL_OWNERS = "DELETE FROM owner_trigram";
+  static final String SQL_SELECT_HORSE_TEXTS = "SELECT id, name, description FROM horse";
+  static final String SQL_SELECT_OWNER_TEXTS = "SELECT id, first_name, last_name FROM owner";
+  static final String SQL_COUNT_HORSE_TRIGRAMS = "SELECT field, trigram, COUNT(*) AS occurrences FROM horse_trigram GROUP BY field, trigram";
+  static final String SQL_COUNT_OWNER_TRIGRAMS = "SELECT trigram, COUNT(*) AS occurrences FROM owner_trigram GROUP BY trigram";
+  static final String SQL_ANY_INDEXED = "SELECT EXISTS (SELECT 1 FROM horse_trigram) OR EXISTS (SELECT 1 FROM owner_trigram)";
+  private static final int LENGTH = 3;
+  private static final int BATCH_SIZE = 1000;
+  // Above this many candidate rows, a search is faster without the index
+  private static final int MAX_CANDIDATES = 100;
+
+  private final JdbcTemplate jdbcTemplate;
+  // Number of horses per field and trigram, and of owners per trigram, that contain it
+  private final Map<String, Integer> horseOccurrences = new ConcurrentHashMap<>();
+  private final Map<String, Integer> ownerOccurrences = new ConcurrentHashMap<>();
+
+  /**
+   * Create the index over the trigram tables.
+   *
+   * @param jdbcTemplate the template to read and write the tables with
+   */
+  public TrigramIndex(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  /**
+   * Build the index once for a data store, that has been filled before the index existed.
+   */
+  @PostConstruct
+  public void initialize() {
+    if (!Boolean.TRUE.equals(jdbcTemplate.queryForObject(SQL_ANY_INDEXED, Boolean.class))) {
+      rebuild();
+    } else {
+      countOccurrences();
+    }
+  }
+
+  @Override
+  public void rebuild() {
+    LOG.trace("rebuild()");
+    final var start = System.nanoTime();
+    jdbcTemplate.update(SQL_DELETE_ALL_HORSES);
+    jdbcTemplate.update(SQL_DELETE_ALL_OWNERS);
+
+    var horseRows = new Batch(SQL_INSERT_HORSE);
+    jdbcTemplate.query(SQL_SELECT_HORSE_TEXTS, rs -> {
+      horseRows.addAll(horseRows(rs.getLong("id"), rs.getString("name"), rs.getString("description")));
+    });
+    horseRows.flush();
+
+    var ownerRows = new Batch(SQL_INSERT_OWNER);
+    jdbcTemplate.query(SQL_SELECT_OWNER_TEXTS, rs -> {
+      ownerRows.addAll(ownerRows(rs.getLong("id"), rs.getString("first_name"), rs.getString("last_name")));
+    });
+    ownerRows.flush();
+    countOccurrences();
+    LOG.debug("Rebuilt trigram index with {} horse and {} owner trigrams in {} ms",
+        horseRows.written, ownerRows.written, (System.nanoTime() - start) / 1_000_000);
+  }
+
+  /**
+   * Index the name and description of a horse, replacing what has been indexed for it before.
+   *
+   * @param id the ID of the horse
+   * @param name the name of the horse
+   * @param description the description of the horse, may be {@code null}
+   */
+  void indexHorse(long id, String name, String description) {
+    LOG.trace("indexHorse({})", id);
+    unindexHorse(id);
+    var rows = horseRows(id, name, description);
+    jdbcTemplate.batchUpdate(SQL_INSERT_HORSE, rows);
+    countAfterCommit(horseOccurrences, rows.stream().map(row -> (String) row[0] + row[1]).toList(), 1);
+  }
+
+  /**
+   * Index the names and descriptions of horses, that have just been created.
+   * Unlike {@link #indexHorse(long, String, String)}, nothing is removed first, and the rows are inserted in batches.
+   *
+   * @param horses the new horses
+   */
+  void indexNewHorses(Collection<Horse> horses) {
+    LOG.trace("indexNewHorses({} horses)", horses.size());
+    var batch = new Batch(SQL_INSERT_HORSE);
+    var indexed = new ArrayList<String>();
+    for (Horse horse : horses) {
+      var rows = horseRows(horse.getId(), horse.getName(), horse.getDescription());
+      batch.addAll(rows);
+      rows.forEach(row -> indexed.add((String) row[0] + row[1]));
+    }
+    batch.flush();
+    countAfterCommit(horseOccurrences, indexed, 1);
+  }
+
+  /**
+   * Remove everything, that has been indexed for a horse.
+   *
+   * @param id the ID of the horse
+   */
+  void unindexHorse(long id) {
+    LOG.trace("unindexHorse({})", id);
+    var unindexed = new ArrayList<String>();
+    jdbcTemplate.query(SQL_SELECT_HORSE, rs -> {
+      unindexed.add(rs.getString("field") + rs.getString("trigram"));
+    }, id);
+    jdbcTemplate.update(SQL_DELETE_HORSE, id);
+    countAfterCommit(horseOccurrences, unindexed, -1);
+  }
+
+  /**
+   * Index the full name of a new owner.
+   *
+   * @param id the ID of the owner
+   * @param firstName the first name of the owner
+   * @param lastName the last name of the owner
+   */
+  void indexOwner(long id, String firstName, String lastName) {
+    LOG.trace("indexOwner({})", id);
+    var rows = ownerRows(id, firstName, lastName);
+    jdbcTemplate.batchUpdate(SQL_INSERT_OWNER, rows);
+    countAfterCommit(ownerOccurrences, rows.stream().map(row -> (String) row[0]).toList(), 1);
+  }
+
+  /**
+   * Find the trigram of {@code term}, that the fewest horses contain in {@code field},
+   * if there are few enough of them, that looking them up is faster than checking all horses.
+   *
+   * @param field the field to look up the term in, {@link #FIELD_NAME} or {@link #FIELD_DESCRIPTION}
+   * @param term the search term
+   * @return the rarest trigram of the term, or {@code null} if the search should not use the index for the term
+   */
+  String selectiveHorseTrigram(String field, String term) {
+    return rarest(trigrams(term), trigram -> horseOccurrences.getOrDefault(field + trigram, 0));
+  }
+
+  /**
+   * Find the trigram of {@code term}, that the fewest owners contain in their full name,
+   * if there are few enough of them, that looking them up is faster than checking all horses.
+   *
+   * @param term the search term
+   * @return the rarest trigram of the term, or {@code null} if the search should not use the index for the term
+   */
+  String selectiveOwnerTrigram(String term) {
+    return rarest(trigrams(term), trigram -> ownerOccurrences.getOrDefault(trigram, 0));
+  }
+
+  /**
+   * Get how many horses contain a trigram in a field, as far as committed writes have told the index.
+   *
+   * @param field the field, {@link #FIELD_NAME} or {@link #FIELD_DESCRIPTION}
+   * @param trigram the upper cased trigram
+   * @return the number of horses, that contain the trigram in the field
+   */
+  int horseOccurrences(String field, String trigram) {
+    return horseOccurrences.getOrDefault(field + trigram, 0);
+  }
+
+  private static String rarest(Set<String> trigrams, ToIntFunction<String> occurrences) {
+    return trigrams.stream()
+        .min(Comparator.comparingInt(occurrences))
+        .filter(trigram -> occurrences.applyAsInt(trigram) <= MAX_CANDIDATES)
+        .orElse(null);
+  }
+
+  /**
+   * Split {@code text} into its distinct trigrams, in the order they first occur.
+   * Matching is case-insensitive, so the text is upper cased first, like the {@code UPPER} of the search statements does.
+   *
+   * @param text the text to split, may be {@code null}
+   * @return the distinct trigrams of the text, empty if it is shorter than three characters
+   */
+  static Set<String> trigrams(String text) {
+    var trigrams = new LinkedHashSet<String>();
+    if (text != null) {
+      var upper = text.toUpperCase(Locale.ROOT);
+      for (int i = 0; i + LENGTH <= upper.length(); i++) {
+        trigrams.add(upper.substring(i, i + LENGTH));
+      }
+    }
+    return trigrams;
+  }
+
+  /**
+   * Get the full name of an owner, as the horse search matches it.
+   *
+   * @param firstName the first name of the owner
+   * @param lastName the last name of the owner
+   * @return the full name
+   */
+  static String fullName(String firstName, String lastName) {
+    return firstName + " " + lastName;
+  }
+
+  private void countOccurrences() {
+    horseOccurrences.clear();
+    jdbcTemplate.query(SQL_COUNT_HORSE_TRIGRAMS, rs -> {
+      horseOccurrences.put(rs.getString("field") + rs.getString("trigram"), rs.getInt("occurrences"));
+    });
+    ownerOccurrences.clear();
+    jdbcTemplate.query(SQL_COUNT_OWNER_TRIGRAMS, rs -> {
+      ownerOccurrences.put(rs.getString("trigram"), rs.getInt("occurrences"));
+    });
+  }
+
+  /**
+   * Change the counts of {@code trigrams} by {@code change}, once the current transaction has committed,
+   * so a rolled back write leaves them as they were.
+   * Without a transaction, the statements have already committed, and the counts are changed right away.
+   */
+  private static void countAfterCommit(Map<String, Integer> occurrences, List<String> trigrams, int change) {
+    Runnable count = () -> trigrams.forEach(trigram -> occurrences.merge(trigram, change, Integer::sum));
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      count.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        count.run();
+      }
+    });
+  }
+
+  private static List<Object[]> horseRows(long id, String name, String description) {
+    var rows = new ArrayList<Object[]>();
+    for (String trigram : trigrams(name)) {
+      rows.add(new Object[] {FIELD_NAME, trigram, id});
+    }
+    for (String trigram : trigrams(description)) {
+      rows.add(new Object[] {FIELD_DESCRIPTION, trigram, id});
+    }
+    return rows;
+  }
+
+  private static List<Object[]> ownerRows(long id, String firstName, String lastName) {
+    var rows = new ArrayList<Object[]>();
+    for (String trigram : trigrams(fullName(firstName, lastName))) {
+      rows.add(new Object[] {trigram, id});
+    }
+    return rows;
+  }
+
+  /**
+   * Collects rows and inserts them in batches of {@link #BATCH_SIZE}.
+   */
+  private class Batch {
+    private final String sql;
+    private final List<Object[]> rows = new ArrayList<>();
+    private long written;
+
+    Batch(String sql) {
+      this.sql = sql;
+    }
+
+    void addAll(List<Object[]> newRows) {
+      rows.addAll(newRows);
+      if (rows.size() >= BATCH_SIZE) {
+        flush();
+      }
+    }
+
+    void flush() {
+      if (!rows.isEmpty()) {
+        jdbcTemplate.batchUpdate(sql, rows);
+        written += rows.size();
+        rows.clear();
+      }
+    }
+  }
+}
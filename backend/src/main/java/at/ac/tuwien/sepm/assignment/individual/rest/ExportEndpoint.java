@@ -0,0 +1,121 @@
+package at.ac.tuwien.sepm.assignment.individual.rest;
+
+import at.ac.tuwien.sepm.assignment.individual.service.ExportService;
+import at.ac.tuwien.sepm.assignment.individual.type.ExportFormat;
+import java.lang.invoke.MethodHandles;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * REST endpoint for the export of the whole registry.
+ */
+@RestController
+@RequestMapping(path = ExportEndpoint.BASE_PATH)
+public class ExportEndpoint {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  static final String BASE_PATH = "/export";
+  static final MediaType TEXT_CSV = MediaType.parseMediaType("text/csv");
+  static final MediaType APPLICATION_GEDCOM = MediaType.parseMediaType("application/x-gedcom");
+  // Compressed output is sent whenever this much has been collected
+  private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+  private final ExportService service;
+
+  /**
+   * Create the endpoint.
+   *
+   * @param service the service, that writes the export
+   */
+  public ExportEndpoint(ExportService service) {
+    this.service = service;
+  }
+
+  /**
+   * Export all owners and horses in one consistent snapshot, for example for nightly copies into other systems.
+   * The export is written while it is read from the persistent data store.
+   * If the client accepts gzip, it is compressed on the fly and sent with {@code Content-Encoding: gzip},
+   * otherwise it is sent as is.
+   *
+   * @param format the format to export in, NDJSON if none is given
+   * @param acceptEncoding the {@code Accept-Encoding} header of the request, if there is one
+   * @return the response, whose body writes the export, as an attachment with a file name for the format
+   */
+  @GetMapping
+  public ResponseEntity<StreamingResponseBody> export(
+      @RequestParam(defaultValue = "NDJSON") ExportFormat format,
+      @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+    LOG.info("GET " + BASE_PATH + "?format={}", format);
+    var filename = switch (format) {
+      case CSV -> "registry.csv";
+      case NDJSON -> "registry.ndjson";
+      case GEDCOM -> "registry.ged";
+    };
+    var contentType = switch (format) {
+      case CSV -> TEXT_CSV;
+      case NDJSON -> MediaType.APPLICATION_NDJSON;
+      case GEDCOM -> APPLICATION_GEDCOM;
+    };
+    var response = ResponseEntity.ok()
+        .contentType(contentType)
+        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+        .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(filename).build().toString());
+    if (!acceptsGzip(acceptEncoding)) {
+      return response.body(out -> service.export(format, out));
+    }
+    return response
+        .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+        .body(out -> {
+          try (var gzip = new GZIPOutputStream(out, GZIP_BUFFER_SIZE)) {
+            service.export(format, gzip);
+          }
+        });
+  }
+
+  /**
+   * Check whether an {@code Accept-Encoding} header allows gzip with a quality above zero.
+   * gzip itself is looked for first, and only if it is not listed, the wildcard decides.
+   *
+   * @param acceptEncoding the header, or {@code null} if there is none
+   * @return {@code true} if the response may be gzip compressed
+   */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    Double gzip = null;
+    Double wildcard = null;
+    for (String coding : acceptEncoding.split(",")) {
+      var parts = coding.split(";");
+      var name = parts[0].trim();
+      var quality = 1.0;
+      for (int i = 1; i < parts.length; i++) {
+        var parameter = parts[i].trim();
+        if (parameter.regionMatches(true, 0, "q=", 0, 2)) {
+          try {
+            quality = Double.parseDouble(parameter.substring(2));
+          } catch (NumberFormatException e) {
+            quality = 0;
+          }
+        }
+      }
+      if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")) {
+        gzip = quality;
+      } else if (name.equals("*")) {
+        wildcard = quality;
+      }
+    }
+    var allowed = gzip != null ? gzip : wildcard;
+    return allowed != null && allowed > 0;
+  }
+}
@@ -1,17 +1,39 @@
 package at.ac.tuwien.sepm.assignment.individual.rest;
 
+import at.ac.tuwien.sepm.assignment.individual.config.LogBody;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseDescendantDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseFamilyTreeDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseImportDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseImportReportDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseInbreedingDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseListDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseRelationshipDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseSearchDto;
 import at.ac.tuwien.sepm.assignment.individual.exception.ConflictException;
 import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
 import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseDao;
 import at.ac.tuwien.sepm.assignment.individual.service.HorseService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.invoke.MethodHandles;
+import java.util.List;
 import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -19,26 +41,71 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 @RestController
 @RequestMapping(path = HorseEndpoint.BASE_PATH)
 public class HorseEndpoint {
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
   static final String BASE_PATH = "/horses";
+  static final String TEXT_CSV_VALUE = "text/csv";
+  private static final CsvMapper CSV_MAPPER = CsvMapper.builder()
+      .addModule(new JavaTimeModule())
+      .enable(CsvParser.Feature.EMPTY_STRING_AS_NULL)
+      .build();
 
   private final HorseService service;
+  private final ObjectMapper objectMapper;
 
-  public HorseEndpoint(HorseService service) {
+  public HorseEndpoint(HorseService service, ObjectMapper objectMapper) {
     this.service = service;
+    this.objectMapper = objectMapper;
   }
 
+  /**
+   * Search horses.
+   * If there is a next page, its URL is sent in a {@code Link} header with {@code rel="next"},
+   * which only differs from the URL of this page by the {@code cursor} parameter.
+   * Without text filters, a page seeks to its cursor in an index on the sort order, so deep pages are as cheap as the first.
+   * With text filters, the horses are ranked by the search terms, which no index can be sorted by,
+   * so every page reads all matching horses and sorts the ones after its cursor.
+   *
+   * @param searchParameters the query parameters to search horses by
+   * @return the page of matching horses, with the {@code Link} to the next page, if there is one
+   * @throws ValidationException if the limit or the cursor of the parameters is invalid
+   */
   @GetMapping
-  public Stream<HorseListDto> searchHorses(HorseSearchDto searchParameters) {
+  public ResponseEntity<List<HorseListDto>> searchHorses(HorseSearchDto searchParameters) throws ValidationException {
     LOG.info("GET " + BASE_PATH);
     LOG.debug("request parameters: {}", searchParameters);
-    return service.search(searchParameters);
+    var page = service.search(searchParameters);
+    var response = ResponseEntity.ok();
+    if (page.next() != null) {
+      var next = ServletUriComponentsBuilder.fromCurrentRequest().replaceQueryParam("cursor", page.next()).toUriString();
+      response.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+    }
+    return response.body(page.content());
+  }
+
+  /**
+   * Search horses, and stream them as newline delimited JSON while they are read from the persistent data store.
+   * Meant for exporting large numbers of horses, so the response is neither paged nor built in memory first.
+   * The parameters are checked before the response starts, but the search only runs, when the body is written,
+   * on one connection, that is released when the body is done.
+   *
+   * @param searchParameters the query parameters to search horses by
+   * @return the body, that writes one matching horse per line
+   * @throws ValidationException if the limit or the cursor of the parameters is invalid
+   */
+  @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> streamHorses(HorseSearchDto searchParameters) throws ValidationException {
+    LOG.info("GET " + BASE_PATH + " as " + MediaType.APPLICATION_NDJSON_VALUE);
+    LOG.debug("request parameters: {}", searchParameters);
+    return ndjson(service.streamSearch(searchParameters), HorseListDto.class);
   }
 
   @GetMapping("{id}")
@@ -47,23 +114,155 @@ public class HorseEndpoint {
     return service.getById(id);
   }
 
+  /**
+   * Get the family tree of a horse, see {@link HorseService#getFamilyTree(long, int)}.
+   * Up to {@link HorseDao#ANCESTRY_WINDOW} generations, the ancestors are a single lookup in the ancestry window,
+   * deeper trees are looked up in the pedigree index.
+   *
+   * @param id the ID of the horse
+   * @param generations the number of generations of ancestors to include
+   * @return the family tree of the horse
+   * @throws NotFoundException if the horse does not exist
+   * @throws ValidationException if the number of generations is negative
+   */
+  @GetMapping("{id}/familytree")
+  public HorseFamilyTreeDto getFamilyTree(@PathVariable long id, @RequestParam int generations) throws NotFoundException, ValidationException {
+    LOG.info("GET " + BASE_PATH + "/{}/familytree?generations={}", id, generations);
+    return service.getFamilyTree(id, generations);
+  }
+
+  /**
+   * Get the coefficient of inbreeding of a horse, see {@link HorseService#getInbreedingCoefficient(long, int)}.
+   *
+   * @param id the ID of the horse
+   * @param generations the number of generations of ancestors to take into account
+   * @return the coefficient of inbreeding of the horse
+   * @throws NotFoundException if the horse does not exist
+   * @throws ValidationException if the number of generations is negative
+   */
+  @GetMapping("{id}/coi")
+  public HorseInbreedingDto getInbreedingCoefficient(@PathVariable long id, @RequestParam int generations)
+      throws NotFoundException, ValidationException {
+    LOG.info("GET " + BASE_PATH + "/{}/coi?generations={}", id, generations);
+    return service.getInbreedingCoefficient(id, generations);
+  }
+
+  /**
+   * Get the relationship of two horses, see {@link HorseService#getRelationship(long, long, Integer)}.
+   * The common ancestors are searched in the pedigree index, not in the ancestry window,
+   * which only reaches {@link HorseDao#ANCESTRY_WINDOW} generations.
+   *
+   * @param a the ID of the one horse
+   * @param b the ID of the other horse
+   * @param generations the number of generations of ancestors to take into account, all of them if not given
+   * @return the relationship of the horses
+   * @throws NotFoundException if either horse does not exist
+   * @throws ValidationException if the number of generations is negative
+   */
+  @GetMapping("{a}/relationship/{b}")
+  public HorseRelationshipDto getRelationship(@PathVariable long a, @PathVariable long b, @RequestParam(required = false) Integer generations)
+      throws NotFoundException, ValidationException {
+    LOG.info("GET " + BASE_PATH + "/{}/relationship/{}?generations={}", a, b, generations);
+    return service.getRelationship(a, b, generations);
+  }
+
+  /**
+   * Get the descendants of a horse, see {@link HorseService#getDescendants(long, Integer)}.
+   * The first {@link HorseDao#ANCESTRY_WINDOW} generations are one lookup each in the ancestry window,
+   * each generation after that takes one query per batch of horses of the generation before.
+   * The descendants are sent as newline delimited JSON while they are loaded, so if loading a generation fails
+   * after the response has started, the lines sent so far are still complete.
+   *
+   * @param id the ID of the horse
+   * @param generations the number of generations of descendants to include, all of them if not given
+   * @return the body, that writes one descendant per line, ordered by generation
+   * @throws NotFoundException if the horse does not exist
+   * @throws ValidationException if the number of generations is negative
+   */
+  @GetMapping(path = "{id}/descendants", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public ResponseEntity<StreamingResponseBody> getDescendants(@PathVariable long id, @RequestParam(required = false) Integer generations)
+      throws NotFoundException, ValidationException {
+    LOG.info("GET " + BASE_PATH + "/{}/descendants?generations={}", id, generations);
+    return ndjson(service.getDescendants(id, generations), HorseDescendantDto.class);
+  }
+
+  /**
+   * Create the response, that writes the elements of {@code stream} as newline delimited JSON, one per line,
+   * and closes the stream when it is done, also if writing fails.
+   */
+  private <T> ResponseEntity<StreamingResponseBody> ndjson(Stream<T> stream, Class<T> type) {
+    StreamingResponseBody body = out -> {
+      var writer = objectMapper.writerFor(type);
+      try (stream; var generator = objectMapper.createGenerator(out)) {
+        var iterator = stream.iterator();
+        while (iterator.hasNext()) {
+          writer.writeValue(generator, iterator.next());
+          generator.writeRaw('\n');
+        }
+      }
+    };
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+  }
+
 
   @PutMapping("{id}")
   public HorseDetailDto update(@PathVariable long id, @RequestBody HorseDetailDto toUpdate) throws ValidationException, ConflictException, NotFoundException {
-    LOG.info("PUT " + BASE_PATH + "/{}", toUpdate);
-    LOG.debug("Body of request:\n{}", toUpdate);
+    LOG.info("PUT " + BASE_PATH + "/{}", id);
+    LOG.debug("Body of request:\n{}", LogBody.of(toUpdate));
     return service.update(toUpdate.withId(id));
   }
 
   @PostMapping
   @ResponseStatus(HttpStatus.CREATED)
   public HorseDetailDto create(@RequestBody HorseDetailDto toCreate) throws ValidationException, ConflictException, NotFoundException {
-    LOG.info("POST " + BASE_PATH + "/{}", toCreate);
-    LOG.debug("Body of request:\n{}", toCreate);
+    LOG.info("POST " + BASE_PATH);
+    LOG.debug("Body of request:\n{}", LogBody.of(toCreate));
     return service.create(toCreate);
 
   }
 
+  /**
+   * Import many horses at once, given as newline delimited JSON with one {@link HorseImportDto} per line.
+   * See {@link HorseService#importAll(List)} for how the rows are validated and created.
+   *
+   * @param body the request body with the horses to import
+   * @return the result of each row, in the order of the body
+   * @throws ValidationException if the body could not be read as horses to import
+   * @throws IOException if reading the body fails
+   */
+  @PostMapping(path = "bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+  public HorseImportReportDto importNdjson(InputStream body) throws ValidationException, IOException {
+    LOG.info("POST " + BASE_PATH + "/bulk as " + MediaType.APPLICATION_NDJSON_VALUE);
+    return importRows(objectMapper.readerFor(HorseImportDto.class), body);
+  }
+
+  /**
+   * Import many horses at once, given as CSV with one {@link HorseImportDto} per line.
+   * The first line names the columns after the fields of {@link HorseImportDto}, an empty cell is no value.
+   *
+   * @param body the request body with the horses to import
+   * @return the result of each row, in the order of the body
+   * @throws ValidationException if the body could not be read as horses to import
+   * @throws IOException if reading the body fails
+   */
+  @PostMapping(path = "bulk", consumes = TEXT_CSV_VALUE)
+  public HorseImportReportDto importCsv(InputStream body) throws ValidationException, IOException {
+    LOG.info("POST " + BASE_PATH + "/bulk as " + TEXT_CSV_VALUE);
+    return importRows(CSV_MAPPER.readerFor(HorseImportDto.class).with(CsvSchema.emptySchema().withHeader()), body);
+  }
+
+  private HorseImportReportDto importRows(ObjectReader reader, InputStream body) throws ValidationException, IOException {
+    List<HorseImportDto> rows;
+    try (MappingIterator<HorseImportDto> iterator = reader.readValues(body)) {
+      rows = iterator.readAll();
+    } catch (JsonProcessingException e) {
+      var location = e.getLocation() == null ? "" : "Line %d: ".formatted(e.getLocation().getLineNr());
+      throw new ValidationException("Could not read the horses to import", List.of(location + e.getOriginalMessage()));
+    }
+    LOG.debug("Importing {} horses", rows.size());
+    return service.importAll(rows);
+  }
+
   @DeleteMapping("{id}")
   public HorseDetailDto delete(@PathVariable long id) throws NotFoundException {
     LOG.info("DELETE " + BASE_PATH + "/{}", id);
@@ -0,0 +1,51 @@
+package at.ac.tuwien.sepm.assignment.individual.rest;
+
+import at.ac.tuwien.sepm.assignment.individual.config.AccessLog;
+import at.ac.tuwien.sepm.assignment.individual.config.HttpMetrics;
+import java.lang.invoke.MethodHandles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * The {@link HttpMetrics} and the requests dropped by the {@link AccessLog}, for Prometheus to scrape.
+ */
+@RestController
+@RequestMapping(MetricsEndpoint.BASE_PATH)
+public class MetricsEndpoint {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  static final String BASE_PATH = "/metrics";
+  static final String PROMETHEUS_TEXT = "text/plain;version=0.0.4;charset=utf-8";
+
+  private final HttpMetrics metrics;
+  private final AccessLog accessLog;
+
+  /**
+   * Create the endpoint.
+   *
+   * @param metrics the metrics of the HTTP requests
+   * @param accessLog the access log, whose dropped requests are counted
+   */
+  public MetricsEndpoint(HttpMetrics metrics, AccessLog accessLog) {
+    this.metrics = metrics;
+    this.accessLog = accessLog;
+  }
+
+  /**
+   * Get all metrics.
+   *
+   * @return the metrics in the Prometheus text exposition format
+   */
+  @GetMapping(produces = PROMETHEUS_TEXT)
+  public String getMetrics() {
+    LOG.info("GET " + BASE_PATH);
+    var out = new StringBuilder();
+    metrics.writeTo(out);
+    out.append("# HELP access_log_dropped_total Requests not written to the access log, as its buffer was full.\n");
+    out.append("# TYPE access_log_dropped_total counter\n");
+    out.append("access_log_dropped_total ").append(accessLog.dropped()).append('\n');
+    return out.toString();
+  }
+}
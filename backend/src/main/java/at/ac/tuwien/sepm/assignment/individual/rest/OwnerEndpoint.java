@@ -1,5 +1,6 @@
 package at.ac.tuwien.sepm.assignment.individual.rest;
 
+import at.ac.tuwien.sepm.assignment.individual.config.LogBody;
 import at.ac.tuwien.sepm.assignment.individual.dto.OwnerCreateDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.OwnerDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.OwnerSearchDto;
@@ -38,8 +39,8 @@ public class OwnerEndpoint {
   @PostMapping
   @ResponseStatus(HttpStatus.CREATED)
   public OwnerDto create(@RequestBody OwnerCreateDto toCreate) throws ValidationException {
-    LOG.info("POST " + BASE_PATH + "/{}", toCreate);
-    LOG.debug("Body of request:\n{}", toCreate);
+    LOG.info("POST " + BASE_PATH);
+    LOG.debug("Body of request:\n{}", LogBody.of(toCreate));
     return service.create(toCreate);
   }
 }
@@ -0,0 +1,67 @@
+package at.ac.tuwien.sepm.assignment.individual.rest;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.CacheStatisticsDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.StatementStatisticsDto;
+import at.ac.tuwien.sepm.assignment.individual.persistence.JdbcStatistics;
+import com.github.benmanes.caffeine.cache.Cache;
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Operational statistics, e.g. to size the caches in production.
+ */
+@RestController
+@RequestMapping(StatisticsEndpoint.BASE_PATH)
+public class StatisticsEndpoint {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  static final String BASE_PATH = "/statistics";
+
+  private final Map<String, Cache<?, ?>> caches;
+  private final JdbcStatistics jdbcStatistics;
+
+  /**
+   * Create the endpoint.
+   *
+   * @param caches the caches by the names of their beans
+   * @param jdbcStatistics the statistics of the statements run on the data store
+   */
+  public StatisticsEndpoint(Map<String, Cache<?, ?>> caches, JdbcStatistics jdbcStatistics) {
+    this.caches = caches;
+    this.jdbcStatistics = jdbcStatistics;
+  }
+
+  /**
+   * The size and hit rate of every cache, sorted by name.
+   *
+   * @return the statistics of every cache
+   */
+  @GetMapping("caches")
+  public Stream<CacheStatisticsDto> getCaches() {
+    LOG.info("GET " + BASE_PATH + "/caches");
+    return caches.entrySet().stream()
+        .sorted(Map.Entry.comparingByKey())
+        .map(cache -> {
+          var stats = cache.getValue().stats();
+          return new CacheStatisticsDto(cache.getKey(), cache.getValue().estimatedSize(),
+              stats.hitCount(), stats.missCount(), stats.evictionCount(), stats.hitRate());
+        });
+  }
+
+  /**
+   * The statements run on the data store by their shape, the ones that took the most time first.
+   *
+   * @return the statistics of every statement shape
+   */
+  @GetMapping("jdbc")
+  public List<StatementStatisticsDto> getJdbc() {
+    LOG.info("GET " + BASE_PATH + "/jdbc");
+    return jdbcStatistics.getAll();
+  }
+}
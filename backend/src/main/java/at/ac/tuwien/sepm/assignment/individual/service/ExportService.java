@@ -0,0 +1,22 @@
+package at.ac.tuwien.sepm.assignment.individual.service;
+
+import at.ac.tuwien.sepm.assignment.individual.type.ExportFormat;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Service for exporting the whole registry of horses and owners.
+ */
+public interface ExportService {
+  /**
+   * Write all owners and all horses to {@code out}, in the given format.
+   * Both are read in one transaction, from the same snapshot of the persistent data store,
+   * and written while they are read, so the export is never held in memory as a whole.
+   * Horses refer to their owner and parents by ID.
+   *
+   * @param format the format to write the registry in
+   * @param out the stream to write to, which is not closed
+   * @throws IOException if writing to {@code out} fails
+   */
+  void export(ExportFormat format, OutputStream out) throws IOException;
+}
@@ -1,11 +1,19 @@
 package at.ac.tuwien.sepm.assignment.individual.service;
 
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseDescendantDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseFamilyTreeDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseImportDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseInbreedingDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseImportReportDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseListDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseRelationshipDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseSearchDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.PageDto;
 import at.ac.tuwien.sepm.assignment.individual.exception.ConflictException;
 import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
 import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
+import java.util.List;
 import java.util.stream.Stream;
 
 /**
@@ -14,6 +22,7 @@ import java.util.stream.Stream;
 public interface HorseService {
   /**
    * Lists all horses stored in the system.
+   * The parents of the horses are included as summaries without their own parents.
    *
    * @return list of all stored horses
    */
@@ -44,6 +53,19 @@ public interface HorseService {
    */
   HorseDetailDto create(HorseDetailDto horse) throws ValidationException, ConflictException, NotFoundException;
 
+  /**
+   * Create all horses of a bulk import in the persistent data store, in one transaction.
+   * The rows are validated like {@link #create(HorseDetailDto)} validates a single horse,
+   * but with one lookup of all referenced horses and owners for the whole import.
+   * Parents can be other rows of the import, the rows are created in an order where parents come before their children.
+   * Rows that fail validation are rejected, and so are rows with a rejected parent,
+   * all other rows are created.
+   *
+   * @param rows the rows of the import
+   * @return the result of each row, in the order of {@code rows}
+   */
+  HorseImportReportDto importAll(List<HorseImportDto> rows);
+
   /**
    * Delete the horse with given ID from the
    * persistent data store.
@@ -56,8 +78,8 @@ public interface HorseService {
 
   /**
    * Get the horse with given ID, with more detail information.
-   * This includes the owner of the horse, and its parents.
-   * The parents of the parents are not included.
+   * This includes the owner of the horse, and its whole pedigree,
+   * i.e. its parents, the parents of its parents, and so on.
    *
    * @param id the ID of the horse to get
    * @return the horse with ID {@code id}
@@ -65,12 +87,85 @@ public interface HorseService {
    */
   HorseDetailDto getById(long id) throws NotFoundException;
 
+  /**
+   * Get the family tree of the horse with given ID,
+   * limited to {@code generations} generations of ancestors.
+   * Horses at the generation limit, that have further ancestors, are marked as such,
+   * so that the tree can be expanded by requesting their family tree in turn.
+   *
+   * @param id the ID of the horse to get the family tree of
+   * @param generations the number of generations of ancestors to include
+   * @return the family tree of the horse with ID {@code id}
+   * @throws NotFoundException if the horse with the given ID does not exist in the persistent data store
+   * @throws ValidationException if the number of generations is negative
+   */
+  HorseFamilyTreeDto getFamilyTree(long id, int generations) throws NotFoundException, ValidationException;
+
+  /**
+   * Get Wright's coefficient of inbreeding of the horse with given ID,
+   * over the ancestors up to {@code generations} generations back.
+   * Common ancestors further back do not count.
+   *
+   * @param id the ID of the horse to get the inbreeding coefficient of
+   * @param generations the number of generations of ancestors to take into account
+   * @return the inbreeding coefficient of the horse with ID {@code id}
+   * @throws NotFoundException if the horse with the given ID does not exist in the persistent data store
+   * @throws ValidationException if the number of generations is negative
+   */
+  HorseInbreedingDto getInbreedingCoefficient(long id, int generations) throws NotFoundException, ValidationException;
+
+  /**
+   * Get the relationship of two horses: their nearest common ancestors,
+   * and Wright's coefficient of relationship over their ancestors up to {@code generations} generations back.
+   *
+   * @param a the ID of the one horse
+   * @param b the ID of the other horse
+   * @param generations the number of generations of ancestors to take into account, {@code null} for all of them
+   * @return the relationship of the horses
+   * @throws NotFoundException if either horse does not exist in the persistent data store
+   * @throws ValidationException if the number of generations is negative
+   */
+  HorseRelationshipDto getRelationship(long a, long b, Integer generations) throws NotFoundException, ValidationException;
+
+  /**
+   * Get the descendants of the horse with given ID,
+   * limited to {@code generations} generations.
+   * The descendants are walked breadth first and loaded one generation at a time,
+   * while the returned stream is consumed.
+   *
+   * @param id the ID of the horse to get the descendants of
+   * @param generations the number of generations of descendants to include, {@code null} for all of them
+   * @return a lazy stream of the descendants, ordered by generation
+   * @throws NotFoundException if the horse with the given ID does not exist in the persistent data store
+   * @throws ValidationException if the number of generations is negative
+   */
+  Stream<HorseDescendantDto> getDescendants(long id, Integer generations) throws NotFoundException, ValidationException;
+
   /**
    * Search horses that match the given parameters in the
    * persistent data store.
+   * The parents of the horses are included as summaries without their own parents.
+   * If the parameters have a limit, only one page of at most that many horses is returned,
+   * starting after the cursor of the parameters.
+   *
+   * @param searchParameters parameters to search horses by
+   * @return the page of horses which match with the parameters, with the cursor to the next page
+   * @throws ValidationException if the limit or the cursor of the parameters is invalid
+   */
+  PageDto<HorseListDto> search(HorseSearchDto searchParameters) throws ValidationException;
+
+  /**
+   * Search horses that match the given parameters in the
+   * persistent data store, and stream them as they are read.
+   * Like {@link #search(HorseSearchDto)}, but without pages, and the memory needed does not grow with the number of horses.
+   * The parents and owners are loaded for a batch of horses at a time.
+   * The parameters are checked right away, but nothing is read, before the stream is consumed.
+   * It is then read in a read-only transaction on the consuming thread, so the parents and owners are loaded
+   * on the same connection as the horses, and the stream only ever holds one connection, until it is closed.
    *
    * @param searchParameters parameters to search horses by
-   * @return stream of horses which match with the parameters
+   * @return the lazily read stream of the horses which match with the parameters, to be closed after use
+   * @throws ValidationException if the limit or the cursor of the parameters is invalid
    */
-  Stream<HorseListDto> search(HorseSearchDto searchParameters);
+  Stream<HorseListDto> streamSearch(HorseSearchDto searchParameters) throws ValidationException;
 }
@@ -37,6 +37,7 @@ public interface OwnerService {
    * A owner is considered matched, if its name contains {@code searchParameters.name} as a substring.
    * The returned stream of owners never contains more than {@code searchParameters.maxAmount} elements,
    *  even if there would be more matches in the persistent data store.
+   * Owners with a word of their name, that starts with {@code searchParameters.name}, come first, ready for autocompletion.
    * </p>
    *
    * @param searchParameters object containing the search parameters to match
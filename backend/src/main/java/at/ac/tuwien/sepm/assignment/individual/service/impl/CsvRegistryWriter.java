@@ -0,0 +1,69 @@
+package at.ac.tuwien.sepm.assignment.individual.service.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
+import at.ac.tuwien.sepm.assignment.individual.entity.Owner;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.dataformat.csv.CsvGenerator;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * Writes the registry as one CSV table.
+ * The {@code type} column tells owners from horses, each fills only the columns that belong to it.
+ */
+class CsvRegistryWriter implements RegistryWriter {
+  private static final CsvMapper CSV_MAPPER = CsvMapper.builder()
+      .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+      .enable(CsvGenerator.Feature.STRICT_CHECK_FOR_QUOTING)
+      .build();
+  private static final CsvSchema SCHEMA = CsvSchema.builder()
+      .addColumn("type")
+      .addColumn("id")
+      .addColumn("name")
+      .addColumn("description")
+      .addColumn("dateOfBirth")
+      .addColumn("sex")
+      .addColumn("ownerId")
+      .addColumn("motherId")
+      .addColumn("fatherId")
+      .addColumn("firstName")
+      .addColumn("lastName")
+      .addColumn("email")
+      .setUseHeader(true)
+      .build();
+
+  private final SequenceWriter rows;
+
+  CsvRegistryWriter(OutputStream out) throws IOException {
+    rows = CSV_MAPPER.writer(SCHEMA).writeValues(out);
+  }
+
+  @Override
+  public void writeOwner(Owner owner) throws IOException {
+    write("owner", owner.getId(), null, null, null, null, null, null, null, owner.getFirstName(), owner.getLastName(), owner.getEmail());
+  }
+
+  @Override
+  public void writeHorse(Horse horse) throws IOException {
+    write("horse", horse.getId(), horse.getName(), horse.getDescription(), horse.getDateOfBirth(), horse.getSex(),
+        horse.getOwnerId(), horse.getMotherId(), horse.getFatherId(), null, null, null);
+  }
+
+  private void write(Object... values) throws IOException {
+    // A null would be left out of the row instead of leaving its cell empty
+    var row = new String[values.length];
+    for (int i = 0; i < values.length; i++) {
+      row[i] = Objects.toString(values[i], "");
+    }
+    rows.write(row);
+  }
+
+  @Override
+  public void finish() throws IOException {
+    rows.close();
+  }
+}
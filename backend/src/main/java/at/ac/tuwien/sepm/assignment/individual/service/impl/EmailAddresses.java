@@ -0,0 +1,81 @@
+package at.ac.tuwien.sepm.assignment.individual.service.impl;
+
+/**
+ * Syntax check of email addresses, that looks at every character only once.
+ * <p>
+ * An address is checked as the {@code addr-spec} of RFC 822:
+ * dot separated words (atoms or quoted strings), an {@code @} and dot separated domain parts (atoms or domain literals).
+ * Comments, folding white space and the {@code Name <address>} forms are not accepted,
+ * as an owner's email is only ever a plain address.
+ * </p>
+ */
+final class EmailAddresses {
+  private static final String SPECIALS = "()<>@,;:\\\".[]";
+
+  private EmailAddresses() {
+  }
+
+  static boolean isValid(CharSequence address) {
+    var i = word(address, 0);
+    while (i >= 0 && i < address.length() && address.charAt(i) == '.') {
+      i = word(address, i + 1);
+    }
+    if (i < 0 || i >= address.length() || address.charAt(i) != '@') {
+      return false;
+    }
+    i = domainPart(address, i + 1);
+    while (i >= 0 && i < address.length() && address.charAt(i) == '.') {
+      i = domainPart(address, i + 1);
+    }
+    return i == address.length();
+  }
+
+  /**
+   * @return the index after the word starting at {@code start}, or -1 if there is none
+   */
+  private static int word(CharSequence address, int start) {
+    if (start < address.length() && address.charAt(start) == '"') {
+      return enclosed(address, start + 1, '"');
+    }
+    return atom(address, start);
+  }
+
+  private static int domainPart(CharSequence address, int start) {
+    if (start < address.length() && address.charAt(start) == '[') {
+      return enclosed(address, start + 1, ']');
+    }
+    return atom(address, start);
+  }
+
+  private static int atom(CharSequence address, int start) {
+    var i = start;
+    while (i < address.length() && isAtomChar(address.charAt(i))) {
+      i++;
+    }
+    return i > start ? i : -1;
+  }
+
+  /**
+   * A quoted string or domain literal, where a backslash quotes the next character.
+   */
+  private static int enclosed(CharSequence address, int start, char end) {
+    var i = start;
+    while (i < address.length()) {
+      var c = address.charAt(i);
+      if (c == end) {
+        return i + 1;
+      } else if (c == '\\') {
+        i += 2;
+      } else if (c == '\r' || c == '[' && end == ']') {
+        return -1;
+      } else {
+        i++;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean isAtomChar(char c) {
+    return c > ' ' && SPECIALS.indexOf(c) < 0;
+  }
+}
@@ -0,0 +1,80 @@
+package at.ac.tuwien.sepm.assignment.individual.service.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseDao;
+import at.ac.tuwien.sepm.assignment.individual.persistence.OwnerDao;
+import at.ac.tuwien.sepm.assignment.individual.service.ExportService;
+import at.ac.tuwien.sepm.assignment.individual.type.ExportFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Export, that reads all owners and horses in one read-only transaction, and streams them to the writer of the format.
+ */
+@Service
+public class ExportServiceImpl implements ExportService {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private final HorseDao horseDao;
+  private final OwnerDao ownerDao;
+  private final ObjectMapper objectMapper;
+  private final TransactionTemplate snapshotTransaction;
+
+  /**
+   * Create the service.
+   *
+   * @param horseDao the DAO the horses are read from
+   * @param ownerDao the DAO the owners are read from
+   * @param objectMapper the mapper, that writes the JSON of NDJSON exports
+   * @param transactionManager the manager of the transaction, that the export reads its snapshot in
+   */
+  public ExportServiceImpl(HorseDao horseDao, OwnerDao ownerDao, ObjectMapper objectMapper, PlatformTransactionManager transactionManager) {
+    this.horseDao = horseDao;
+    this.ownerDao = ownerDao;
+    this.objectMapper = objectMapper;
+    this.snapshotTransaction = new TransactionTemplate(transactionManager);
+    // H2 only fixes the snapshot of a table under REPEATABLE READ, when the transaction first reads that table,
+    // so horses created while the owners are exported would still show up, possibly with an owner missing from the export.
+    // SERIALIZABLE reads all tables from one snapshot, and does not block writers either.
+    this.snapshotTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_SERIALIZABLE);
+    this.snapshotTransaction.setReadOnly(true);
+  }
+
+  @Override
+  public void export(ExportFormat format, OutputStream out) throws IOException {
+    LOG.trace("export({})", format);
+    var writer = switch (format) {
+      case CSV -> new CsvRegistryWriter(out);
+      case NDJSON -> new NdjsonRegistryWriter(objectMapper, out);
+      case GEDCOM -> new GedcomRegistryWriter(out);
+    };
+    try {
+      snapshotTransaction.executeWithoutResult(status -> {
+        try {
+          try (var owners = ownerDao.streamAll()) {
+            for (var iterator = owners.iterator(); iterator.hasNext();) {
+              writer.writeOwner(iterator.next());
+            }
+          }
+          try (var horses = horseDao.streamAll()) {
+            for (var iterator = horses.iterator(); iterator.hasNext();) {
+              writer.writeHorse(iterator.next());
+            }
+          }
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    writer.finish();
+  }
+}
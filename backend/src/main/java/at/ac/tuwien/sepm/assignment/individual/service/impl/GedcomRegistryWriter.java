@@ -0,0 +1,101 @@
+package at.ac.tuwien.sepm.assignment.individual.service.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
+import at.ac.tuwien.sepm.assignment.individual.entity.Owner;
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Writes the registry as a pedigree in the style of GEDCOM 5.5.1.
+ * <p>
+ * Every horse is an {@code INDI} record with the cross reference {@code @H<id>@}, every owner a custom {@code _OWNR} record
+ * with {@code @O<id>@}. Instead of family records, which would need all children of a couple at once,
+ * a horse refers to its parents and owner directly with the custom tags {@code _MOTH}, {@code _FATH} and {@code _OWNR}.
+ * </p>
+ */
+class GedcomRegistryWriter implements RegistryWriter {
+  private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("d MMM yyyy", Locale.ENGLISH);
+  // GEDCOM lines must not exceed 255 characters, longer texts are continued with CONC
+  private static final int MAX_TEXT_LENGTH = 200;
+
+  private final Writer writer;
+
+  GedcomRegistryWriter(OutputStream out) throws IOException {
+    writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    line(0, "HEAD");
+    line(1, "SOUR WENDYS_FAMILY_TREE");
+    line(1, "GEDC");
+    line(2, "VERS 5.5.1");
+    line(2, "FORM LINEAGE-LINKED");
+    line(1, "CHAR UTF-8");
+  }
+
+  @Override
+  public void writeOwner(Owner owner) throws IOException {
+    line(0, "@O" + owner.getId() + "@ _OWNR");
+    text(1, "NAME", owner.getFirstName() + " /" + owner.getLastName() + "/");
+    if (owner.getEmail() != null) {
+      text(1, "EMAIL", owner.getEmail());
+    }
+  }
+
+  @Override
+  public void writeHorse(Horse horse) throws IOException {
+    line(0, "@H" + horse.getId() + "@ INDI");
+    text(1, "NAME", horse.getName());
+    line(1, "SEX " + (horse.getSex() == Sex.FEMALE ? "F" : "M"));
+    line(1, "BIRT");
+    line(2, "DATE " + DATE_FORMAT.format(horse.getDateOfBirth()).toUpperCase(Locale.ROOT));
+    if (horse.getDescription() != null) {
+      text(1, "NOTE", horse.getDescription());
+    }
+    if (horse.getOwnerId() != null) {
+      line(1, "_OWNR @O" + horse.getOwnerId() + "@");
+    }
+    if (horse.getMotherId() != null) {
+      line(1, "_MOTH @H" + horse.getMotherId() + "@");
+    }
+    if (horse.getFatherId() != null) {
+      line(1, "_FATH @H" + horse.getFatherId() + "@");
+    }
+  }
+
+  @Override
+  public void finish() throws IOException {
+    line(0, "TRLR");
+    writer.flush();
+  }
+
+  /**
+   * Write a text value, continuing it with {@code CONT} after each line break and with {@code CONC} if a line is too long.
+   */
+  private void text(int level, String tag, String value) throws IOException {
+    var lines = value.replace("@", "@@").split("\r\n|\r|\n", -1);
+    for (int i = 0; i < lines.length; i++) {
+      var remaining = lines[i];
+      var lineTag = i == 0 ? tag : "CONT";
+      var lineLevel = i == 0 ? level : level + 1;
+      do {
+        var part = remaining.substring(0, Math.min(MAX_TEXT_LENGTH, remaining.length()));
+        remaining = remaining.substring(part.length());
+        line(lineLevel, part.isEmpty() ? lineTag : lineTag + " " + part);
+        lineTag = "CONC";
+        lineLevel = level + 1;
+      } while (!remaining.isEmpty());
+    }
+  }
+
+  private void line(int level, String content) throws IOException {
+    writer.write(Integer.toString(level));
+    writer.write(' ');
+    writer.write(content);
+    writer.write('\n');
+  }
+}
@@ -1,8 +1,17 @@
 package at.ac.tuwien.sepm.assignment.individual.service.impl;
 
+import at.ac.tuwien.sepm.assignment.individual.dto.CommonAncestorDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseDescendantDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseFamilyTreeDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseImportDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseInbreedingDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseImportReportDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseImportRowDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseListDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseRelationshipDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseSearchDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.PageDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.OwnerDto;
 import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
 import at.ac.tuwien.sepm.assignment.individual.exception.ConflictException;
@@ -10,59 +19,73 @@ import at.ac.tuwien.sepm.assignment.individual.exception.FatalException;
 import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
 import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
 import at.ac.tuwien.sepm.assignment.individual.mapper.HorseMapper;
+import at.ac.tuwien.sepm.assignment.individual.persistence.CommonAncestor;
 import at.ac.tuwien.sepm.assignment.individual.persistence.HorseDao;
+import at.ac.tuwien.sepm.assignment.individual.persistence.PedigreeIndex;
 import at.ac.tuwien.sepm.assignment.individual.service.HorseService;
 import at.ac.tuwien.sepm.assignment.individual.service.OwnerService;
 import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
 
 @Service
 public class HorseServiceImpl implements HorseService {
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private static final int DESCENDANT_BATCH_SIZE = 1000;
+  private static final int STREAM_BATCH_SIZE = 500;
+  private static final TransactionDefinition READ_ONLY = readOnly();
   private final HorseDao dao;
   private final HorseMapper mapper;
   private final HorseValidator validator;
   private final OwnerService ownerService;
+  private final PedigreeIndex pedigreeIndex;
+  private final PlatformTransactionManager transactionManager;
 
-  public HorseServiceImpl(HorseDao dao, HorseMapper mapper, HorseValidator validator, OwnerService ownerService) {
+  public HorseServiceImpl(HorseDao dao, HorseMapper mapper, HorseValidator validator, OwnerService ownerService, PedigreeIndex pedigreeIndex,
+                          PlatformTransactionManager transactionManager) {
     this.dao = dao;
     this.mapper = mapper;
     this.validator = validator;
     this.ownerService = ownerService;
+    this.pedigreeIndex = pedigreeIndex;
+    this.transactionManager = transactionManager;
+  }
+
+  private static TransactionDefinition readOnly() {
+    var definition = new DefaultTransactionDefinition();
+    definition.setReadOnly(true);
+    return definition;
   }
 
   @Override
   public Stream<HorseListDto> allHorses() {
     LOG.trace("allHorses()");
-    var horses = dao.getAll();
-    var ownerIds = horses.stream()
-        .map(Horse::getOwnerId)
-        .filter(Objects::nonNull)
-        .collect(Collectors.toUnmodifiableSet());
-    Map<Long, OwnerDto> ownerMap;
-    try {
-      ownerMap = ownerService.getAllById(ownerIds);
-    } catch (NotFoundException e) {
-      throw new FatalException("Horse, that is already persisted, refers to non-existing owner", e);
-    }
-    return horses.stream()
-        .map(horse -> {
-          try {
-            return mapper.entityToListDto(horse, ownerMap, getMother(horse), getFather(horse));
-          } catch (NotFoundException e) {
-            throw new FatalException("Horse, that is already persisted, refers to non-existing parent", e);
-          }
-        });
+    return entitiesToListDtos(dao.getAll());
   }
 
 
@@ -71,21 +94,18 @@ public class HorseServiceImpl implements HorseService {
     LOG.trace("update({})", horse);
     validator.validateForUpdate(horse);
     validator.checkMotherFather(horse);
-    List<Horse> children = dao.getChildren(horse.id());
     List<String> conflictErrors = new ArrayList<>();
 
 
-    HorseDetailDto oldHorse = getById(horse.id());
-    if (oldHorse.sex() != horse.sex()) {
-      if (!children.isEmpty()) {
+    Horse oldHorse = dao.getById(horse.id());
+    if (oldHorse.getSex() != horse.sex()) {
+      if (pedigreeIndex.hasChildren(horse.id())) {
         conflictErrors.add("Cant change sex if the horse has children");
       }
     }
-    for (Horse c :
-            children) {
-      if (horse.dateOfBirth().isAfter(c.getDateOfBirth())) {
-        conflictErrors.add("Horse cannot be born after one or more children");
-      }
+    var earliestBirthOfChildren = pedigreeIndex.earliestBirthOfChildren(horse.id());
+    if (earliestBirthOfChildren != null && horse.dateOfBirth().isAfter(earliestBirthOfChildren)) {
+      conflictErrors.add("Horse cannot be born after one or more children");
     }
     conflictErrors.addAll(checkIfMotherFatherOwnerExists(horse));
 
@@ -94,12 +114,7 @@ public class HorseServiceImpl implements HorseService {
     }
 
     var updatedHorse = dao.update(horse);
-    return mapper.entityToDetailDto(
-        updatedHorse,
-        ownerMapForSingleId(updatedHorse.getOwnerId()),
-        getMother(updatedHorse),
-        getFather(updatedHorse)
-    );
+    return assembleDetailDto(updatedHorse);
   }
 
   @Override
@@ -114,82 +129,530 @@ public class HorseServiceImpl implements HorseService {
     }
 
     var createdHorse = dao.create(horse);
-    return mapper.entityToDetailDto(
-            createdHorse,
-            ownerMapForSingleId(createdHorse.getOwnerId()),
-            getMother(createdHorse),
-            getFather(createdHorse));
+    return assembleDetailDto(createdHorse);
+  }
+
+  @Override
+  public HorseImportReportDto importAll(List<HorseImportDto> rows) {
+    LOG.trace("importAll({} rows)", rows.size());
+    List<List<String>> errors = new ArrayList<>(rows.size());
+    Map<String, Integer> rowOfRef = new HashMap<>();
+    for (int i = 0; i < rows.size(); i++) {
+      errors.add(new ArrayList<>());
+      var ref = rows.get(i).ref();
+      if (ref != null) {
+        var previous = rowOfRef.putIfAbsent(ref, i);
+        if (previous != null) {
+          errors.get(i).add("Reference %s is already used by row %d".formatted(ref, previous + 1));
+        }
+      }
+    }
+
+    // The fields of all rows at once, the parents can only be checked in dependency order below
+    var fieldErrors = validator.validateAllForCreate(rows.stream()
+        .map(row -> new HorseDetailDto(null, row.name(), row.description(), row.dateOfBirth(), row.sex(), null, null, null))
+        .toList());
+    for (int i = 0; i < rows.size(); i++) {
+      errors.get(i).addAll(fieldErrors.get(i));
+    }
+
+    var parentIds = rows.stream()
+        .flatMap(row -> Stream.of(row.motherId(), row.fatherId()))
+        .filter(Objects::nonNull)
+        .collect(Collectors.toUnmodifiableSet());
+    Map<Long, Horse> storedParents = parentIds.isEmpty()
+        ? Map.of()
+        : dao.getAllById(parentIds).stream().collect(Collectors.toMap(Horse::getId, Function.identity()));
+    var owners = existingOwners(rows.stream()
+        .map(HorseImportDto::ownerId)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toUnmodifiableSet()));
+
+    // In dependency order, so the parents of the import are checked (and accepted or rejected) before their children
+    var order = importOrder(rows, rowOfRef, errors);
+    var accepted = new HorseDetailDto[rows.size()];
+    for (int i : order) {
+      var row = rows.get(i);
+      var rowErrors = errors.get(i);
+      if (!rowErrors.isEmpty()) {
+        continue;
+      }
+      if (row.ownerId() != null && !owners.containsKey(row.ownerId())) {
+        rowErrors.add("Given owner does not exist");
+      }
+      var horse = new HorseDetailDto(null, row.name(), row.description(), row.dateOfBirth(), row.sex(),
+          row.ownerId() == null ? null : owners.get(row.ownerId()),
+          importedParent("Mother", row.motherId(), row.motherRef(), storedParents, rowOfRef, accepted, rowErrors),
+          importedParent("Father", row.fatherId(), row.fatherRef(), storedParents, rowOfRef, accepted, rowErrors));
+      if (rowErrors.isEmpty()) {
+        try {
+          validator.checkImportedParents(horse);
+          accepted[i] = horse;
+        } catch (ConflictException e) {
+          rowErrors.addAll(e.errors());
+        }
+      }
+    }
+
+    List<HorseDetailDto> toCreate = new ArrayList<>();
+    List<Integer> rowsToCreate = new ArrayList<>();
+    for (int i : order) {
+      if (accepted[i] != null) {
+        toCreate.add(accepted[i]);
+        rowsToCreate.add(i);
+      }
+    }
+    var ids = new Long[rows.size()];
+    if (!toCreate.isEmpty()) {
+      var created = dao.createAll(toCreate);
+      for (int i = 0; i < created.size(); i++) {
+        ids[rowsToCreate.get(i)] = created.get(i).getId();
+      }
+    }
+
+    List<HorseImportRowDto> results = new ArrayList<>(rows.size());
+    for (int i = 0; i < rows.size(); i++) {
+      results.add(new HorseImportRowDto(i + 1, rows.get(i).ref(), ids[i], errors.get(i)));
+    }
+    LOG.debug("Imported {} of {} horses", toCreate.size(), rows.size());
+    return new HorseImportReportDto(toCreate.size(), rows.size() - toCreate.size(), results);
   }
 
+  /**
+   * Sort the rows of an import topologically, so every row comes after the rows that are its parents.
+   * Rows that are part of a cycle of parent references, or descend from one, are left out and get an error.
+   *
+   * @return the indices of the rows in dependency order
+   */
+  private static List<Integer> importOrder(List<HorseImportDto> rows, Map<String, Integer> rowOfRef, List<List<String>> errors) {
+    var pendingParents = new int[rows.size()];
+    List<List<Integer>> children = new ArrayList<>(rows.size());
+    for (int i = 0; i < rows.size(); i++) {
+      children.add(new ArrayList<>());
+    }
+    for (int i = 0; i < rows.size(); i++) {
+      for (String ref : new String[] {rows.get(i).motherRef(), rows.get(i).fatherRef()}) {
+        var parent = ref == null ? null : rowOfRef.get(ref);
+        if (parent != null) {
+          pendingParents[i]++;
+          children.get(parent).add(i);
+        }
+      }
+    }
 
+    List<Integer> order = new ArrayList<>(rows.size());
+    for (int i = 0; i < rows.size(); i++) {
+      if (pendingParents[i] == 0) {
+        order.add(i);
+      }
+    }
+    for (int next = 0; next < order.size(); next++) {
+      for (int child : children.get(order.get(next))) {
+        if (--pendingParents[child] == 0) {
+          order.add(child);
+        }
+      }
+    }
+    for (int i = 0; i < rows.size(); i++) {
+      if (pendingParents[i] > 0) {
+        errors.get(i).add("Horse is its own ancestor through the references of the import");
+      }
+    }
+    return order;
+  }
+
+  private static HorseDetailDto importedParent(String parent, Long id, String ref,
+      Map<Long, Horse> storedParents, Map<String, Integer> rowOfRef, HorseDetailDto[] accepted, List<String> errors) {
+    if (id != null && ref != null) {
+      errors.add("%s is given by ID and by reference".formatted(parent));
+    } else if (id != null) {
+      var stored = storedParents.get(id);
+      if (stored == null) {
+        errors.add("Given %s does not exist".formatted(parent.toLowerCase()));
+      } else {
+        return new HorseDetailDto(stored.getId(), stored.getName(), stored.getDescription(), stored.getDateOfBirth(), stored.getSex(),
+            null, null, null);
+      }
+    } else if (ref != null) {
+      var row = rowOfRef.get(ref);
+      if (row == null) {
+        errors.add("%s %s is not part of the import".formatted(parent, ref));
+      } else if (accepted[row] == null) {
+        errors.add("%s %s in row %d is rejected".formatted(parent, ref, row + 1));
+      } else {
+        return accepted[row];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get those of the owners with the given IDs, that exist.
+   */
+  private Map<Long, OwnerDto> existingOwners(Set<Long> ids) {
+    try {
+      return ownerService.getAllById(ids);
+    } catch (NotFoundException e) {
+      // The batch lookup fails as a whole, so only now look at the owners one by one
+      Map<Long, OwnerDto> owners = new HashMap<>();
+      for (Long id : ids) {
+        try {
+          owners.put(id, ownerService.getById(id));
+        } catch (NotFoundException notFound) {
+          // The rows with this owner are rejected
+        }
+      }
+      return owners;
+    }
+  }
 
   @Override
   public HorseDetailDto delete(long id) throws NotFoundException {
     LOG.trace("delete({})", id);
     Horse horse = dao.delete(id);
-    return mapper.entityToDetailDto(
-            horse,
-            ownerMapForSingleId(horse.getOwnerId()),
-            getMother(horse),
-            getFather(horse));
+    return assembleDetailDto(horse);
   }
 
 
   @Override
   public HorseDetailDto getById(long id) throws NotFoundException {
     LOG.trace("details({})", id);
-    Horse horse = dao.getById(id);
-    return mapper.entityToDetailDto(
-        horse,
-        ownerMapForSingleId(horse.getOwnerId()),
-        getMother(horse),
-        getFather(horse));
+    Map<Long, Horse> pedigree = dao.getWithAncestors(id).stream()
+        .collect(Collectors.toMap(Horse::getId, Function.identity()));
+    return assembleDetailDto(id, pedigree);
   }
 
 
   @Override
-  public Stream<HorseListDto> search(HorseSearchDto searchParameters) {
+  public HorseFamilyTreeDto getFamilyTree(long id, int generations) throws NotFoundException, ValidationException {
+    LOG.trace("getFamilyTree({}, {})", id, generations);
+    if (generations < 0) {
+      throw new ValidationException("Validation of family tree request failed",
+          List.of("Number of generations must not be negative"));
+    }
+    Map<Long, Horse> pedigree = dao.getWithAncestors(id, generations).stream()
+        .collect(Collectors.toMap(Horse::getId, Function.identity()));
+    fetchMissingAncestors(id, pedigree, generations);
+    return assembleFamilyTreeDto(id, pedigree, generations);
+  }
+
+  @Override
+  public HorseInbreedingDto getInbreedingCoefficient(long id, int generations) throws NotFoundException, ValidationException {
+    LOG.trace("getInbreedingCoefficient({}, {})", id, generations);
+    if (generations < 0) {
+      throw new ValidationException("Validation of inbreeding coefficient request failed",
+          List.of("Number of generations must not be negative"));
+    }
+    var pedigree = pedigreeIndex.pedigree(id, generations);
+    if (pedigree == null) {
+      throw new NotFoundException("No horse with ID %d found".formatted(id));
+    }
+    var coefficient = new Kinship(pedigree).inbreeding(pedigree.subject());
+    return new HorseInbreedingDto(id, generations, coefficient, pedigree.size() - 1);
+  }
+
+  @Override
+  public HorseRelationshipDto getRelationship(long a, long b, Integer generations) throws NotFoundException, ValidationException {
+    LOG.trace("getRelationship({}, {}, {})", a, b, generations);
+    if (generations != null && generations < 0) {
+      throw new ValidationException("Validation of relationship request failed",
+          List.of("Number of generations must not be negative"));
+    }
+    // Fail with the ID of the horse, that does not exist
+    dao.getById(a);
+    dao.getById(b);
+    var limit = generations == null ? Integer.MAX_VALUE : generations;
+    var commonAncestors = pedigreeIndex.nearestCommonAncestors(a, b, limit);
+    if (commonAncestors == null) {
+      throw new NotFoundException("No horse with ID %d or %d found".formatted(a, b));
+    }
+    var coefficient = 0.0;
+    if (!commonAncestors.isEmpty()) {
+      var pedigree = pedigreeIndex.pedigree(new long[] {a, b}, limit);
+      if (pedigree == null) {
+        throw new NotFoundException("No horse with ID %d or %d found".formatted(a, b));
+      }
+      coefficient = new Kinship(pedigree).relationship(pedigree.indexOf(a), pedigree.indexOf(b));
+    }
+    Map<Long, String> names = dao.getAllById(commonAncestors.stream().map(CommonAncestor::id).toList()).stream()
+        .collect(Collectors.toMap(Horse::getId, Horse::getName));
+    var nearestCommonAncestors = commonAncestors.stream()
+        .map(ancestor -> new CommonAncestorDto(ancestor.id(), names.get(ancestor.id()), ancestor.generationsFromA(), ancestor.generationsFromB()))
+        .toList();
+    return new HorseRelationshipDto(a, b, coefficient, nearestCommonAncestors);
+  }
+
+  @Override
+  public Stream<HorseDescendantDto> getDescendants(long id, Integer generations) throws NotFoundException, ValidationException {
+    LOG.trace("getDescendants({}, {})", id, generations);
+    if (generations != null && generations < 0) {
+      throw new ValidationException("Validation of descendants request failed",
+          List.of("Number of generations must not be negative"));
+    }
+    // Fail before the stream is handed out, not while it is already being consumed.
+    dao.getById(id);
+    return StreamSupport.stream(new DescendantSpliterator(id, generations == null ? Integer.MAX_VALUE : generations), false);
+  }
+
+  @Override
+  public PageDto<HorseListDto> search(HorseSearchDto searchParameters) throws ValidationException {
     LOG.trace("search()");
-    var horses = dao.search(searchParameters);
-    var ownerIds = horses.stream()
-            .map(Horse::getOwnerId)
-            .filter(Objects::nonNull)
-            .collect(Collectors.toUnmodifiableSet());
+    var page = dao.search(searchParameters);
+    return new PageDto<>(entitiesToListDtos(page.content()).toList(), page.next());
+  }
+
+
+
+
+  @Override
+  public Stream<HorseListDto> streamSearch(HorseSearchDto searchParameters) throws ValidationException {
+    LOG.trace("streamSearch({})", searchParameters);
+    var horses = dao.streamSearch(searchParameters);
+    var transaction = new AtomicReference<TransactionStatus>();
+    return StreamSupport.stream(() -> {
+      // Bound to the consuming thread, the batched lookups of parents and owners use the connection of the search
+      transaction.set(transactionManager.getTransaction(READ_ONLY));
+      return batches(horses, STREAM_BATCH_SIZE)
+          .flatMap(this::entitiesToListDtos)
+          .spliterator();
+    }, Spliterator.ORDERED | Spliterator.NONNULL, false)
+        .onClose(() -> {
+          try {
+            horses.close();
+          } finally {
+            if (transaction.get() != null) {
+              transactionManager.commit(transaction.get());
+            }
+          }
+        });
+  }
+
+  /**
+   * Lazily group the elements of {@code stream} into lists of {@code size} elements.
+   * The last list may be shorter.
+   */
+  private static <T> Stream<List<T>> batches(Stream<T> stream, int size) {
+    var elements = stream.iterator();
+    return StreamSupport.stream(new Spliterators.AbstractSpliterator<List<T>>(Long.MAX_VALUE, Spliterator.NONNULL) {
+      @Override
+      public boolean tryAdvance(Consumer<? super List<T>> action) {
+        var batch = new ArrayList<T>(size);
+        while (batch.size() < size && elements.hasNext()) {
+          batch.add(elements.next());
+        }
+        if (batch.isEmpty()) {
+          return false;
+        }
+        action.accept(batch);
+        return true;
+      }
+    }, false);
+  }
+
+  /**
+   * Convert a list of horses to {@link HorseListDto}s.
+   * The parents of all horses are loaded with one batched query, and are included as shallow summaries
+   * without their own parents. The owners of the horses and their parents are loaded with one more batched query.
+   *
+   * @param horses the horses to convert
+   * @return the converted horses
+   */
+  private Stream<HorseListDto> entitiesToListDtos(Collection<Horse> horses) {
+    var parentIds = horses.stream()
+        .flatMap(horse -> Stream.of(horse.getMotherId(), horse.getFatherId()))
+        .filter(Objects::nonNull)
+        .collect(Collectors.toUnmodifiableSet());
+    Collection<Horse> parents = parentIds.isEmpty()
+        ? List.of()
+        : dao.getAllById(parentIds);
+    var ownerIds = Stream.concat(horses.stream(), parents.stream())
+        .map(Horse::getOwnerId)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toUnmodifiableSet());
     Map<Long, OwnerDto> ownerMap;
     try {
       ownerMap = ownerService.getAllById(ownerIds);
     } catch (NotFoundException e) {
       throw new FatalException("Horse, that is already persisted, refers to non-existing owner", e);
     }
+    Map<Long, HorseDetailDto> parentMap = parents.stream()
+        .collect(Collectors.toUnmodifiableMap(Horse::getId, parent -> mapper.entityToDetailDto(parent, ownerMap, null, null)));
     return horses.stream()
-            .map(horse -> {
-              try {
-                return mapper.entityToListDto(horse, ownerMap, getMother(horse), getFather(horse));
-              } catch (NotFoundException e) {
-                throw new FatalException("Horse, that is already persisted, refers to non-existing parent", e);
-              }
-            });
+        .map(horse -> mapper.entityToListDto(
+            horse,
+            ownerMap,
+            parentSummary(horse.getMotherId(), parentMap),
+            parentSummary(horse.getFatherId(), parentMap)));
   }
 
+  private HorseDetailDto parentSummary(Long parentId, Map<Long, HorseDetailDto> parentMap) {
+    if (parentId == null) {
+      return null;
+    }
+    var parent = parentMap.get(parentId);
+    if (parent == null) {
+      throw new FatalException("Horse, that is already persisted, refers to non-existing parent %d".formatted(parentId));
+    }
+    return parent;
+  }
 
 
+  /**
+   * Assemble the detail DTO of a horse, that has just been written, with the pedigrees of its parents.
+   * The ancestors are looked up in the pedigree index, and fetched together with one query,
+   * so parents with common ancestors do not load them twice.
+   * The horse itself is not read again, it may already be deleted.
+   *
+   * @param horse the written horse
+   * @return the detail DTO of the horse
+   */
+  private HorseDetailDto assembleDetailDto(Horse horse) {
+    Set<Long> ancestors = new HashSet<>();
+    for (Long parent : new Long[] {horse.getMotherId(), horse.getFatherId()}) {
+      if (parent != null) {
+        ancestors.add(parent);
+        Arrays.stream(pedigreeIndex.ancestors(parent, Integer.MAX_VALUE)).forEach(ancestors::add);
+      }
+    }
+    Map<Long, Horse> pedigree = new HashMap<>();
+    if (!ancestors.isEmpty()) {
+      dao.getAllById(ancestors).forEach(ancestor -> pedigree.put(ancestor.getId(), ancestor));
+    }
+    pedigree.put(horse.getId(), horse);
+    return assembleDetailDto(horse.getId(), pedigree);
+  }
 
-  private Map<Long, OwnerDto> ownerMapForSingleId(Long ownerId) {
+  /**
+   * Assemble the detail DTO of the horse with ID {@code id} from its loaded pedigree,
+   * after fetching the ancestors missing from it, and the owners of all horses in it with one query.
+   *
+   * @param id the ID of the horse to assemble
+   * @param pedigree the horse and its ancestors by their ID, that the missing ancestors are added to
+   * @return the detail DTO of the horse
+   */
+  private HorseDetailDto assembleDetailDto(long id, Map<Long, Horse> pedigree) {
+    fetchMissingAncestors(id, pedigree, Integer.MAX_VALUE);
+    var ownerIds = pedigree.values().stream()
+        .map(Horse::getOwnerId)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toUnmodifiableSet());
+    Map<Long, OwnerDto> ownerMap;
     try {
-      return ownerId == null
-          ? null
-          : Collections.singletonMap(ownerId, ownerService.getById(ownerId));
+      ownerMap = ownerService.getAllById(ownerIds);
     } catch (NotFoundException e) {
-      throw new FatalException("Owner %d referenced by horse not found".formatted(ownerId));
+      throw new FatalException("Horse, that is already persisted, refers to non-existing owner", e);
+    }
+    return assembleDetailDto(id, pedigree, ownerMap, new HashMap<>(), new HashSet<>());
+  }
+
+  /**
+   * Fetch the ancestors within {@code generations} generations, that are missing from an already loaded pedigree,
+   * from the persistent data store, with one query per generation that has any.
+   * The pedigree is loaded by the IDs in the pedigree index, which does not see changes made by other instances of the backend
+   * or directly in the data store. Usually nothing is missing, and the pedigree is only walked in memory.
+   *
+   * @param id the ID of the horse, whose pedigree it is
+   * @param pedigree the horse and its ancestors by their ID, that the missing ancestors are added to
+   * @param generations the number of generations of ancestors, that the pedigree has to contain
+   */
+  private void fetchMissingAncestors(long id, Map<Long, Horse> pedigree, int generations) {
+    Set<Long> visited = new HashSet<>(List.of(id));
+    List<Long> generation = List.of(id);
+    for (int i = 0; i < generations && !generation.isEmpty(); i++) {
+      List<Long> parents = new ArrayList<>();
+      List<Long> missing = new ArrayList<>();
+      for (Long horseId : generation) {
+        var horse = pedigree.get(horseId);
+        if (horse == null) {
+          // Not in the data store anymore either
+          continue;
+        }
+        for (Long parent : new Long[] {horse.getMotherId(), horse.getFatherId()}) {
+          if (parent != null && visited.add(parent)) {
+            parents.add(parent);
+            if (!pedigree.containsKey(parent)) {
+              missing.add(parent);
+            }
+          }
+        }
+      }
+      if (!missing.isEmpty()) {
+        LOG.debug("Pedigree index is missing ancestors {} of horse {}", missing, id);
+        dao.getAllById(missing).forEach(horse -> pedigree.put(horse.getId(), horse));
+      }
+      generation = parents;
     }
   }
 
-  private HorseDetailDto getMother(Horse horse) throws NotFoundException {
-    return horse.getMotherId() == null ? null : getById(horse.getMotherId());
+  /**
+   * Assemble the detail DTO of the horse with ID {@code id} from its already loaded pedigree.
+   * Ancestors, that appear more than once in the pedigree, are only mapped once.
+   *
+   * @param id the ID of the horse to assemble, may be {@code null} for an unknown parent
+   * @param pedigree the horse and all of its ancestors by their ID, an ancestor missing from it is left out
+   * @param owners the owners of all horses in {@code pedigree} by their ID
+   * @param assembled the DTOs that have already been assembled, by their ID
+   * @param inProgress the IDs of the horses, whose DTOs are currently being assembled
+   * @return the assembled DTO, or {@code null} if {@code id} is {@code null}
+   */
+  private HorseDetailDto assembleDetailDto(Long id, Map<Long, Horse> pedigree, Map<Long, OwnerDto> owners,
+                                           Map<Long, HorseDetailDto> assembled, Set<Long> inProgress) {
+    if (id == null) {
+      return null;
+    }
+    var dto = assembled.get(id);
+    if (dto != null) {
+      return dto;
+    }
+    if (!inProgress.add(id)) {
+      // The pedigree is not a tree anymore, cut the cycle off instead of recursing forever.
+      LOG.warn("Pedigree contains a cycle through horse {}", id);
+      return null;
+    }
+    var horse = pedigree.get(id);
+    if (horse == null) {
+      // Deleted after its child was read
+      LOG.warn("Pedigree does not contain ancestor {}", id);
+      inProgress.remove(id);
+      return null;
+    }
+    dto = mapper.entityToDetailDto(
+        horse,
+        owners,
+        assembleDetailDto(horse.getMotherId(), pedigree, owners, assembled, inProgress),
+        assembleDetailDto(horse.getFatherId(), pedigree, owners, assembled, inProgress));
+    inProgress.remove(id);
+    assembled.put(id, dto);
+    return dto;
   }
 
-  private HorseDetailDto getFather(Horse horse) throws NotFoundException {
-    return horse.getFatherId() == null ? null : getById(horse.getFatherId());
+  /**
+   * Assemble the family tree of the horse with ID {@code id} from its already loaded, limited pedigree.
+   *
+   * @param id the ID of the horse to assemble, may be {@code null} for an unknown parent
+   * @param pedigree the horse and its ancestors within the generation limit by their ID, an ancestor missing from it is left out
+   * @param generations the number of generations of ancestors, that are still to be included below this horse
+   * @return the assembled family tree, or {@code null} if {@code id} is {@code null}
+   */
+  private HorseFamilyTreeDto assembleFamilyTreeDto(Long id, Map<Long, Horse> pedigree, int generations) {
+    if (id == null) {
+      return null;
+    }
+    var horse = pedigree.get(id);
+    if (horse == null) {
+      // Deleted after its child was read
+      LOG.warn("Pedigree does not contain ancestor {}", id);
+      return null;
+    }
+    if (generations == 0) {
+      var hasMoreAncestors = horse.getMotherId() != null || horse.getFatherId() != null;
+      return mapper.entityToFamilyTreeDto(horse, null, null, hasMoreAncestors);
+    }
+    return mapper.entityToFamilyTreeDto(
+        horse,
+        assembleFamilyTreeDto(horse.getMotherId(), pedigree, generations - 1),
+        assembleFamilyTreeDto(horse.getFatherId(), pedigree, generations - 1),
+        false);
   }
 
   private List<String> checkIfMotherFatherOwnerExists(HorseDetailDto horse) {
@@ -203,14 +666,14 @@ public class HorseServiceImpl implements HorseService {
     }
     if (horse.motherId() != null) {
       try {
-        getById(horse.motherId());
+        dao.getById(horse.motherId());
       } catch (NotFoundException e) {
         errors.add("Given mother does not exist");
       }
     }
     if (horse.fatherId() != null) {
       try {
-        getById(horse.fatherId());
+        dao.getById(horse.fatherId());
       } catch (NotFoundException e) {
         errors.add("Given father does not exist");
       }
@@ -218,5 +681,60 @@ public class HorseServiceImpl implements HorseService {
     return errors;
   }
 
+  /**
+   * Walks the descendants of a horse breadth first.
+   * The next generation is only loaded, when the previous one has been consumed.
+   * The first {@link HorseDao#ANCESTRY_WINDOW} generations are looked up in the ancestry window with one query each,
+   * the ones after that are loaded with one query per {@link #DESCENDANT_BATCH_SIZE} horses of the previous generation.
+   */
+  private class DescendantSpliterator extends Spliterators.AbstractSpliterator<HorseDescendantDto> {
+    private final long id;
+    private final int generations;
+    private final Set<Long> visited = new HashSet<>();
+    private List<Long> parents;
+    private int generation = 0;
+    private Iterator<Horse> children = Collections.emptyIterator();
 
+    DescendantSpliterator(long id, int generations) {
+      super(Long.MAX_VALUE, Spliterator.DISTINCT | Spliterator.NONNULL);
+      this.id = id;
+      this.generations = generations;
+      this.parents = List.of(id);
+      visited.add(id);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super HorseDescendantDto> action) {
+      while (!children.hasNext()) {
+        if (parents.isEmpty() || generation >= generations) {
+          return false;
+        }
+        loadNextGeneration();
+      }
+      action.accept(mapper.entityToDescendantDto(children.next(), generation));
+      return true;
+    }
+
+    private void loadNextGeneration() {
+      generation++;
+      var nextGeneration = new ArrayList<Horse>();
+      if (generation <= HorseDao.ANCESTRY_WINDOW) {
+        // The closure only has each descendant in its nearest generation already
+        nextGeneration.addAll(dao.getDescendantsInGeneration(id, generation));
+        nextGeneration.forEach(child -> visited.add(child.getId()));
+      } else {
+        for (int from = 0; from < parents.size(); from += DESCENDANT_BATCH_SIZE) {
+          var batch = parents.subList(from, Math.min(parents.size(), from + DESCENDANT_BATCH_SIZE));
+          for (Horse child : dao.getChildrenOfAll(batch)) {
+            // A descendant, that is reachable on more than one path, is only reported in its nearest generation.
+            if (visited.add(child.getId())) {
+              nextGeneration.add(child);
+            }
+          }
+        }
+      }
+      parents = nextGeneration.stream().map(Horse::getId).toList();
+      children = nextGeneration.iterator();
+    }
+  }
 }
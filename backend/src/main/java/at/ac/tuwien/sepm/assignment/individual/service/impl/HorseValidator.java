@@ -4,7 +4,6 @@ import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
 import at.ac.tuwien.sepm.assignment.individual.exception.ConflictException;
 import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
 import java.lang.invoke.MethodHandles;
-import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -18,112 +17,49 @@ import org.springframework.stereotype.Component;
 public class HorseValidator {
   private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+  private static final RuleSet<HorseDetailDto> FOR_CREATE = RuleSet.<HorseDetailDto>builder()
+      .text(HorseDetailDto::description, "Horse description", false, 4095)
+      .required(HorseDetailDto::sex, "Horse sex is not given")
+      .text(HorseDetailDto::name, "Horse name", true, 255)
+      .required(HorseDetailDto::dateOfBirth, "Horse date of birth is not given")
+      .notInFuture(HorseDetailDto::dateOfBirth, "Given date of birth is in the future")
+      .build();
+  private static final RuleSet<HorseDetailDto> FOR_UPDATE = RuleSet.<HorseDetailDto>builder()
+      .required(HorseDetailDto::id, "No ID given")
+      .rules(FOR_CREATE)
+      .build();
+
   public void validateForUpdate(HorseDetailDto horse) throws ValidationException {
     LOG.trace("validateForUpdate({})", horse);
-    List<String> validationErrors = new ArrayList<>();
-
-    if (horse.id() == null) {
-      validationErrors.add("No ID given");
-    }
-
-    if (horse.description() != null) {
-      if (horse.description().isBlank()) {
-        validationErrors.add("Horse description is given but blank");
-      }
-      if (horse.description().length() > 4095) {
-        validationErrors.add("Horse description too long: longer than 4095 characters");
-      }
-    }
-
-    if (horse.sex() == null) {
-      validationErrors.add("Horse sex is not given");
-    }
-
-    if (horse.name() == null) {
-      validationErrors.add("Horse name is not given");
-    } else {
-      if (horse.name().isBlank()) {
-        validationErrors.add("Horse name is given but blank");
-      }
-      if (horse.name().length() > 255) {
-        validationErrors.add("Horse name too long: longer than 255 characters");
-      }
-    }
-
-    if (horse.dateOfBirth() == null) {
-      validationErrors.add("Horse date of birth is not given");
-    } else {
-      if (horse.dateOfBirth().isAfter(LocalDate.now())) {
-        validationErrors.add("Given date of birth is in the future");
-      }
-    }
-
-    if (!validationErrors.isEmpty()) {
-      throw new ValidationException("Validation of horse for update failed", validationErrors);
-    }
+    FOR_UPDATE.validate(horse, "Validation of horse for update failed");
   }
 
   public void validateForCreate(HorseDetailDto horse) throws ValidationException {
     LOG.trace("validateForCreate({})", horse);
-    List<String> validationErrors = new ArrayList<>();
-
-    if (horse.description() != null) {
-      if (horse.description().isBlank()) {
-        validationErrors.add("Horse description is given but blank");
-      }
-      if (horse.description().length() > 4095) {
-        validationErrors.add("Horse description too long: longer than 4095 characters");
-      }
-    }
-
-    if (horse.sex() == null) {
-      validationErrors.add("Horse sex is not given");
-    }
-
-    if (horse.name() == null) {
-      validationErrors.add("Horse name is not given");
-    } else {
-      if (horse.name().isBlank()) {
-        validationErrors.add("Horse name is given but blank");
-      }
-      if (horse.name().length() > 255) {
-        validationErrors.add("Horse name too long: longer than 255 characters");
-      }
-    }
-
-    if (horse.dateOfBirth() == null) {
-      validationErrors.add("Horse date of birth is not given");
-    } else {
-      if (horse.dateOfBirth().isAfter(LocalDate.now())) {
-        validationErrors.add("Given date of birth is in the future");
-      }
-    }
+    FOR_CREATE.validate(horse, "Validation of horse for create failed");
+  }
 
-    if (!validationErrors.isEmpty()) {
-      throw new ValidationException("Validation of horse for create failed", validationErrors);
-    }
+  /**
+   * Validate many horses for create, without stopping at the first invalid one.
+   *
+   * @param horses the horses to validate
+   * @return the errors of every horse, in the order of the horses, an empty list for a valid horse
+   */
+  public List<List<String>> validateAllForCreate(List<HorseDetailDto> horses) {
+    LOG.trace("validateAllForCreate({} horses)", horses.size());
+    return FOR_CREATE.checkAll(horses);
   }
 
   public void checkMotherFather(HorseDetailDto horse) throws ConflictException {
     List<String> conflictErrors = new ArrayList<>();
     if (horse.motherId() != null) {
-      if (horse.mother().sex() != Sex.FEMALE) {
-        conflictErrors.add("Mother cannot be Male");
-      }
-      if (horse.mother().dateOfBirth().isAfter(horse.dateOfBirth())) {
-        conflictErrors.add("Mother cannot be born after child");
-      }
+      checkMother(horse, conflictErrors);
       if (Objects.equals(horse.id(), horse.motherId())) {
         conflictErrors.add("A horse cannot be its own mother");
       }
     }
     if (horse.fatherId() != null) {
-      if (horse.father().sex() != Sex.MALE) {
-        conflictErrors.add("Father cannot be Female");
-      }
-      if (horse.father().dateOfBirth().isAfter(horse.dateOfBirth())) {
-        conflictErrors.add("Father cannot be born after child");
-      }
+      checkFather(horse, conflictErrors);
       if (Objects.equals(horse.id(), horse.fatherId())) {
         conflictErrors.add("A horse cannot be its own father");
       }
@@ -133,6 +69,42 @@ public class HorseValidator {
     }
   }
 
+  /**
+   * Check the parents of a horse of a bulk import.
+   * Parents that are part of the same import are not stored yet and have no ID,
+   * so unlike {@link #checkMotherFather(HorseDetailDto)} every given parent is checked.
+   *
+   * @param horse the horse with the parents to check
+   * @throws ConflictException if a parent has the wrong sex, or is born after the horse
+   */
+  public void checkImportedParents(HorseDetailDto horse) throws ConflictException {
+    List<String> conflictErrors = new ArrayList<>();
+    if (horse.mother() != null) {
+      checkMother(horse, conflictErrors);
+    }
+    if (horse.father() != null) {
+      checkFather(horse, conflictErrors);
+    }
+    if (!conflictErrors.isEmpty()) {
+      throw new ConflictException("Validation of horse failed", conflictErrors);
+    }
+  }
 
+  private void checkMother(HorseDetailDto horse, List<String> conflictErrors) {
+    if (horse.mother().sex() != Sex.FEMALE) {
+      conflictErrors.add("Mother cannot be Male");
+    }
+    if (horse.mother().dateOfBirth().isAfter(horse.dateOfBirth())) {
+      conflictErrors.add("Mother cannot be born after child");
+    }
+  }
 
+  private void checkFather(HorseDetailDto horse, List<String> conflictErrors) {
+    if (horse.father().sex() != Sex.MALE) {
+      conflictErrors.add("Father cannot be Female");
+    }
+    if (horse.father().dateOfBirth().isAfter(horse.dateOfBirth())) {
+      conflictErrors.add("Father cannot be born after child");
+    }
+  }
 }
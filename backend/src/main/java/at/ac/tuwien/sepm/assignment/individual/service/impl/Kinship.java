@@ -0,0 +1,184 @@
+package at.ac.tuwien.sepm.assignment.individual.service.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.persistence.Pedigree;
+
+/**
+ * Coefficients of inbreeding and kinship of the horses of a {@link Pedigree}.
+ * The kinship of two horses is the probability, that an allele drawn at random from the one
+ * and an allele drawn at random from the other are identical by descent.
+ * The inbreeding coefficient (Wright's COI) of a horse is the kinship of its parents.
+ * Horses of unknown descent are taken to be unrelated and not inbred.
+ * <p>
+ * The inbreeding coefficients of all horses are computed up front, parents before their children,
+ * with the method of Meuwissen and Luo (1992):
+ * the matrix of additive relationships {@code A = 2 × kinship} factors into {@code L D L'}, where {@code L(i, j)} is
+ * the share of the genes of horse {@code i} that come from its ancestor {@code j} ({@code 1/2} per generation on every line),
+ * and {@code D(j)} is the variance of the genes, that {@code j} got from neither of its parents.
+ * {@code D(j)} only depends on the inbreeding coefficients of the parents of {@code j}, which are already known,
+ * and the row of {@code L} of a horse is spread from the horse to its ancestors, youngest first, so that
+ * {@code 1 + F(i) = A(i, i) = Σ L(i, j)² D(j)} costs as much as the horse has ancestors.
+ * Rows are kept in dense primitive arrays, that are cleared after every row, so nothing is allocated per horse.
+ * </p>
+ * Not thread safe.
+ */
+final class Kinship {
+  private final int[] mothers;
+  private final int[] fathers;
+  private final double[] inbreeding;
+  private final double[] variance;
+  private final Row row;
+  private Row otherRow;
+
+  Kinship(Pedigree pedigree) {
+    var size = pedigree.size();
+    this.mothers = pedigree.mothers();
+    this.fathers = pedigree.fathers();
+    this.inbreeding = new double[size];
+    this.variance = new double[size];
+    this.row = new Row(size);
+    for (int horse = 0; horse < size; horse++) {
+      var mother = mothers[horse];
+      var father = fathers[horse];
+      if (mother == Pedigree.UNKNOWN && father == Pedigree.UNKNOWN) {
+        variance[horse] = 1;
+      } else if (mother == Pedigree.UNKNOWN || father == Pedigree.UNKNOWN) {
+        variance[horse] = 0.75 - 0.25 * inbreeding[mother == Pedigree.UNKNOWN ? father : mother];
+      } else {
+        variance[horse] = 0.5 - 0.25 * (inbreeding[mother] + inbreeding[father]);
+        // Only horses with both parents known can be inbred
+        row.trace(horse);
+        var relationship = 0.0;
+        for (int i = 0; i < row.count; i++) {
+          var ancestor = row.touched[i];
+          relationship += row.shares[ancestor] * row.shares[ancestor] * variance[ancestor];
+        }
+        row.clear();
+        inbreeding[horse] = relationship - 1;
+      }
+    }
+  }
+
+  /**
+   * Get the inbreeding coefficient of a horse.
+   *
+   * @param horse the number of the horse in the pedigree
+   * @return the inbreeding coefficient, from 0 for unrelated parents to 1
+   */
+  double inbreeding(int horse) {
+    return inbreeding[horse];
+  }
+
+  /**
+   * Get the coefficient of kinship of two horses, i.e. {@code A(a, b) / 2 = Σ L(a, j) L(b, j) D(j) / 2}.
+   *
+   * @param a the number of the one horse in the pedigree
+   * @param b the number of the other horse in the pedigree
+   * @return the coefficient of kinship, from 0 for unrelated horses to 1
+   */
+  double kinship(int a, int b) {
+    if (a == b) {
+      return (1 + inbreeding[a]) / 2;
+    }
+    if (otherRow == null) {
+      otherRow = new Row(inbreeding.length);
+    }
+    row.trace(a);
+    otherRow.trace(b);
+    var relationship = 0.0;
+    for (int i = 0; i < row.count; i++) {
+      var ancestor = row.touched[i];
+      relationship += row.shares[ancestor] * otherRow.shares[ancestor] * variance[ancestor];
+    }
+    row.clear();
+    otherRow.clear();
+    return relationship / 2;
+  }
+
+  /**
+   * Get Wright's coefficient of relationship of two horses, i.e. their kinship relative to their inbreeding.
+   *
+   * @param a the number of the one horse in the pedigree
+   * @param b the number of the other horse in the pedigree
+   * @return the coefficient of relationship, {@code 1/2} for parent and foal or full siblings of unrelated parents
+   */
+  double relationship(int a, int b) {
+    return 2 * kinship(a, b) / Math.sqrt((1 + inbreeding[a]) * (1 + inbreeding[b]));
+  }
+
+  /**
+   * One row of {@code L}: the shares of the genes of a horse, that come from each of its ancestors and itself.
+   * The horses with a share are visited youngest first, i.e. by decreasing number,
+   * from a binary max-heap, so that the share of a horse is complete, before it is passed on to its parents.
+   */
+  private final class Row {
+    private final double[] shares;
+    private final int[] touched;
+    private final int[] heap;
+    private int count;
+    private int heapSize;
+
+    Row(int size) {
+      shares = new double[size];
+      touched = new int[size];
+      heap = new int[size];
+    }
+
+    void trace(int horse) {
+      shares[horse] = 1;
+      touched[count++] = horse;
+      push(horse);
+      while (heapSize > 0) {
+        var next = pop();
+        var half = shares[next] / 2;
+        passOn(mothers[next], half);
+        passOn(fathers[next], half);
+      }
+    }
+
+    void clear() {
+      for (int i = 0; i < count; i++) {
+        shares[touched[i]] = 0;
+      }
+      count = 0;
+    }
+
+    private void passOn(int parent, double share) {
+      if (parent == Pedigree.UNKNOWN) {
+        return;
+      }
+      if (shares[parent] == 0) {
+        touched[count++] = parent;
+        push(parent);
+      }
+      shares[parent] += share;
+    }
+
+    private void push(int horse) {
+      var i = heapSize++;
+      while (i > 0 && heap[(i - 1) / 2] < horse) {
+        heap[i] = heap[(i - 1) / 2];
+        i = (i - 1) / 2;
+      }
+      heap[i] = horse;
+    }
+
+    private int pop() {
+      var top = heap[0];
+      var last = heap[--heapSize];
+      var i = 0;
+      while (2 * i + 1 < heapSize) {
+        var child = 2 * i + 1;
+        if (child + 1 < heapSize && heap[child + 1] > heap[child]) {
+          child++;
+        }
+        if (heap[child] <= last) {
+          break;
+        }
+        heap[i] = heap[child];
+        i = child;
+      }
+      heap[i] = last;
+      return top;
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package at.ac.tuwien.sepm.assignment.individual.service.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
+import at.ac.tuwien.sepm.assignment.individual.entity.Owner;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the registry as newline delimited JSON, one object per owner or horse.
+ * The {@code type} field tells owners from horses.
+ */
+class NdjsonRegistryWriter implements RegistryWriter {
+  private final JsonGenerator generator;
+
+  NdjsonRegistryWriter(ObjectMapper objectMapper, OutputStream out) throws IOException {
+    generator = objectMapper.createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+  }
+
+  @Override
+  public void writeOwner(Owner owner) throws IOException {
+    generator.writeStartObject();
+    generator.writeStringField("type", "owner");
+    generator.writeNumberField("id", owner.getId());
+    generator.writeStringField("firstName", owner.getFirstName());
+    generator.writeStringField("lastName", owner.getLastName());
+    generator.writeStringField("email", owner.getEmail());
+    generator.writeEndObject();
+    generator.writeRaw('\n');
+  }
+
+  @Override
+  public void writeHorse(Horse horse) throws IOException {
+    generator.writeStartObject();
+    generator.writeStringField("type", "horse");
+    generator.writeNumberField("id", horse.getId());
+    generator.writeStringField("name", horse.getName());
+    generator.writeStringField("description", horse.getDescription());
+    generator.writeStringField("dateOfBirth", horse.getDateOfBirth().toString());
+    generator.writeStringField("sex", horse.getSex().toString());
+    generator.writeObjectField("ownerId", horse.getOwnerId());
+    generator.writeObjectField("motherId", horse.getMotherId());
+    generator.writeObjectField("fatherId", horse.getFatherId());
+    generator.writeEndObject();
+    generator.writeRaw('\n');
+  }
+
+  @Override
+  public void finish() throws IOException {
+    generator.close();
+  }
+}
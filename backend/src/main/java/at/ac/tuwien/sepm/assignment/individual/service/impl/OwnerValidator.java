@@ -0,0 +1,34 @@
+package at.ac.tuwien.sepm.assignment.individual.service.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.OwnerCreateDto;
+import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
+import java.lang.invoke.MethodHandles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Validates owners before they are created.
+ */
+@Component
+public class OwnerValidator {
+  private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  private static final RuleSet<OwnerCreateDto> FOR_CREATE = RuleSet.<OwnerCreateDto>builder()
+      .text(OwnerCreateDto::firstName, "Owner first name", true, 255)
+      .text(OwnerCreateDto::lastName, "Owner last name", true, 255)
+      .text(OwnerCreateDto::email, "Owner email", false, 255)
+      .email(OwnerCreateDto::email, "Given email is not a valid pattern")
+      .build();
+
+  /**
+   * Validate the data of a new owner.
+   *
+   * @param owner the owner to create
+   * @throws ValidationException if the names or the email are missing, blank, too long or malformed
+   */
+  public void validateForCreate(OwnerCreateDto owner) throws ValidationException {
+    LOG.trace("validateForCreate({})", owner);
+    FOR_CREATE.validate(owner, "Validation of owner for create failed");
+  }
+}
@@ -0,0 +1,20 @@
+package at.ac.tuwien.sepm.assignment.individual.service.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
+import at.ac.tuwien.sepm.assignment.individual.entity.Owner;
+import java.io.IOException;
+
+/**
+ * Writes an export of the registry in one format.
+ * All owners are written before all horses, and then the export is finished.
+ */
+interface RegistryWriter {
+  void writeOwner(Owner owner) throws IOException;
+
+  void writeHorse(Horse horse) throws IOException;
+
+  /**
+   * Write whatever ends the export, and flush it, without closing the underlying stream.
+   */
+  void finish() throws IOException;
+}
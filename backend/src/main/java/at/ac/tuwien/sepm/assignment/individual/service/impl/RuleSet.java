@@ -0,0 +1,235 @@
+package at.ac.tuwien.sepm.assignment.individual.service.impl;
+
+import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The rules a DTO has to follow, built once and then checked for every DTO.
+ * <p>
+ * Every rule takes time linear in the length of the fields it checks.
+ * The messages are built with the rules, so a valid DTO is checked without allocating anything,
+ * and an invalid one costs only the list of its errors.
+ * </p>
+ *
+ * @param <T> the type of the checked DTOs
+ */
+public final class RuleSet<T> {
+
+  /**
+   * A single rule.
+   *
+   * @param <T> the type of the checked DTOs
+   */
+  @FunctionalInterface
+  public interface Rule<T> {
+    /**
+     * Check the value against this rule.
+     *
+     * @param value the DTO to check
+     * @return the error, if the value breaks this rule, otherwise {@code null}
+     */
+    String check(T value);
+  }
+
+  private final Rule<T>[] rules;
+
+  private RuleSet(Rule<T>[] rules) {
+    this.rules = rules;
+  }
+
+  /**
+   * Start building the rules of a DTO.
+   *
+   * @param <T> the type of the checked DTOs
+   * @return a builder without rules
+   */
+  public static <T> Builder<T> builder() {
+    return new Builder<>();
+  }
+
+  /**
+   * Check the value against every rule.
+   *
+   * @param value the DTO to check
+   * @return the errors of the value, an empty list if it is valid
+   */
+  public List<String> check(T value) {
+    List<String> errors = null;
+    for (Rule<T> rule : rules) {
+      var error = rule.check(value);
+      if (error != null) {
+        if (errors == null) {
+          errors = new ArrayList<>();
+        }
+        errors.add(error);
+      }
+    }
+    return errors == null ? List.of() : errors;
+  }
+
+  /**
+   * Check many values at once, as a bulk workload does, where an invalid value must not stop the others.
+   *
+   * @param values the DTOs to check
+   * @return the errors of every value, in the order of the values
+   */
+  public List<List<String>> checkAll(List<? extends T> values) {
+    List<List<String>> errors = new ArrayList<>(values.size());
+    for (T value : values) {
+      errors.add(check(value));
+    }
+    return errors;
+  }
+
+  /**
+   * Check the value against every rule, and fail with all errors.
+   *
+   * @param value the DTO to check
+   * @param summary the summary of the exception
+   * @throws ValidationException with the given summary, if the value breaks any rule
+   */
+  public void validate(T value, String summary) throws ValidationException {
+    var errors = check(value);
+    if (!errors.isEmpty()) {
+      throw new ValidationException(summary, errors);
+    }
+  }
+
+  /**
+   * Builds the rules in the order their errors are reported.
+   *
+   * @param <T> the type of the checked DTOs
+   */
+  public static final class Builder<T> {
+    private final List<Rule<T>> rules = new ArrayList<>();
+
+    private Builder() {
+    }
+
+    /**
+     * Add a rule.
+     *
+     * @param rule the rule to add
+     * @return this builder
+     */
+    public Builder<T> rule(Rule<T> rule) {
+      rules.add(rule);
+      return this;
+    }
+
+    /**
+     * Add all rules of the given set.
+     *
+     * @param ruleSet the rules to add, e.g. those for create, that an update has to follow as well
+     * @return this builder
+     */
+    public Builder<T> rules(RuleSet<? super T> ruleSet) {
+      for (Rule<? super T> rule : ruleSet.rules) {
+        rules.add(rule::check);
+      }
+      return this;
+    }
+
+    /**
+     * A field, that must be given.
+     *
+     * @param field the getter of the field
+     * @param error the error, if the field is {@code null}
+     * @return this builder
+     */
+    public Builder<T> required(Function<T, ?> field, String error) {
+      return rule(value -> field.apply(value) == null ? error : null);
+    }
+
+    /**
+     * A text field, that must not be blank and not longer than {@code maxLength} if it is given.
+     *
+     * @param field the getter of the field
+     * @param label the name of the field in the errors, e.g. "Horse name"
+     * @param required whether the field must be given
+     * @param maxLength the maximum length of the text
+     * @return this builder
+     */
+    public Builder<T> text(Function<T, String> field, String label, boolean required, int maxLength) {
+      if (required) {
+        required(field, label + " is not given");
+      }
+      var blank = label + " is given but blank";
+      var tooLong = "%s too long: longer than %d characters".formatted(label, maxLength);
+      rule(value -> {
+        var text = field.apply(value);
+        return text != null && text.isBlank() ? blank : null;
+      });
+      return rule(value -> {
+        var text = field.apply(value);
+        return text != null && text.length() > maxLength ? tooLong : null;
+      });
+    }
+
+    /**
+     * An email address, if it is given, see {@link EmailAddresses#isValid(CharSequence)}.
+     *
+     * @param field the getter of the field
+     * @param error the error, if the field is not a valid email address
+     * @return this builder
+     */
+    public Builder<T> email(Function<T, String> field, String error) {
+      return rule(value -> {
+        var email = field.apply(value);
+        return email != null && !EmailAddresses.isValid(email) ? error : null;
+      });
+    }
+
+    /**
+     * A date, that is not after today, if it is given.
+     *
+     * @param field the getter of the field
+     * @param error the error, if the date is after today
+     * @return this builder
+     */
+    public Builder<T> notInFuture(Function<T, LocalDate> field, String error) {
+      return rule(value -> {
+        var date = field.apply(value);
+        return date != null && date.isAfter(Today.get()) ? error : null;
+      });
+    }
+
+    /**
+     * Build the rules added so far.
+     *
+     * @return the rules, in the order they were added
+     */
+    @SuppressWarnings("unchecked")
+    public RuleSet<T> build() {
+      return new RuleSet<>(rules.toArray(Rule[]::new));
+    }
+  }
+
+  /**
+   * Today's date, only computed again, once the day is over, as {@link LocalDate#now()} allocates.
+   */
+  private static final class Today {
+    private record Day(LocalDate date, long endMillis) {
+    }
+
+    private static volatile Day current = new Day(LocalDate.MIN, Long.MIN_VALUE);
+
+    private Today() {
+    }
+
+    static LocalDate get() {
+      var day = current;
+      if (System.currentTimeMillis() >= day.endMillis()) {
+        var now = ZonedDateTime.now();
+        var date = now.toLocalDate();
+        day = new Day(date, date.plusDays(1).atStartOfDay(now.getZone()).toInstant().toEpochMilli());
+        current = day;
+      }
+      return day.date();
+    }
+  }
+}
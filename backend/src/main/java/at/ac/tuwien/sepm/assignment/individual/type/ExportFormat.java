@@ -0,0 +1,19 @@
+package at.ac.tuwien.sepm.assignment.individual.type;
+
+/**
+ * Formats the whole registry of horses and owners can be exported in.
+ */
+public enum ExportFormat {
+  /**
+   * One CSV table of owners and horses, with a {@code type} column, that tells them apart.
+   */
+  CSV,
+  /**
+   * Newline delimited JSON, one object per owner or horse.
+   */
+  NDJSON,
+  /**
+   * A pedigree in the style of GEDCOM 5.5.1, with custom tags for the parents and owner of a horse.
+   */
+  GEDCOM
+}
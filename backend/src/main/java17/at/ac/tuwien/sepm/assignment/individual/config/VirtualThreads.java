@@ -0,0 +1,23 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Virtual threads of a backend built for Java 17, which has none.
+ * The build on Java 21 replaces this class, see the {@code java21} profile of the pom.xml.
+ */
+final class VirtualThreads {
+  private VirtualThreads() {
+  }
+
+  /**
+   * Fail, as there are no virtual threads in this build.
+   *
+   * @param prefix of the names of the threads
+   * @return never
+   * @throws IllegalStateException always
+   */
+  static ExecutorService newThreadPerTaskExecutor(String prefix) {
+    throw new IllegalStateException("request-threads: virtual needs the backend built with Java 21, this build is for Java 17");
+  }
+}
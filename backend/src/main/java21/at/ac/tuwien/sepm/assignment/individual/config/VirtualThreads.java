@@ -0,0 +1,22 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Virtual threads of a backend built for Java 21, see the {@code java21} profile of the pom.xml.
+ */
+final class VirtualThreads {
+  private VirtualThreads() {
+  }
+
+  /**
+   * Create an executor, that starts a new virtual thread for every task.
+   *
+   * @param prefix of the names of the threads, which are numbered
+   * @return the executor
+   */
+  static ExecutorService newThreadPerTaskExecutor(String prefix) {
+    return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 0).factory());
+  }
+}
@@ -20,3 +20,53 @@ CREATE TABLE IF NOT EXISTS horse
   FOREIGN KEY (mother_id) REFERENCES horse (id) ON DELETE SET NULL,
   FOREIGN KEY (father_id) REFERENCES horse (id) ON DELETE SET NULL
     );
+
+-- The foreign keys above already come with an index on owner_id, mother_id and father_id each.
+-- These cover the remaining filters of the horse search.
+CREATE INDEX IF NOT EXISTS horse_date_of_birth ON horse (date_of_birth);
+CREATE INDEX IF NOT EXISTS horse_sex_date_of_birth ON horse (sex, date_of_birth);
+-- Search results are sorted by name and ID, these let a page seek to its cursor in that order.
+CREATE INDEX IF NOT EXISTS horse_name_id ON horse (name, id);
+CREATE INDEX IF NOT EXISTS horse_sex_name_id ON horse (sex, name, id);
+
+-- Trigram indexes for the substring searches, maintained by TrigramIndex.
+-- field is 'N' for the name and 'D' for the description of a horse.
+CREATE TABLE IF NOT EXISTS horse_trigram
+(
+  field CHAR(1) NOT NULL,
+  trigram VARCHAR(3) NOT NULL,
+  horse_id BIGINT NOT NULL,
+  PRIMARY KEY (field, trigram, horse_id),
+  FOREIGN KEY (horse_id) REFERENCES horse (id) ON DELETE CASCADE
+);
+
+CREATE TABLE IF NOT EXISTS owner_trigram
+(
+  trigram VARCHAR(3) NOT NULL,
+  owner_id BIGINT NOT NULL,
+  PRIMARY KEY (trigram, owner_id),
+  FOREIGN KEY (owner_id) REFERENCES owner (id) ON DELETE CASCADE
+);
+
+-- Closure of the parent relation within 5 generations (HorseDao.ANCESTRY_WINDOW), maintained by AncestryWindow:
+-- a row for every horse and each of its ancestors, with the number of generations between them,
+-- and one with depth 0 for the horse itself.
+-- An ancestor on more than one line is only stored with its nearest generation.
+CREATE TABLE IF NOT EXISTS horse_ancestry
+(
+  ancestor_id BIGINT NOT NULL,
+  descendant_id BIGINT NOT NULL,
+  depth INT NOT NULL,
+  PRIMARY KEY (descendant_id, ancestor_id),
+  FOREIGN KEY (ancestor_id) REFERENCES horse (id) ON DELETE CASCADE,
+  FOREIGN KEY (descendant_id) REFERENCES horse (id) ON DELETE CASCADE
+);
+CREATE INDEX IF NOT EXISTS horse_ancestry_ancestor_depth ON horse_ancestry (ancestor_id, depth);
+
+-- A single row, that every change of the parents of a horse locks in its transaction,
+-- so no two of them check for a cycle at once, in whichever instance of the backend they run.
+CREATE TABLE IF NOT EXISTS pedigree_lock
+(
+  id INT PRIMARY KEY
+);
+MERGE INTO pedigree_lock KEY (id) VALUES (1);
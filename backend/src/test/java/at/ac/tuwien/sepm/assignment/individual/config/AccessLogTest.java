@@ -0,0 +1,51 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import java.time.LocalDate;
+import org.junit.jupiter.api.Test;
+
+public class AccessLogTest {
+
+  @Test
+  public void requestsBeyondTheBufferAreDroppedAndCounted() {
+    // Not started, so nothing takes the requests out of the buffer
+    var accessLog = new AccessLog(4);
+    for (int i = 0; i < 6; i++) {
+      accessLog.log(0, "r", "127.0.0.1", "GET", "/horses", null, "/horses", 200, 1000, 10, null);
+    }
+    assertThat(accessLog.dropped()).isEqualTo(2);
+  }
+
+  @Test
+  public void writerFreesTheBuffer() throws Exception {
+    var accessLog = new AccessLog(4);
+    accessLog.start();
+    try {
+      for (int i = 0; i < 100; i++) {
+        accessLog.log(0, "r", "127.0.0.1", "GET", "/horses", "name=\"W\"", "/horses", 200, 1000, 10, null);
+        Thread.sleep(1);
+      }
+    } finally {
+      accessLog.stop();
+    }
+    assertThat(accessLog.dropped()).isLessThan(100);
+  }
+
+  @Test
+  public void logBodyIsCutOff() {
+    HorseDetailDto horse = null;
+    for (int generation = 0; generation < 200; generation++) {
+      horse = new HorseDetailDto((long) generation, "Horse " + generation, null, LocalDate.of(2000, 1, 1), Sex.FEMALE, null, horse, null);
+    }
+
+    var rendered = LogBody.of(horse).toString();
+
+    assertThat(rendered)
+        .startsWith("{\"id\":199,\"name\":\"Horse 199\"")
+        .endsWith("... (cut off)")
+        .hasSizeLessThanOrEqualTo(LogBody.MAX_CHARS + "... (cut off)".length());
+  }
+}
@@ -0,0 +1,19 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+
+public class ThreadConfigurationTest {
+
+  // Built on Java 21, the backend has virtual threads, see VirtualRequestThreadsTest of the java21 test sources.
+  @Test
+  @EnabledForJreRange(max = JRE.JAVA_20)
+  public void virtualThreadsFailWithoutJava21() {
+    assertThatThrownBy(() -> VirtualThreads.newThreadPerTaskExecutor("test-"))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessageStartingWith("request-threads: virtual");
+  }
+}
@@ -0,0 +1,54 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Starts the backend on a generated registry, that is too large to rebuild the derived data in one transaction.
+ * It gets a database of its own, which is dropped with the context after the tests.
+ */
+@ActiveProfiles({"test", "datagen"})
+@SpringBootTest(properties = {
+    "spring.datasource.url=jdbc:h2:mem:generated;INIT=RUNSCRIPT FROM 'classpath:sql/createSchema.sql'",
+    "datagen.horses=20000",
+    "datagen.owners=500",
+    "datagen.generations=20"})
+@DirtiesContext
+public class GeneratedRegistryTest {
+  private static final String SQL_WINDOW_ANCESTORS = "SELECT ancestor_id FROM horse_ancestry WHERE descendant_id = ? AND depth > 0";
+
+  @Autowired
+  JdbcTemplate jdbcTemplate;
+  @Autowired
+  PedigreeIndex pedigreeIndex;
+
+  @Test
+  public void ancestryWindowIsCompleteAfterStartup() {
+    assertThat(count("SELECT COUNT(*) FROM horse")).isEqualTo(20010);
+    assertThat(count("SELECT COUNT(*) FROM horse WHERE NOT EXISTS"
+        + " (SELECT 1 FROM horse_ancestry WHERE descendant_id = horse.id AND ancestor_id = horse.id)")).isZero();
+    assertThat(count("SELECT MAX(depth) FROM horse_ancestry")).isEqualTo(HorseDao.ANCESTRY_WINDOW);
+  }
+
+  @Test
+  public void ancestryWindowHoldsTheSameAncestorsAsThePedigreeIndex() {
+    var ids = jdbcTemplate.queryForList("SELECT id FROM horse WHERE MOD(id, 997) = 0", Long.class);
+    assertThat(ids).hasSizeGreaterThan(10);
+    for (long id : ids) {
+      var window = jdbcTemplate.queryForList(SQL_WINDOW_ANCESTORS, Long.class, id);
+      var index = Arrays.stream(pedigreeIndex.ancestors(id, HorseDao.ANCESTRY_WINDOW)).boxed().toList();
+      assertThat(window).as("Ancestors of %d", id).containsExactlyInAnyOrderElementsOf(index);
+    }
+  }
+
+  private long count(String sql) {
+    return jdbcTemplate.queryForObject(sql, Long.class);
+  }
+}
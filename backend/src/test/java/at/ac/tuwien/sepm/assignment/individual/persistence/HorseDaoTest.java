@@ -10,16 +10,28 @@ import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
 
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import at.ac.tuwien.sepm.assignment.individual.exception.ConflictException;
 import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
+import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
+import at.ac.tuwien.sepm.assignment.individual.persistence.impl.AncestryWindow;
 import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import com.github.benmanes.caffeine.cache.Cache;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 
 @ActiveProfiles({"test", "datagen"}) // enable "test" spring profile during test execution in order to pick up configuration from application-test.yml
@@ -30,6 +42,14 @@ public class HorseDaoTest {
   HorseDao horseDao;
   @Autowired
   DataGeneratorBean bean;
+  @Autowired
+  PedigreeIndex pedigreeIndex;
+  @Autowired
+  Cache<Long, Horse> horseCache;
+  @Autowired
+  AncestryWindow ancestryWindow;
+  @Autowired
+  JdbcTemplate jdbcTemplate;
 
   @BeforeEach
   public void setup() throws SQLException {
@@ -71,20 +91,366 @@ public class HorseDaoTest {
   }
 
   @Test
-  public void searchReturnsRightHorse() {
+  public void getWithAncestorsReturnsWholePedigree() throws Exception {
+    var pedigree = horseDao.getWithAncestors(-6L);
+    assertThat(pedigree)
+        .extracting(Horse::getId)
+        .containsExactlyInAnyOrder(-1L, -2L, -3L, -4L, -5L, -6L, -7L, -8L, -9L, -10L);
+  }
+
+  @Test
+  public void getWithAncestorsStopsAtGenerationLimit() throws Exception {
+    var pedigree = horseDao.getWithAncestors(-6L, 1);
+    assertThat(pedigree)
+        .extracting(Horse::getId)
+        .containsExactlyInAnyOrder(-6L, -8L, -10L);
+  }
+
+  @Test
+  public void getWithAncestorsWithNonExistingIdThrowsNotFoundException() {
+    assertThrows(NotFoundException.class,
+            () -> horseDao.getWithAncestors(-15L));
+  }
+
+  @Test
+  public void pedigreeIndexContainsGeneratedData() {
+    assertThat(pedigreeIndex.ancestors(-6L, 1)).containsExactlyInAnyOrder(-10L, -8L);
+    assertThat(pedigreeIndex.descendants(-3L, Integer.MAX_VALUE))
+        .containsExactlyInAnyOrder(-10L, -9L, -4L, -7L, -5L, -8L, -6L);
+    assertThat(pedigreeIndex.earliestBirthOfChildren(-1L)).isEqualTo(LocalDate.of(2014, 3, 13));
+    assertThat(pedigreeIndex.hasChildren(-6L)).isFalse();
+  }
+
+  @Test
+  public void pedigreeIndexFollowsWrites() throws Exception {
+    var father = horseDao.create(new HorseDetailDto(null, "Juan", null, LocalDate.of(2014, 12, 12), Sex.MALE, null, null, null));
+    var fatherDto = new HorseDetailDto(father.getId(), "Juan", null, LocalDate.of(2014, 12, 12), Sex.MALE, null, null, null);
+    var foal = horseDao.create(new HorseDetailDto(null, "Pedro", null, LocalDate.of(2020, 1, 1), Sex.MALE, null, null, fatherDto));
+    assertThat(pedigreeIndex.descendants(father.getId(), Integer.MAX_VALUE)).containsExactly(foal.getId());
+
+    var wendy = new HorseDetailDto(-1L, "Wendy", null, LocalDate.of(2012, 12, 12), Sex.FEMALE, null, null, null);
+    horseDao.update(new HorseDetailDto(foal.getId(), "Pedro", null, LocalDate.of(2020, 1, 1), Sex.MALE, null, wendy, fatherDto));
+    assertThat(pedigreeIndex.ancestors(foal.getId(), 1)).containsExactlyInAnyOrder(-1L, father.getId());
+
+    horseDao.delete(father.getId());
+    assertThat(pedigreeIndex.hasChildren(father.getId())).isFalse();
+    assertThat(pedigreeIndex.ancestors(foal.getId(), Integer.MAX_VALUE)).containsExactly(-1L);
+  }
+
+  @Test
+  public void getWithAncestorsReadsTheSameGenerationsInsideAndBeyondTheAncestryWindow() throws Exception {
+    for (int generations = 0; generations <= HorseDao.ANCESTRY_WINDOW + 1; generations++) {
+      var expected = new ArrayList<Long>(List.of(-6L));
+      Arrays.stream(pedigreeIndex.ancestors(-6L, generations)).forEach(expected::add);
+      assertThat(horseDao.getWithAncestors(-6L, generations)).extracting(Horse::getId).containsExactlyInAnyOrderElementsOf(expected);
+    }
+    assertThrows(NotFoundException.class, () -> horseDao.getWithAncestors(-999L, 2));
+  }
+
+  @Test
+  public void ancestryWindowContainsGeneratedData() throws Exception {
+    // Carlo is the grandfather of Anna through Lilli, and further back through Thomas
+    assertThat(horseDao.getWithAncestors(-6L, 2)).extracting(Horse::getId).containsExactlyInAnyOrder(-6L, -10L, -8L, -5L, -3L, -2L);
+    assertThat(ancestryWindow.descendants(-3L, HorseDao.ANCESTRY_WINDOW))
+        .containsExactlyInAnyOrder(-10L, -9L, -4L, -7L, -5L, -8L, -6L);
+    // Carlo is five generations back from Thomas
+    assertThat(horseDao.getWithAncestors(-8L, 5)).extracting(Horse::getId).contains(-3L);
+    assertThat(horseDao.getWithAncestors(-8L, 4)).extracting(Horse::getId).doesNotContain(-3L);
+  }
+
+  @Test
+  public void ancestryWindowFollowsWrites() throws Exception {
+    var father = horseDao.create(new HorseDetailDto(null, "Juan", null, LocalDate.of(2014, 12, 12), Sex.MALE, null, null, null));
+    var fatherDto = new HorseDetailDto(father.getId(), "Juan", null, LocalDate.of(2014, 12, 12), Sex.MALE, null, null, null);
+    var foal = horseDao.create(new HorseDetailDto(null, "Pedro", null, LocalDate.of(2020, 1, 1), Sex.MALE, null, null, fatherDto));
+    assertThat(horseDao.getWithAncestors(foal.getId(), HorseDao.ANCESTRY_WINDOW)).extracting(Horse::getId)
+        .containsExactlyInAnyOrder(foal.getId(), father.getId());
+
+    // Wendy's ancestors become those of Juan's descendants as well
+    var issy = new HorseDetailDto(-2L, "Issy", null, LocalDate.of(2014, 3, 13), Sex.FEMALE, null, null, null);
+    horseDao.update(new HorseDetailDto(father.getId(), "Juan", null, LocalDate.of(2014, 12, 12), Sex.MALE, null, issy, null));
+    assertThat(horseDao.getWithAncestors(foal.getId(), HorseDao.ANCESTRY_WINDOW)).extracting(Horse::getId)
+        .containsExactlyInAnyOrder(foal.getId(), father.getId(), -2L, -1L);
+    assertThat(ancestryWindow.descendants(-1L, HorseDao.ANCESTRY_WINDOW)).contains(father.getId(), foal.getId());
+
+    horseDao.delete(father.getId());
+    assertThat(horseDao.getWithAncestors(foal.getId(), HorseDao.ANCESTRY_WINDOW)).extracting(Horse::getId).containsExactly(foal.getId());
+    assertThat(ancestryWindow.descendants(-1L, HorseDao.ANCESTRY_WINDOW)).doesNotContain(foal.getId());
+  }
+
+  @Test
+  public void maintainedAncestryWindowEqualsRebuiltOne() throws Exception {
+    var sql = "SELECT ancestor_id, descendant_id, depth FROM horse_ancestry";
+    var wendy = new HorseDetailDto(-1L, "Wendy", null, LocalDate.of(2012, 12, 12), Sex.FEMALE, null, null, null);
+    var carlo = new HorseDetailDto(-3L, "Carlo", null, LocalDate.of(2016, 4, 14), Sex.MALE, null, null, null);
+    horseDao.update(new HorseDetailDto(-3L, "Carlo", null, LocalDate.of(2016, 4, 14), Sex.MALE, null, wendy, null));
+    horseDao.update(new HorseDetailDto(-7L, "Matteo", null, LocalDate.of(2018, 7, 17), Sex.MALE, null, wendy, carlo));
+    horseDao.delete(-8L);
+    horseDao.createAll(List.of(new HorseDetailDto(null, "Nemo", null, LocalDate.of(2021, 1, 1), Sex.MALE, null, wendy, null)));
+    var maintained = jdbcTemplate.queryForList(sql);
+
+    ancestryWindow.rebuild();
+    assertThat(jdbcTemplate.queryForList(sql)).containsExactlyInAnyOrderElementsOf(maintained);
+  }
+
+  @Test
+  public void incompleteAncestryWindowIsRebuiltOnInitialization() throws Exception {
+    var sql = "SELECT ancestor_id, descendant_id, depth FROM horse_ancestry";
+    var complete = jdbcTemplate.queryForList(sql);
+    jdbcTemplate.update("DELETE FROM horse_ancestry WHERE descendant_id = -6");
+
+    ancestryWindow.initialize();
+    assertThat(jdbcTemplate.queryForList(sql)).containsExactlyInAnyOrderElementsOf(complete);
+  }
+
+  @Test
+  public void updateWithDescendantAsParentThrowsConflictException() throws Exception {
+    // Alejandro is a grandson of Carlo
+    var alejandro = new HorseDetailDto(-4L, "Alejandro", null, LocalDate.of(2018, 5, 15), Sex.MALE, null, null, null);
+    var lilli = new HorseDetailDto(-10L, "Lilli", null, LocalDate.of(2019, 8, 18), Sex.FEMALE, null, null, null);
+
+    var e = assertThrows(ConflictException.class,
+        () -> horseDao.update(new HorseDetailDto(-3L, "Carlo", null, LocalDate.of(2016, 4, 14), Sex.MALE, null, lilli, alejandro)));
+    assertThat(e.errors()).containsExactly("Mother cannot be a descendant of the horse", "Father cannot be a descendant of the horse");
+    assertThat(horseDao.getById(-3L).getFatherId()).isNull();
+    assertThat(pedigreeIndex.ancestors(-3L, Integer.MAX_VALUE)).isEmpty();
+
+    // An ancestor may become a parent
+    var carlo = new HorseDetailDto(-3L, "Carlo", null, LocalDate.of(2016, 4, 14), Sex.MALE, null, null, null);
+    horseDao.update(new HorseDetailDto(-4L, "Alejandro", null, LocalDate.of(2018, 5, 15), Sex.MALE, null, null, carlo));
+    assertThat(pedigreeIndex.isAncestor(-3L, -4L)).isTrue();
+  }
+
+  @Test
+  public void updateWithDescendantBeyondTheAncestryWindowAsParentThrowsConflictException() throws Exception {
+    var wendy = new HorseDetailDto(-1L, "Wendy", null, LocalDate.of(2012, 12, 12), Sex.FEMALE, null, null, null);
+    var mother = wendy;
+    for (int generation = 1; generation <= 2 * HorseDao.ANCESTRY_WINDOW + 1; generation++) {
+      var foal = horseDao.create(new HorseDetailDto(null, "Foal " + generation, null, LocalDate.of(2012 + generation, 1, 1), Sex.FEMALE,
+          null, mother, null));
+      mother = new HorseDetailDto(foal.getId(), foal.getName(), null, foal.getDateOfBirth(), Sex.FEMALE, null, null, null);
+    }
+    var lastFoal = mother;
+
+    var e = assertThrows(ConflictException.class,
+        () -> horseDao.update(new HorseDetailDto(-1L, "Wendy", null, LocalDate.of(2012, 12, 12), Sex.FEMALE, null, lastFoal, null)));
+    assertThat(e.errors()).containsExactly("Mother cannot be a descendant of the horse");
+    assertThat(horseDao.getById(-1L).getMotherId()).isNull();
+  }
+
+  @Test
+  public void concurrentUpdatesCannotCloseCycle() throws Exception {
+    var wendy = new HorseDetailDto(-1L, "Wendy", null, LocalDate.of(2012, 12, 12), Sex.FEMALE, null, null, null);
+    var carlo = new HorseDetailDto(-3L, "Carlo", null, LocalDate.of(2016, 4, 14), Sex.MALE, null, null, null);
+    var start = new CountDownLatch(1);
+    var executor = Executors.newFixedThreadPool(2);
+    try {
+      List<Future<Horse>> updates = new ArrayList<>();
+      for (var update : List.of(new HorseDetailDto(-1L, "Wendy", null, LocalDate.of(2012, 12, 12), Sex.FEMALE, null, null, carlo),
+          new HorseDetailDto(-3L, "Carlo", null, LocalDate.of(2016, 4, 14), Sex.MALE, null, wendy, null))) {
+        updates.add(executor.submit(() -> {
+          start.await();
+          return horseDao.update(update);
+        }));
+      }
+      start.countDown();
+      var failed = 0;
+      for (var update : updates) {
+        try {
+          update.get();
+        } catch (ExecutionException e) {
+          assertThat(e.getCause()).isInstanceOf(ConflictException.class);
+          failed++;
+        }
+      }
+      assertThat(failed).isEqualTo(1);
+      assertThat(pedigreeIndex.isAncestor(-1L, -1L) || pedigreeIndex.isAncestor(-3L, -3L)).isFalse();
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void childCreatedRightAfterParentIsLinkedInIndex() throws Exception {
+    var parents = 200;
+    var start = new CountDownLatch(1);
+    var executor = Executors.newFixedThreadPool(2);
+    try {
+      var createParents = executor.submit(() -> {
+        start.await();
+        for (int i = 0; i < parents; i++) {
+          horseDao.create(new HorseDetailDto(null, "Racing Parent " + i, null, LocalDate.of(2010, 1, 1), Sex.FEMALE, null, null, null));
+        }
+        return null;
+      });
+      // Creates a child of the latest parent, as soon as it is committed, possibly before the index has it
+      var createChildren = executor.submit(() -> {
+        start.await();
+        List<Long> children = new ArrayList<>();
+        Set<Long> linked = new HashSet<>();
+        while (!createParents.isDone()) {
+          var parent = jdbcTemplate.queryForObject("SELECT MAX(id) FROM horse WHERE name LIKE 'Racing Parent %'", Long.class);
+          if (parent != null && linked.add(parent)) {
+            var mother = new HorseDetailDto(parent, "Racing Parent", null, LocalDate.of(2010, 1, 1), Sex.FEMALE, null, null, null);
+            children.add(horseDao.create(new HorseDetailDto(null, "Racing Child", null, LocalDate.of(2015, 1, 1), Sex.MALE,
+                null, mother, null)).getId());
+          }
+        }
+        return children;
+      });
+      start.countDown();
+      createParents.get();
+      for (Long child : createChildren.get()) {
+        var mother = horseDao.getById(child).getMotherId();
+        assertThat(pedigreeIndex.ancestors(child, 1)).containsExactly(mother);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void cachedHorsesFollowUpdates() throws Exception {
+    assertThat(horseDao.getById(-3L).getName()).isEqualTo("Carlo");
+    horseDao.update(new HorseDetailDto(-3L, "Carlos", null, LocalDate.of(2016, 4, 14), Sex.MALE, null, null, null));
+    assertThat(horseDao.getById(-3L).getName()).isEqualTo("Carlos");
+  }
+
+  @Test
+  public void cachedChildrenLoseDeletedParent() throws Exception {
+    assertThat(horseDao.getWithAncestors(-6L))
+        .filteredOn(horse -> horse.getId() == -6L)
+        .extracting(Horse::getMotherId)
+        .containsExactly(-10L);
+    horseDao.delete(-10L);
+    assertThat(horseDao.getById(-6L).getMotherId()).isNull();
+  }
+
+  @Test
+  public void repeatedPedigreeIsReadFromCache() throws Exception {
+    horseDao.getWithAncestors(-6L);
+    var hitsBefore = horseCache.stats().hitCount();
+    var missesBefore = horseCache.stats().missCount();
+    horseDao.getWithAncestors(-6L);
+    assertThat(horseCache.stats().hitCount() - hitsBefore).isEqualTo(10);
+    assertThat(horseCache.stats().missCount()).isEqualTo(missesBefore);
+  }
+
+  @Test
+  public void searchReturnsRightHorse() throws Exception {
     HorseSearchDto searchParams = new HorseSearchDto("sy",
             null,
             LocalDate.of(2017, 3, 13),
             null,
             null,
+            null,
             null);
-    List<Horse> horses = horseDao.search(searchParams).stream().toList();
+    List<Horse> horses = horseDao.search(searchParams).content();
     assertThat(horses)
             .isNotNull()
             .map(Horse::getId, Horse::getName, Horse::getDescription, Horse::getDateOfBirth, Horse::getSex)
             .contains(tuple(-2L, "Issy", "Description 1", LocalDate.of(2014, 3, 13), Sex.FEMALE));
   }
 
+  @Test
+  public void searchRanksPrefixMatchesBeforeInfixMatches() throws Exception {
+    var searchParams = new HorseSearchDto("and", null, null, null, null, null, null);
+
+    assertThat(horseDao.search(searchParams).content())
+        .extracting(Horse::getId)
+        .containsExactly(-5L, -9L, -4L);
+  }
+
+  @Test
+  public void searchByOwnerNameFindsHorsesOfAllMatchingOwners() throws Exception {
+    var searchParams = new HorseSearchDto(null, null, null, null, "mustermann", null, null);
+
+    assertThat(horseDao.search(searchParams).content())
+        .extracting(Horse::getId)
+        .containsExactlyInAnyOrder(-3L, -6L, -7L);
+  }
+
+  @Test
+  public void searchPagesThroughAllHorsesInNameOrder() throws Exception {
+    var ids = new ArrayList<Long>();
+    String cursor = null;
+    do {
+      var page = horseDao.search(new HorseSearchDto(null, null, null, null, null, 3, cursor));
+      assertThat(page.content().size()).isLessThanOrEqualTo(3);
+      page.content().forEach(horse -> ids.add(horse.getId()));
+      cursor = page.next();
+    } while (cursor != null);
+
+    assertThat(ids).containsExactly(-4L, -5L, -9L, -6L, -3L, -2L, -10L, -7L, -8L, -1L);
+  }
+
+  @Test
+  public void searchPagesThroughRankedResults() throws Exception {
+    var first = horseDao.search(new HorseSearchDto("and", null, null, null, null, 2, null));
+    assertThat(first.content()).extracting(Horse::getId).containsExactly(-5L, -9L);
+
+    var second = horseDao.search(new HorseSearchDto("and", null, null, null, null, 2, first.next()));
+    assertThat(second.content()).extracting(Horse::getId).containsExactly(-4L);
+    assertThat(second.next()).isNull();
+  }
+
+  @Test
+  public void searchWithCursorOfOtherSearchThrowsValidationException() throws Exception {
+    var cursor = horseDao.search(new HorseSearchDto(null, null, null, null, null, 2, null)).next();
+
+    assertThrows(ValidationException.class,
+        () -> horseDao.search(new HorseSearchDto("and", null, null, null, null, 2, cursor)));
+    assertThrows(ValidationException.class,
+        () -> horseDao.search(new HorseSearchDto(null, null, null, null, null, 2, "not a cursor")));
+  }
+
+  @Test
+  public void searchFindsCreatedAndUpdatedHorsesByText() throws Exception {
+    var created = horseDao.create(new HorseDetailDto(null, "Zebedee", "Spotted pony", LocalDate.of(2020, 1, 1), Sex.MALE,
+        null, null, null));
+    assertThat(horseDao.search(new HorseSearchDto(null, "pony", null, null, null, null, null)).content())
+        .extracting(Horse::getId)
+        .containsExactly(created.getId());
+
+    horseDao.update(new HorseDetailDto(created.getId(), "Bucephalus", "Black stallion", LocalDate.of(2020, 1, 1), Sex.MALE,
+        null, null, null));
+    assertThat(horseDao.search(new HorseSearchDto("zebedee", null, null, null, null, null, null)).content()).isEmpty();
+    assertThat(horseDao.search(new HorseSearchDto("cephal", null, null, null, null, null, null)).content())
+        .extracting(Horse::getId)
+        .containsExactly(created.getId());
+  }
+
+  @Test
+  public void concurrentlyRenamedHorseIsFoundByItsCurrentName() throws Exception {
+    var start = new CountDownLatch(1);
+    var executor = Executors.newFixedThreadPool(2);
+    try {
+      List<Future<?>> renames = new ArrayList<>();
+      for (String name : List.of("Quixote", "Zanzibar")) {
+        renames.add(executor.submit(() -> {
+          start.await();
+          for (int i = 0; i < 50; i++) {
+            horseDao.update(new HorseDetailDto(-3L, name + " " + i, null, LocalDate.of(2016, 4, 14), Sex.MALE, null, null, null));
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+      for (var rename : renames) {
+        rename.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    var name = horseDao.getById(-3L).getName();
+    var term = name.startsWith("Quixote") ? "xote" : "zanz";
+    var other = name.startsWith("Quixote") ? "zanz" : "xote";
+    assertThat(horseDao.search(new HorseSearchDto(term, null, null, null, null, null, null)).content())
+        .extracting(Horse::getName)
+        .containsExactly(name);
+    assertThat(horseDao.search(new HorseSearchDto(other, null, null, null, null, null, null)).content()).isEmpty();
+  }
+
   @Test
   public void deleteRemovesHorseWithGivenId() throws Exception {
     horseDao.delete(-1L);
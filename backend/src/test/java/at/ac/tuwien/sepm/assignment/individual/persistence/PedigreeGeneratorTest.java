@@ -0,0 +1,85 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.SQLException;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+@ActiveProfiles({"test", "datagen"}) // enable "test" spring profile during test execution in order to pick up configuration from application-test.yml
+@SpringBootTest
+public class PedigreeGeneratorTest {
+
+  @Autowired
+  DataSource dataSource;
+  @Autowired
+  JdbcTemplate jdbcTemplate;
+  @Autowired
+  DataGeneratorBean bean;
+
+  private PedigreeGenerator generator;
+
+  @BeforeEach
+  public void setup() throws SQLException {
+    bean.generateData();
+    generator = new PedigreeGenerator(100, 5000, 10, 1);
+    generator.generate(dataSource);
+  }
+
+  @AfterEach
+  public void cleanup() throws SQLException {
+    bean.cleanData();
+  }
+
+  @Test
+  public void generatesTheRequestedNumberOfRowsNextToTheTestData() {
+    assertThat(count("SELECT COUNT(*) FROM horse WHERE id > 0")).isEqualTo(5000);
+    assertThat(count("SELECT COUNT(*) FROM owner WHERE id > 0")).isEqualTo(100);
+    assertThat(count("SELECT COUNT(*) FROM horse WHERE id < 0")).isEqualTo(10);
+  }
+
+  @Test
+  public void parentsHaveTheRightSexAndAreBornBeforeTheirFoals() {
+    assertThat(count("SELECT COUNT(*) FROM horse h JOIN horse m ON h.mother_id = m.id WHERE m.sex <> 'FEMALE'")).isZero();
+    assertThat(count("SELECT COUNT(*) FROM horse h JOIN horse f ON h.father_id = f.id WHERE f.sex <> 'MALE'")).isZero();
+    assertThat(count("SELECT COUNT(*) FROM horse h JOIN horse p ON p.id IN (h.mother_id, h.father_id)"
+        + " WHERE p.date_of_birth >= h.date_of_birth")).isZero();
+    // Only the founders have no parents
+    assertThat(count("SELECT COUNT(*) FROM horse WHERE id > 0 AND mother_id IS NULL")).isEqualTo(500);
+  }
+
+  @Test
+  public void popularSiresHaveHeavyProgeny() {
+    var foals = count("SELECT COUNT(*) FROM horse WHERE father_id IS NOT NULL");
+    var mostFoalsOfOneSire = count("SELECT MAX(foals) FROM (SELECT COUNT(*) AS foals FROM horse WHERE father_id IS NOT NULL GROUP BY father_id)");
+    var sires = count("SELECT COUNT(DISTINCT father_id) FROM horse");
+    assertThat(mostFoalsOfOneSire).isGreaterThan(10 * foals / sires);
+  }
+
+  @Test
+  public void somePedigreesAreInbred() {
+    // Foals of half siblings
+    assertThat(count("SELECT COUNT(*) FROM horse h JOIN horse m ON h.mother_id = m.id JOIN horse f ON h.father_id = f.id"
+        + " WHERE m.father_id = f.father_id OR m.mother_id = f.mother_id")).isPositive();
+  }
+
+  @Test
+  public void firstHorseOfGenerationHasPedigreeOfThatDepth() {
+    var id = generator.firstHorseOf(9);
+    for (int generation = 9; generation > 0; generation--) {
+      id = jdbcTemplate.queryForObject("SELECT mother_id FROM horse WHERE id = ?", Long.class, id);
+      assertThat(id).isNotNull();
+    }
+    assertThat(jdbcTemplate.queryForObject("SELECT mother_id FROM horse WHERE id = ?", Long.class, id)).isNull();
+  }
+
+  private long count(String sql) {
+    return jdbcTemplate.queryForObject(sql, Long.class);
+  }
+}
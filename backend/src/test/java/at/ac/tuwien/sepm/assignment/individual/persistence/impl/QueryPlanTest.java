@@ -0,0 +1,255 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseSearchDto;
+import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
+import at.ac.tuwien.sepm.assignment.individual.persistence.DataGeneratorBean;
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Runs {@code EXPLAIN} on every statement shape the JDBC DAOs can generate
+ * and fails, if one of them falls back to scanning a whole table,
+ * where it has a condition that an index could serve.
+ * Scans that are intrinsic to a statement (reading all rows, substring matches) are allowed explicitly.
+ */
+@ActiveProfiles({"test", "datagen"})
+@SpringBootTest
+public class QueryPlanTest {
+  private static final Pattern TABLE_SCAN = Pattern.compile("/\\* PUBLIC\\.(\\w+)\\.tableScan");
+  private static final Map<String, List<Long>> IDS = Map.of("ids", List.of(-1L, -2L, -3L));
+
+  @Autowired
+  JdbcTemplate jdbcTemplate;
+  @Autowired
+  NamedParameterJdbcTemplate jdbcNamed;
+  @Autowired
+  DataGeneratorBean bean;
+  @Autowired
+  TrigramIndex trigramIndex;
+
+  private final Set<String> explained = new HashSet<>();
+
+  @BeforeEach
+  public void setup() throws SQLException {
+    bean.generateData();
+  }
+
+  @AfterEach
+  public void cleanup() throws SQLException {
+    bean.cleanData();
+  }
+
+  @Test
+  public void horseStatementsUseIndexes() {
+    assertScans(HorseJdbcDao.SQL_SELECT_ALL, List.of(), "HORSE");
+    assertScans(HorseJdbcDao.SQL_SELECT_ALL_ORDERED, List.of(), "HORSE");
+    assertScans(HorseJdbcDao.SQL_SELECT_BY_ID, List.of(-1L));
+    assertScans(HorseJdbcDao.SQL_SELECT_CHILDREN, List.of(-1L, -1L));
+    assertNamedScans(HorseJdbcDao.SQL_SELECT_ALL_BY_ID);
+    assertNamedScans(HorseJdbcDao.SQL_SELECT_CHILDREN_OF_ALL);
+    assertScans(HorseJdbcDao.SQL_SELECT_DESCENDANTS_IN_GENERATION, List.of(-3L, 2));
+    assertScans(HorseJdbcDao.SQL_SELECT_PARENTS_FOR_UPDATE, List.of(-1L));
+    assertScans(HorseJdbcDao.SQL_LOCK_PARENT_CHANGES, List.of());
+    assertScans(HorseJdbcDao.SQL_SELECT_ANY_ID, Collections.singletonList(new Long[] {-6L, -8L, -10L}));
+    assertScans(HorseJdbcDao.SQL_SELECT_WITH_ANCESTORS_IN_CLOSURE, List.of(-6L, 3));
+    assertScans(HorseJdbcDao.SQL_UPDATE, List.of("Name", "", LocalDate.of(2020, 1, 1), "MALE", -1L, -1L, -2L, -3L));
+    assertScans(HorseJdbcDao.SQL_DELETE_BY_ID, List.of(-1L));
+    assertScans(HorseJdbcDao.SQL_CREATE, List.of("Name", "", LocalDate.of(2020, 1, 1), "MALE", -1L, -1L, -2L));
+  }
+
+  @Test
+  public void everyHorseSearchShapeUsesIndexesForItsSelectiveFilters() throws ValidationException {
+    // Every combination of set and unset search parameters, with text filters that are too short for the trigram index
+    for (int mask = 0; mask < 1 << 6; mask++) {
+      var search = searchShape(mask, "a");
+      var query = HorseJdbcDao.searchQuery(search, trigramIndex);
+      var allowed = new ArrayList<String>();
+      // Without trigrams, substring matches can not use an index.
+      // So without a date of birth or sex filter, all horses are read.
+      if (search.bornBefore() == null && search.sex() == null) {
+        allowed.add("HORSE");
+      }
+      if (search.ownerName() != null) {
+        allowed.add("OWNER");
+      }
+      assertScans(query.sql(), query.params(), allowed.toArray(String[]::new));
+    }
+  }
+
+  @Test
+  public void everyHorseSearchShapeWithTrigramsUsesTheTrigramIndex() throws ValidationException {
+    for (int mask = 0; mask < 1 << 6; mask++) {
+      var search = searchShape(mask, "Mann");
+      var query = HorseJdbcDao.searchQuery(search, trigramIndex);
+      // Only reading all horses, when there is no filter at all, is intrinsic.
+      if ((mask & (1 | 2 | 4 | 8 | 16)) == 0) {
+        assertScans(query.sql(), query.params(), "HORSE");
+      } else {
+        assertScans(query.sql(), query.params());
+      }
+    }
+  }
+
+  @Test
+  public void pagesSeekToTheirCursor() throws ValidationException {
+    for (int mask = 0; mask < 1 << 5; mask++) {
+      var shape = searchShape(mask, "Mann");
+      var textFilters = Stream.of(shape.name(), shape.description(), shape.ownerName()).filter(Objects::nonNull).count();
+      var sortKey = new ArrayList<Object>(Collections.nCopies((int) textFilters, 2));
+      sortKey.addAll(List.of("Max", -1L));
+      var search = new HorseSearchDto(shape.name(), shape.description(), shape.bornBefore(), shape.sex(), shape.ownerName(), 10,
+          HorseJdbcDao.encodeCursor(sortKey));
+      var query = HorseJdbcDao.searchQuery(search, trigramIndex);
+      assertScans(query.sql(), query.params());
+    }
+    // Without filters, the next page is found in the index on the sort key directly, instead of walking it from the start.
+    var query = HorseJdbcDao.searchQuery(new HorseSearchDto(null, null, null, null, null, 10, HorseJdbcDao.encodeCursor(List.of("Max", -1L))), trigramIndex);
+    assertThat(explain(query.sql(), query.params())).contains("HORSE_NAME_ID: NAME >=");
+    query = HorseJdbcDao.searchQuery(new HorseSearchDto(null, null, null, Sex.MALE, null, 10, HorseJdbcDao.encodeCursor(List.of("Max", -1L))), trigramIndex);
+    assertThat(explain(query.sql(), query.params())).contains("HORSE_SEX_NAME_ID: SEX =").contains("AND NAME >=");
+  }
+
+  @Test
+  public void rankedPagesReadAllMatchesToFindTheirCursor() throws ValidationException {
+    // The rank depends on the search terms, so no index is sorted by it.
+    // Pages of searches with text filters can only use the index of a filter,
+    // and compare every match to the cursor, before sorting the rest.
+    for (int mask = 1; mask < 1 << 5; mask++) {
+      var shape = searchShape(mask, "Mann");
+      var textFilters = Stream.of(shape.name(), shape.description(), shape.ownerName()).filter(Objects::nonNull).count();
+      if (textFilters == 0) {
+        continue;
+      }
+      var sortKey = new ArrayList<Object>(Collections.nCopies((int) textFilters, 2));
+      sortKey.addAll(List.of("Max", -1L));
+      var search = new HorseSearchDto(shape.name(), shape.description(), shape.bornBefore(), shape.sex(), shape.ownerName(), 10,
+          HorseJdbcDao.encodeCursor(sortKey));
+      var query = HorseJdbcDao.searchQuery(search, trigramIndex);
+      assertThat(explain(query.sql(), query.params()))
+          .as("Plan of %s", search)
+          .doesNotContain("NAME >=")
+          .doesNotContain("HORSE_NAME_ID")
+          .doesNotContain("HORSE_SEX_NAME_ID")
+          .containsPattern("(WHERE|AND) \\(ROW \\(CASE WHEN");
+    }
+  }
+
+  @Test
+  public void trigramIndexStatementsUseIndexes() {
+    assertScans(TrigramIndex.SQL_INSERT_HORSE, List.of(TrigramIndex.FIELD_NAME, "ABC", -1L));
+    assertScans(TrigramIndex.SQL_INSERT_OWNER, List.of("ABC", -1L));
+    assertScans(TrigramIndex.SQL_SELECT_HORSE, List.of(-1L));
+    assertScans(TrigramIndex.SQL_DELETE_HORSE, List.of(-1L));
+    // Rebuilding reads and replaces everything
+    assertScans(TrigramIndex.SQL_DELETE_ALL_HORSES, List.of(), "HORSE_TRIGRAM");
+    assertScans(TrigramIndex.SQL_DELETE_ALL_OWNERS, List.of(), "OWNER_TRIGRAM");
+    assertScans(TrigramIndex.SQL_SELECT_HORSE_TEXTS, List.of(), "HORSE");
+    assertScans(TrigramIndex.SQL_SELECT_OWNER_TEXTS, List.of(), "OWNER");
+    assertScans(TrigramIndex.SQL_COUNT_HORSE_TRIGRAMS, List.of(), "HORSE_TRIGRAM");
+    assertScans(TrigramIndex.SQL_COUNT_OWNER_TRIGRAMS, List.of(), "OWNER_TRIGRAM");
+    assertScans(TrigramIndex.SQL_ANY_INDEXED, List.of(), "HORSE_TRIGRAM", "OWNER_TRIGRAM");
+  }
+
+  @Test
+  public void ancestryWindowStatementsUseIndexes() {
+    assertScans(AncestryWindow.SQL_SELECT_DESCENDANTS, List.of(-3L, 3));
+    assertScans(AncestryWindow.SQL_SELECT_ANCESTOR_OR_FURTHEST, List.of(new Long[] {-6L, -8L}, -3L));
+    assertScans(AncestryWindow.SQL_INSERT_SELF, List.of(-1L, -1L));
+    assertNamedScans(AncestryWindow.SQL_INSERT_ANCESTORS_OF_ALL);
+    assertNamedScans(AncestryWindow.SQL_DELETE_ANCESTORS_OF_ALL);
+    assertNamedScans(AncestryWindow.SQL_SELECT_PARENTS_OF_ALL);
+    assertNamedScans(AncestryWindow.SQL_DELETE_ALL_OF_ALL);
+    // Rebuilding reads the parents of all horses, and replaces their rows batch by batch
+    assertScans(AncestryWindow.SQL_SELECT_ALL_PARENTS, List.of(), "HORSE");
+    assertScans(AncestryWindow.SQL_INCOMPLETE, List.of(), "HORSE");
+  }
+
+  @Test
+  public void ownerStatementsUseIndexes() {
+    assertScans(OwnerJdbcDao.SQL_SELECT_BY_ID, List.of(-1L));
+    assertNamedScans(OwnerJdbcDao.SQL_SELECT_ALL);
+    assertScans(OwnerJdbcDao.SQL_SELECT_ALL_ORDERED, List.of(), "OWNER");
+    assertScans(OwnerJdbcDao.SQL_CREATE, List.of("First", "Last", "mail@example.com"));
+  }
+
+  @Test
+  public void everyStatementOfTheDaosIsExplained() throws IllegalAccessException {
+    horseStatementsUseIndexes();
+    ownerStatementsUseIndexes();
+    trigramIndexStatementsUseIndexes();
+    ancestryWindowStatementsUseIndexes();
+    var statements = new HashSet<String>();
+    var fields = Stream.of(HorseJdbcDao.class, OwnerJdbcDao.class, TrigramIndex.class, AncestryWindow.class)
+        .flatMap(dao -> Arrays.stream(dao.getDeclaredFields()))
+        .toList();
+    for (Field field : fields) {
+      if (Modifier.isStatic(field.getModifiers()) && field.getName().startsWith("SQL_") && !field.getName().endsWith("_CLAUSE")) {
+        statements.add((String) field.get(null));
+      }
+    }
+    assertThat(explained)
+        .as("New statements have to be added to the query plan tests")
+        .containsAll(statements);
+  }
+
+  private static HorseSearchDto searchShape(int mask, String text) {
+    return new HorseSearchDto(
+        (mask & 1) != 0 ? text : null,
+        (mask & 2) != 0 ? text : null,
+        (mask & 4) != 0 ? LocalDate.of(2020, 1, 1) : null,
+        (mask & 8) != 0 ? Sex.FEMALE : null,
+        (mask & 16) != 0 ? text : null,
+        (mask & 32) != 0 ? 10 : null,
+        null);
+  }
+
+  private void assertScans(String sql, List<?> params, String... allowedScans) {
+    assertPlan(sql, explain(sql, params), allowedScans);
+  }
+
+  private String explain(String sql, List<?> params) {
+    return String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + sql, String.class, params.toArray()));
+  }
+
+  private void assertNamedScans(String sql, String... allowedScans) {
+    var plan = String.join("\n", jdbcNamed.queryForList("EXPLAIN " + sql, IDS, String.class));
+    assertPlan(sql, plan, allowedScans);
+  }
+
+  private void assertPlan(String sql, String plan, String... allowedScans) {
+    explained.add(sql);
+    var scans = new ArrayList<String>();
+    Matcher matcher = TABLE_SCAN.matcher(plan);
+    while (matcher.find()) {
+      scans.add(matcher.group(1));
+    }
+    scans.removeAll(Arrays.asList(allowedScans));
+    assertThat(scans)
+        .as("Table scans in the plan of%n%s%n%s", sql, plan)
+        .isEqualTo(Collections.emptyList());
+  }
+}
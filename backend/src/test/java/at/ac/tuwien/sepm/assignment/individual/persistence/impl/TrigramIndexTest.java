@@ -0,0 +1,60 @@
+package at.ac.tuwien.sepm.assignment.individual.persistence.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
+import at.ac.tuwien.sepm.assignment.individual.persistence.DataGeneratorBean;
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseDao;
+import java.sql.SQLException;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@ActiveProfiles({"test", "datagen"})
+@SpringBootTest
+public class TrigramIndexTest {
+
+  @Autowired
+  TrigramIndex trigramIndex;
+  @Autowired
+  HorseDao horseDao;
+  @Autowired
+  TransactionTemplate transactionTemplate;
+  @Autowired
+  DataGeneratorBean bean;
+
+  @BeforeEach
+  public void setup() throws SQLException {
+    bean.generateData();
+  }
+
+  @AfterEach
+  public void cleanup() throws SQLException {
+    bean.cleanData();
+  }
+
+  @Test
+  public void rolledBackWritesLeaveTheCountsAsTheyWere() {
+    // Wendy is the only horse with WEN in her name
+    assertThat(trigramIndex.horseOccurrences(TrigramIndex.FIELD_NAME, "WEN")).isEqualTo(1);
+    transactionTemplate.executeWithoutResult(status -> {
+      trigramIndex.unindexHorse(-1L);
+      trigramIndex.unindexHorse(-2L);
+      trigramIndex.indexNewHorses(List.of(new Horse().setId(-2L).setName("Gwen")));
+      status.setRollbackOnly();
+    });
+    assertThat(trigramIndex.horseOccurrences(TrigramIndex.FIELD_NAME, "WEN")).isEqualTo(1);
+    assertThat(trigramIndex.horseOccurrences(TrigramIndex.FIELD_NAME, "GWE")).isZero();
+  }
+
+  @Test
+  public void committedWritesChangeTheCounts() throws Exception {
+    horseDao.delete(-1L);
+    assertThat(trigramIndex.horseOccurrences(TrigramIndex.FIELD_NAME, "WEN")).isZero();
+  }
+}
@@ -0,0 +1,164 @@
+package at.ac.tuwien.sepm.assignment.individual.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import at.ac.tuwien.sepm.assignment.individual.persistence.DataGeneratorBean;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+@ActiveProfiles({"test", "datagen"}) // enable "test" spring profile during test execution in order to pick up configuration from application-test.yml
+@SpringBootTest
+@EnableWebMvc
+@WebAppConfiguration
+public class ExportEndpointTest {
+
+  @Autowired
+  private WebApplicationContext webAppContext;
+  private MockMvc mockMvc;
+
+  @Autowired
+  ObjectMapper objectMapper;
+
+  @Autowired
+  DataGeneratorBean bean;
+
+  @BeforeEach
+  public void setup() throws SQLException {
+    this.mockMvc = MockMvcBuilders.webAppContextSetup(webAppContext).build();
+    bean.generateData();
+  }
+
+  @AfterEach
+  public void cleanup() throws SQLException {
+    bean.cleanData();
+  }
+
+  @Test
+  public void exportingNdjsonWritesOwnersBeforeHorses() throws Exception {
+    var lines = export("NDJSON", MediaType.APPLICATION_NDJSON);
+
+    List<JsonNode> records = new ArrayList<>();
+    for (String line : lines) {
+      records.add(objectMapper.readTree(line));
+    }
+    assertThat(records).hasSize(20);
+    assertThat(records.subList(0, 10)).allSatisfy(owner -> assertThat(owner.get("type").asText()).isEqualTo("owner"));
+    assertThat(records.subList(10, 20)).allSatisfy(horse -> assertThat(horse.get("type").asText()).isEqualTo("horse"));
+    assertThat(records.get(0).get("id").asLong()).isEqualTo(-10L);
+    assertThat(records.get(0).get("lastName").asText()).isEqualTo("Uzumaki");
+    var anna = records.get(14);
+    assertThat(anna.get("name").asText()).isEqualTo("Anna");
+    assertThat(anna.get("dateOfBirth").asText()).isEqualTo("2022-07-17");
+    assertThat(anna.get("motherId").asLong()).isEqualTo(-10L);
+    assertThat(anna.get("fatherId").asLong()).isEqualTo(-8L);
+    assertThat(records.get(19).get("motherId").isNull()).isTrue();
+  }
+
+  @Test
+  public void exportingCsvWritesOneTableWithTypeColumn() throws Exception {
+    var lines = export("CSV", ExportEndpoint.TEXT_CSV);
+
+    assertThat(lines).hasSize(21);
+    assertThat(lines.get(0)).isEqualTo("type,id,name,description,dateOfBirth,sex,ownerId,motherId,fatherId,firstName,lastName,email");
+    assertThat(lines).contains(
+        "owner,-1,,,,,,,,Fritz,Mayer,fritz.mayer@gmail.com",
+        "horse,-6,Anna,Description 5,2022-07-17,FEMALE,-5,-10,-8,,,");
+  }
+
+  @Test
+  public void exportingGedcomRefersToParentsById() throws Exception {
+    var lines = export("GEDCOM", ExportEndpoint.APPLICATION_GEDCOM);
+
+    assertThat(lines.get(0)).isEqualTo("0 HEAD");
+    assertThat(lines.get(lines.size() - 1)).isEqualTo("0 TRLR");
+    // A literal @ is doubled in GEDCOM
+    assertThat(lines).containsSequence("0 @O-1@ _OWNR", "1 NAME Fritz /Mayer/", "1 EMAIL fritz.mayer@@gmail.com");
+    assertThat(lines).containsSequence(
+        "0 @H-6@ INDI",
+        "1 NAME Anna",
+        "1 SEX F",
+        "1 BIRT",
+        "2 DATE 17 JUL 2022",
+        "1 NOTE Description 5",
+        "1 _OWNR @O-5@",
+        "1 _MOTH @H-10@",
+        "1 _FATH @H-8@");
+  }
+
+  @Test
+  public void exportingWithoutAcceptedGzipIsNotCompressed() throws Exception {
+    for (String acceptEncoding : new String[] {null, "identity", "br, deflate", "gzip;q=0, *"}) {
+      var request = MockMvcRequestBuilders.get("/export?format=CSV");
+      if (acceptEncoding != null) {
+        request.header(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+      }
+      var started = mockMvc.perform(request)
+          .andExpect(request().asyncStarted())
+          .andReturn();
+      var lines = mockMvc
+          .perform(asyncDispatch(started))
+          .andExpect(status().isOk())
+          .andExpect(content().contentType(ExportEndpoint.TEXT_CSV))
+          .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+          .andExpect(header().stringValues(HttpHeaders.VARY, hasItem(HttpHeaders.ACCEPT_ENCODING)))
+          .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8).lines().toList();
+      assertThat(lines).as("Accept-Encoding: %s", acceptEncoding).hasSize(21);
+      assertThat(lines.get(0)).startsWith("type,id,name");
+    }
+  }
+
+  @Test
+  public void exportingUnknownFormatReturns400() throws Exception {
+    mockMvc
+        .perform(MockMvcRequestBuilders.get("/export?format=XML"))
+        .andExpect(status().isBadRequest());
+  }
+
+  private List<String> export(String format, MediaType contentType) throws Exception {
+    var started = mockMvc
+        .perform(MockMvcRequestBuilders.get("/export?format=" + format).header(HttpHeaders.ACCEPT_ENCODING, "br;q=1.0, gzip;q=0.8"))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    var response = mockMvc
+        .perform(asyncDispatch(started))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(contentType))
+        .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+        .andExpect(header().stringValues(HttpHeaders.VARY, hasItem(HttpHeaders.ACCEPT_ENCODING)))
+        .andReturn().getResponse();
+    return gunzip(response.getContentAsByteArray()).lines().toList();
+  }
+
+  private static String gunzip(byte[] compressed) throws IOException {
+    try (var in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+}
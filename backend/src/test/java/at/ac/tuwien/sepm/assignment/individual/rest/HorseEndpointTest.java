@@ -2,16 +2,29 @@ package at.ac.tuwien.sepm.assignment.individual.rest;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.tuple;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import at.ac.tuwien.sepm.assignment.individual.dto.CommonAncestorDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseDescendantDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseFamilyTreeDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseInbreedingDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseImportDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseImportReportDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseImportRowDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseListDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseRelationshipDto;
 import at.ac.tuwien.sepm.assignment.individual.persistence.DataGeneratorBean;
 import at.ac.tuwien.sepm.assignment.individual.type.Sex;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.jupiter.api.AfterEach;
@@ -19,6 +32,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.web.WebAppConfiguration;
@@ -73,6 +87,69 @@ public class HorseEndpointTest {
         .contains(tuple(-1L, "Wendy"));
   }
 
+  @Test
+  public void searchingWithLimitLinksToNextPage() throws Exception {
+    var response = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get("/horses?limit=9")
+            .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(status().isOk())
+        .andReturn().getResponse();
+    var link = response.getHeader(HttpHeaders.LINK);
+    assertThat(link).startsWith("<http://localhost/horses?limit=9&cursor=").endsWith(">; rel=\"next\"");
+
+    byte[] body = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get(link.substring(1, link.indexOf('>')))
+            .accept(MediaType.APPLICATION_JSON)
+        ).andExpect(status().isOk())
+        .andExpect(header().doesNotExist(HttpHeaders.LINK))
+        .andReturn().getResponse().getContentAsByteArray();
+    List<HorseListDto> lastPage = objectMapper.readerFor(HorseListDto.class).<HorseListDto>readValues(body).readAll();
+    assertThat(lastPage).extracting(HorseListDto::id).containsExactly(-1L);
+  }
+
+  @Test
+  public void streamingHorsesWritesOneJsonLinePerHorse() throws Exception {
+    var started = mockMvc
+        .perform(MockMvcRequestBuilders
+            .get("/horses?sex=FEMALE")
+            .accept(MediaType.APPLICATION_NDJSON)
+        ).andExpect(request().asyncStarted())
+        .andReturn();
+    var response = mockMvc
+        .perform(asyncDispatch(started))
+        .andExpect(status().isOk())
+        .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+        .andReturn().getResponse();
+
+    var lines = response.getContentAsString().lines().toList();
+    assertThat(lines).hasSize(4);
+    List<HorseListDto> horses = new ArrayList<>();
+    for (String line : lines) {
+      horses.add(objectMapper.readValue(line, HorseListDto.class));
+    }
+    assertThat(horses)
+        .extracting(HorseListDto::id)
+        .containsExactly(-6L, -2L, -10L, -1L);
+    assertThat(horses.get(0).father().name()).isEqualTo("Thomas");
+  }
+
+  @Test
+  public void gettingHorsesWithoutAcceptHeaderReturnsJsonArray() throws Exception {
+    mockMvc
+        .perform(MockMvcRequestBuilders
+            .get("/horses")
+        ).andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+    mockMvc
+        .perform(MockMvcRequestBuilders
+            .get("/horses")
+            .accept(MediaType.APPLICATION_JSON, MediaType.TEXT_PLAIN, MediaType.ALL)
+        ).andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+  }
+
   @Test
   public void gettingNonexistentUrlReturns404() throws Exception {
     mockMvc
@@ -126,6 +203,100 @@ public class HorseEndpointTest {
             .contains(tuple(horse.name(), horse.dateOfBirth(), horse.sex()));
   }
 
+  @Test
+  public void importingNdjsonResolvesParentsDefinedInTheImport() throws Exception {
+    var rows = List.of(
+        // The foal comes first, its parents of the import are created before it anyway
+        new HorseImportDto("foal", "Fohlen", null, LocalDate.of(2023, 4, 1), Sex.FEMALE, -1L, null, "mare", null, "stallion"),
+        new HorseImportDto("mare", "Stute", "Daughter of Wendy", LocalDate.of(2018, 5, 2), Sex.FEMALE, null, -1L, null, null, null),
+        new HorseImportDto("stallion", "Hengst", null, LocalDate.of(2017, 6, 3), Sex.MALE, null, null, null, -3L, null));
+    var body = new StringBuilder();
+    for (HorseImportDto row : rows) {
+      body.append(objectMapper.writeValueAsString(row)).append('\n');
+    }
+
+    var report = importHorses(body.toString(), MediaType.APPLICATION_NDJSON_VALUE);
+
+    assertThat(report.created()).isEqualTo(3);
+    assertThat(report.rejected()).isZero();
+    assertThat(report.rows())
+        .extracting(HorseImportRowDto::row, HorseImportRowDto::ref, HorseImportRowDto::errors)
+        .containsExactly(tuple(1, "foal", List.of()), tuple(2, "mare", List.of()), tuple(3, "stallion", List.of()));
+    byte[] foal = mockMvc
+        .perform(MockMvcRequestBuilders.get("/horses/" + report.rows().get(0).id()))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsByteArray();
+    var foalResult = objectMapper.readValue(foal, HorseDetailDto.class);
+    assertThat(foalResult.mother().id()).isEqualTo(report.rows().get(1).id());
+    assertThat(foalResult.mother().mother().name()).isEqualTo("Wendy");
+    assertThat(foalResult.father().name()).isEqualTo("Hengst");
+    assertThat(foalResult.father().father().name()).isEqualTo("Carlo");
+    assertThat(foalResult.owner().id()).isEqualTo(-1L);
+  }
+
+  @Test
+  public void importingCsvCreatesHorses() throws Exception {
+    var csv = """
+        ref,name,description,dateOfBirth,sex,ownerId,motherId,motherRef,fatherId,fatherRef
+        a,Alma,,2015-01-01,FEMALE,,,,,
+        b,Bruno,Son of Alma,2019-02-02,MALE,-2,,a,-3,
+        """;
+
+    var report = importHorses(csv, HorseEndpoint.TEXT_CSV_VALUE);
+
+    assertThat(report.created()).isEqualTo(2);
+    assertThat(report.rows()).allSatisfy(row -> assertThat(row.id()).isNotNull());
+    byte[] body = mockMvc
+        .perform(MockMvcRequestBuilders.get("/horses?name=Bruno"))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsByteArray();
+    List<HorseListDto> horses = objectMapper.readerFor(HorseListDto.class).<HorseListDto>readValues(body).readAll();
+    assertThat(horses)
+        .extracting(HorseListDto::description, horse -> horse.mother().name(), horse -> horse.owner().id())
+        .containsExactly(tuple("Son of Alma", "Alma", -2L));
+  }
+
+  @Test
+  public void importingRejectsInvalidRowsAndTheirDescendants() throws Exception {
+    var csv = """
+        ref,name,dateOfBirth,sex,ownerId,motherId,motherRef,fatherRef
+        nameless,,2015-01-01,FEMALE,,,,
+        child,Kind,2020-01-01,MALE,,,nameless,
+        chicken,Huhn,2016-01-01,FEMALE,,,egg,
+        egg,Ei,2016-01-01,FEMALE,,,chicken,
+        stranger,Fremder,2016-01-01,MALE,999,,,
+        wrongMother,Falsch,2017-01-01,MALE,,-3,,
+        valid,Gut,2016-01-01,MALE,,-1,,
+        valid,Doppelt,2016-01-01,MALE,,,,
+        """;
+
+    var report = importHorses(csv, HorseEndpoint.TEXT_CSV_VALUE);
+
+    assertThat(report.created()).isEqualTo(1);
+    assertThat(report.rejected()).isEqualTo(7);
+    assertThat(report.rows())
+        .extracting(HorseImportRowDto::ref, row -> row.id() != null)
+        .containsExactly(
+            tuple("nameless", false), tuple("child", false), tuple("chicken", false), tuple("egg", false),
+            tuple("stranger", false), tuple("wrongMother", false), tuple("valid", true), tuple("valid", false));
+    assertThat(report.rows().get(0).errors()).contains("Horse name is not given");
+    assertThat(report.rows().get(1).errors()).containsExactly("Mother nameless in row 1 is rejected");
+    assertThat(report.rows().get(2).errors()).containsExactly("Horse is its own ancestor through the references of the import");
+    assertThat(report.rows().get(4).errors()).containsExactly("Given owner does not exist");
+    assertThat(report.rows().get(5).errors()).containsExactly("Mother cannot be Male");
+    assertThat(report.rows().get(7).errors()).containsExactly("Reference valid is already used by row 7");
+  }
+
+  @Test
+  public void importingMalformedNdjsonReturns422() throws Exception {
+    mockMvc
+        .perform(MockMvcRequestBuilders
+            .post("/horses/bulk")
+            .content("{\"name\": \"Juan\"}\n{\"name\": ")
+            .contentType(MediaType.APPLICATION_NDJSON))
+        .andExpect(status().isUnprocessableEntity());
+  }
+
   @Test
   public void gettingExistingUrlReturns200() throws Exception {
     byte[] body = mockMvc
@@ -142,6 +313,94 @@ public class HorseEndpointTest {
             .contains(tuple(-1L, "Wendy", "The famous one!", LocalDate.of(2012, 12, 12), Sex.FEMALE, null));
   }
 
+  @Test
+  public void gettingFamilyTreeIsLimitedToGivenGenerations() throws Exception {
+    byte[] body = mockMvc
+            .perform(MockMvcRequestBuilders
+                    .get("/horses/-6/familytree")
+                    .param("generations", "1")
+            ).andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsByteArray();
+
+    HorseFamilyTreeDto tree = objectMapper.readValue(body, HorseFamilyTreeDto.class);
+
+    assertThat(tree.hasMoreAncestors()).isFalse();
+    assertThat(tree.mother())
+            .extracting(HorseFamilyTreeDto::id, HorseFamilyTreeDto::mother, HorseFamilyTreeDto::father, HorseFamilyTreeDto::hasMoreAncestors)
+            .containsExactly(-10L, null, null, true);
+    assertThat(tree.father())
+            .extracting(HorseFamilyTreeDto::id, HorseFamilyTreeDto::hasMoreAncestors)
+            .containsExactly(-8L, true);
+  }
+
+  @Test
+  public void gettingFamilyTreeWithNegativeGenerationsReturns422() throws Exception {
+    mockMvc
+            .perform(MockMvcRequestBuilders
+                    .get("/horses/-6/familytree")
+                    .param("generations", "-1")
+            ).andExpect(status().isUnprocessableEntity());
+  }
+
+  @Test
+  public void gettingInbreedingCoefficientReturnsIt() throws Exception {
+    byte[] body = mockMvc
+            .perform(MockMvcRequestBuilders
+                    .get("/horses/-8/coi")
+                    .param("generations", "10")
+            ).andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsByteArray();
+
+    HorseInbreedingDto coi = objectMapper.readValue(body, HorseInbreedingDto.class);
+
+    assertThat(coi).isEqualTo(new HorseInbreedingDto(-8, 10, 0.125, 7));
+  }
+
+  @Test
+  public void gettingRelationshipReturnsNearestCommonAncestors() throws Exception {
+    byte[] body = mockMvc
+            .perform(MockMvcRequestBuilders
+                    .get("/horses/-9/relationship/-10")
+            ).andExpect(status().isOk())
+            .andReturn().getResponse().getContentAsByteArray();
+
+    HorseRelationshipDto relationship = objectMapper.readValue(body, HorseRelationshipDto.class);
+
+    assertThat(relationship).isEqualTo(new HorseRelationshipDto(-9, -10, 0.25, List.of(new CommonAncestorDto(-3L, "Carlo", 1, 1))));
+  }
+
+  @Test
+  public void gettingDescendantsReturnsThemByGeneration() throws Exception {
+    var started = mockMvc
+            .perform(MockMvcRequestBuilders
+                    .get("/horses/-3/descendants")
+                    .param("generations", "2")
+            ).andExpect(request().asyncStarted())
+            .andReturn();
+    var response = mockMvc
+            .perform(asyncDispatch(started))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+            .andReturn().getResponse();
+
+    List<HorseDescendantDto> descendants = new ArrayList<>();
+    for (String line : response.getContentAsString().lines().toList()) {
+      descendants.add(objectMapper.readValue(line, HorseDescendantDto.class));
+    }
+
+    assertThat(descendants)
+            .extracting(HorseDescendantDto::id, HorseDescendantDto::generation)
+            .containsExactlyInAnyOrder(tuple(-10L, 1), tuple(-9L, 1), tuple(-4L, 2), tuple(-6L, 2));
+  }
+
+  @Test
+  public void gettingDescendantsOfNonexistentHorseReturns404() throws Exception {
+    mockMvc
+            .perform(MockMvcRequestBuilders
+                    .get("/horses/-15/descendants")
+            ).andExpect(status().isNotFound());
+  }
+
   @Test
   public void changingSexOfHorseWithChildrenReturns409() throws Exception {
     HorseDetailDto horse = new HorseDetailDto(-1L,
@@ -160,6 +419,14 @@ public class HorseEndpointTest {
             .andExpect(status().isConflict());
   }
 
-
-
+  private HorseImportReportDto importHorses(String body, String contentType) throws Exception {
+    byte[] response = mockMvc
+        .perform(MockMvcRequestBuilders
+            .post("/horses/bulk")
+            .content(body)
+            .contentType(contentType))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsByteArray();
+    return objectMapper.readValue(response, HorseImportReportDto.class);
+  }
 }
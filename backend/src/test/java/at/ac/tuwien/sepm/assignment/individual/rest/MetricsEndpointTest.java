@@ -0,0 +1,104 @@
+package at.ac.tuwien.sepm.assignment.individual.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import at.ac.tuwien.sepm.assignment.individual.persistence.DataGeneratorBean;
+import java.sql.SQLException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+@ActiveProfiles({"test", "datagen"}) // enable "test" spring profile during test execution in order to pick up configuration from application-test.yml
+@SpringBootTest
+@EnableWebMvc
+@WebAppConfiguration
+public class MetricsEndpointTest {
+  private static final String HORSE_BY_ID = "{route=\"/horses/{id}\",method=\"GET\",status=\"200\"}";
+
+  @Autowired
+  private WebApplicationContext webAppContext;
+  private MockMvc mockMvc;
+
+  @Autowired
+  FilterRegistrationBean<OncePerRequestFilter> logFilter;
+
+  @Autowired
+  DataGeneratorBean bean;
+
+  @BeforeEach
+  public void setup() throws SQLException {
+    this.mockMvc = MockMvcBuilders.webAppContextSetup(webAppContext)
+        .addFilters(logFilter.getFilter())
+        .build();
+    bean.generateData();
+  }
+
+  @AfterEach
+  public void cleanup() throws SQLException {
+    bean.cleanData();
+  }
+
+  @Test
+  public void requestsAreCountedByRoute() throws Exception {
+    var before = metrics();
+    var bytes = 0L;
+    for (final var id : new int[] {-1, -2}) {
+      bytes += mockMvc.perform(MockMvcRequestBuilders.get("/horses/" + id).accept(MediaType.APPLICATION_JSON))
+          .andExpect(status().isOk())
+          .andReturn().getResponse().getContentAsByteArray().length;
+    }
+
+    var after = metrics();
+    assertThat(value(after, "http_server_requests_seconds_count" + HORSE_BY_ID)
+        - value(before, "http_server_requests_seconds_count" + HORSE_BY_ID)).isEqualTo(2);
+    assertThat(value(after, "http_server_response_size_bytes_sum" + HORSE_BY_ID)
+        - value(before, "http_server_response_size_bytes_sum" + HORSE_BY_ID)).isEqualTo(bytes);
+    assertThat(after).contains("http_server_requests_seconds_percentile{route=\"/horses/{id}\",method=\"GET\",status=\"200\",quantile=\"0.99\"}");
+  }
+
+  @Test
+  public void scrapeIsTheOnlyRequestInFlight() throws Exception {
+    var metrics = metrics();
+    assertThat(value(metrics, "http_server_requests_in_flight{method=\"GET\"}")).isEqualTo(1);
+    assertThat(value(metrics, "http_server_requests_in_flight{method=\"POST\"}")).isZero();
+  }
+
+  @Test
+  public void requestsWithoutHandlerShareOneRoute() throws Exception {
+    mockMvc.perform(MockMvcRequestBuilders.get("/nothing/here/" + System.nanoTime()))
+        .andExpect(status().isNotFound());
+
+    assertThat(metrics())
+        .contains("http_server_requests_seconds_count{route=\"UNMATCHED\",method=\"GET\",status=\"404\"}")
+        .doesNotContain("/nothing/here");
+  }
+
+  private String metrics() throws Exception {
+    return mockMvc.perform(MockMvcRequestBuilders.get("/metrics"))
+        .andExpect(status().isOk())
+        .andExpect(content().contentTypeCompatibleWith(MediaType.TEXT_PLAIN))
+        .andReturn().getResponse().getContentAsString();
+  }
+
+  private static long value(String metrics, String sample) {
+    return metrics.lines()
+        .filter(line -> line.startsWith(sample + " "))
+        .mapToLong(line -> (long) Double.parseDouble(line.substring(sample.length() + 1)))
+        .findFirst()
+        .orElse(0);
+  }
+}
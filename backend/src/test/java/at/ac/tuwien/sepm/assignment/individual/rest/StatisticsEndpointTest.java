@@ -0,0 +1,102 @@
+package at.ac.tuwien.sepm.assignment.individual.rest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import at.ac.tuwien.sepm.assignment.individual.persistence.DataGeneratorBean;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.StreamSupport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+@ActiveProfiles({"test", "datagen"}) // enable "test" spring profile during test execution in order to pick up configuration from application-test.yml
+@SpringBootTest
+@EnableWebMvc
+@WebAppConfiguration
+public class StatisticsEndpointTest {
+
+  @Autowired
+  private WebApplicationContext webAppContext;
+  private MockMvc mockMvc;
+
+  @Autowired
+  ObjectMapper objectMapper;
+
+  @Autowired
+  DataGeneratorBean bean;
+
+  @BeforeEach
+  public void setup() throws SQLException {
+    this.mockMvc = MockMvcBuilders.webAppContextSetup(webAppContext).build();
+    bean.generateData();
+  }
+
+  @AfterEach
+  public void cleanup() throws SQLException {
+    bean.cleanData();
+  }
+
+  @Test
+  public void jdbcStatisticsCountStatementsByShape() throws Exception {
+    var shape = "SELECT horse.* FROM horse_ancestry JOIN horse ON horse.id = horse_ancestry.descendant_id"
+        + " WHERE horse_ancestry.ancestor_id = ? AND horse_ancestry.depth = ?";
+    var before = statement(shape);
+    final var callsBefore = before == null ? 0 : before.get("calls").asLong();
+    final var rowsBefore = before == null ? 0 : before.get("rows").asLong();
+    // Wendy and Carlo have two children each
+    for (final var id : List.of(-1, -3)) {
+      var started = mockMvc.perform(MockMvcRequestBuilders.get("/horses/" + id + "/descendants?generations=1").accept(MediaType.APPLICATION_NDJSON))
+          .andExpect(request().asyncStarted())
+          .andReturn();
+      mockMvc.perform(asyncDispatch(started))
+          .andExpect(status().isOk());
+    }
+
+    var after = statement(shape);
+    assertThat(after).isNotNull();
+    assertThat(after.get("calls").asLong()).isEqualTo(callsBefore + 2);
+    assertThat(after.get("rows").asLong()).isEqualTo(rowsBefore + 4);
+    assertThat(after.get("errors").asLong()).isZero();
+    assertThat(after.get("latency").get("count").asLong()).isEqualTo(after.get("calls").asLong());
+  }
+
+  @Test
+  public void jdbcStatisticsCollapseListsOfParameters() throws Exception {
+    var shapes = StreamSupport.stream(statistics().spliterator(), false)
+        .map(statement -> statement.get("statement").asText())
+        .toList();
+    assertThat(shapes)
+        .isNotEmpty()
+        .noneMatch(statement -> statement.contains("?, ?"));
+  }
+
+  private JsonNode statistics() throws Exception {
+    var body = mockMvc.perform(MockMvcRequestBuilders.get("/statistics/jdbc").accept(MediaType.APPLICATION_JSON))
+        .andExpect(status().isOk())
+        .andReturn().getResponse().getContentAsByteArray();
+    return objectMapper.readTree(body);
+  }
+
+  private JsonNode statement(String shape) throws Exception {
+    return StreamSupport.stream(statistics().spliterator(), false)
+        .filter(statement -> statement.get("statement").asText().equals(shape))
+        .findFirst()
+        .orElse(null);
+  }
+}
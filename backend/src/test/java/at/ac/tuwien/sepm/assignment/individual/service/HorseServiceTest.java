@@ -2,25 +2,39 @@ package at.ac.tuwien.sepm.assignment.individual.service;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.tuple;
+import static org.assertj.core.api.Assertions.within;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import at.ac.tuwien.sepm.assignment.individual.dto.CommonAncestorDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseDescendantDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseImportDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseListDto;
 import at.ac.tuwien.sepm.assignment.individual.dto.HorseSearchDto;
 import at.ac.tuwien.sepm.assignment.individual.exception.ConflictException;
+import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
 import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
 import at.ac.tuwien.sepm.assignment.individual.persistence.DataGeneratorBean;
 import at.ac.tuwien.sepm.assignment.individual.type.Sex;
 
+import com.zaxxer.hikari.HikariDataSource;
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import javax.sql.DataSource;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 
 @ActiveProfiles({"test", "datagen"}) // enable "test" spring profile during test execution in order to pick up configuration from application-test.yml
@@ -33,6 +47,12 @@ public class HorseServiceTest {
   @Autowired
   DataGeneratorBean bean;
 
+  @Autowired
+  JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  DataSource dataSource;
+
   @BeforeEach
   public void setup() throws SQLException {
     bean.generateData();
@@ -82,14 +102,54 @@ public class HorseServiceTest {
   }
 
   @Test
-  public void searchReturnsRightHorse() {
+  public void getByIdReturnsWholePedigree() throws Exception {
+    HorseDetailDto horse = horseService.getById(-6L);
+    assertThat(horse.mother().id()).isEqualTo(-10L);
+    assertThat(horse.father().mother().mother())
+        .extracting(HorseDetailDto::id, HorseDetailDto::name)
+        .containsExactly(-1L, "Wendy");
+    assertThat(horse.father().father().father().father().father().father().id()).isEqualTo(-3L);
+  }
+
+  @Test
+  public void ancestorsMissingFromPedigreeIndexAreFetchedFromDataStore() throws Exception {
+    // Bypassing the DAO, like another instance of the backend or the H2 console, so the pedigree index does not know them
+    jdbcTemplate.update("INSERT INTO horse (id, name, date_of_birth, sex, mother_id) VALUES"
+        + " (-100, 'Hidden Mare', '2010-01-01', 'FEMALE', -1),"
+        + " (-101, 'Hidden Foal', '2015-01-01', 'MALE', -100)");
+    HorseDetailDto horse = horseService.getById(-101L);
+    assertThat(horse.mother().id()).isEqualTo(-100L);
+    assertThat(horse.mother().mother().id()).isEqualTo(-1L);
+
+    var tree = horseService.getFamilyTree(-101L, 2);
+    assertThat(tree.mother().id()).isEqualTo(-100L);
+    assertThat(tree.mother().mother().id()).isEqualTo(-1L);
+  }
+
+  @Test
+  public void movingBirthOfHorseAfterItsChildrenThrowsConflictexception() {
+    HorseDetailDto horse = new HorseDetailDto(-1L,
+            "Wendy",
+            "The famous one!",
+            LocalDate.of(2015, 12, 12),
+            Sex.FEMALE,
+            null,
+            null,
+            null);
+    assertThrows(ConflictException.class,
+            () -> horseService.update(horse));
+  }
+
+  @Test
+  public void searchReturnsRightHorse() throws Exception {
     HorseSearchDto searchParams = new HorseSearchDto("Carlo",
             null,
             null,
             Sex.MALE,
             null,
+            null,
             null);
-    List<HorseListDto> horses = horseService.search(searchParams).toList();
+    List<HorseListDto> horses = horseService.search(searchParams).content();
     assertThat(horses)
             .isNotNull()
             .map(HorseListDto::id, HorseListDto::name, HorseListDto::description, HorseListDto::dateOfBirth,
@@ -97,6 +157,42 @@ public class HorseServiceTest {
             .contains(tuple(-3L, "Carlo", "Description 2", LocalDate.of(2016, 4, 14), Sex.MALE));
   }
 
+  @Test
+  public void searchReturnsParentsWithoutTheirAncestors() throws Exception {
+    HorseSearchDto searchParams = new HorseSearchDto("Anna",
+            null,
+            null,
+            null,
+            null,
+            null,
+            null);
+    List<HorseListDto> horses = horseService.search(searchParams).content();
+    assertThat(horses).hasSize(1);
+    var anna = horses.get(0);
+    assertThat(anna.father())
+            .extracting(HorseDetailDto::id, HorseDetailDto::name, HorseDetailDto::sex, HorseDetailDto::mother, HorseDetailDto::father)
+            .containsExactly(-8L, "Thomas", Sex.MALE, null, null);
+    assertThat(anna.father().owner().id()).isEqualTo(-7L);
+  }
+
+  @Test
+  public void streamedSearchHoldsOnlyOneConnection() throws Exception {
+    var pool = dataSource.unwrap(HikariDataSource.class);
+    List<Connection> others = new ArrayList<>();
+    try {
+      while (others.size() < pool.getMaximumPoolSize() - 1) {
+        others.add(dataSource.getConnection());
+      }
+      try (var horses = horseService.streamSearch(new HorseSearchDto(null, null, null, Sex.FEMALE, null, null, null))) {
+        assertThat(horses.map(HorseListDto::id)).containsExactly(-6L, -2L, -10L, -1L);
+      }
+    } finally {
+      for (Connection connection : others) {
+        connection.close();
+      }
+    }
+  }
+
   @Test
   public void createWithRightParametersReturnsCreatedHorse() throws Exception {
     HorseDetailDto horse = new HorseDetailDto(null,
@@ -114,5 +210,140 @@ public class HorseServiceTest {
             .contains(horse.name(), horse.dateOfBirth(), horse.sex());
   }
 
+  @Test
+  public void createAndDeleteReturnPedigreesOfParents() throws Exception {
+    var mother = horseService.getById(-10L);
+    var father = horseService.getById(-8L);
+    var created = horseService.create(new HorseDetailDto(null, "Juan", null, LocalDate.of(2022, 1, 1), Sex.MALE, null, mother, father));
+    assertThat(created.mother()).isEqualTo(mother);
+    assertThat(created.father()).isEqualTo(father);
+
+    var deleted = horseService.delete(created.id());
+    assertThat(deleted.mother()).isEqualTo(mother);
+    assertThat(deleted.father()).isEqualTo(father);
+  }
+
+  @Test
+  public void foalOfHalfSiblingsHasInbreedingCoefficientOfOneEighth() throws Exception {
+    // Issy and Anderson, the parents of Thomas, are both foals of Wendy
+    var coi = horseService.getInbreedingCoefficient(-8, 10);
+    assertThat(coi.coefficient()).isEqualTo(0.125);
+    assertThat(coi.ancestors()).isEqualTo(7);
+  }
+
+  @Test
+  public void inbreedingCoefficientOnlyCountsCommonAncestorsWithinTheGenerations() throws Exception {
+    // Carlo is the grandfather of Anna on her mother's side, and six generations back on her father's side
+    assertThat(horseService.getInbreedingCoefficient(-6, 6).coefficient()).isEqualTo(1.0 / 128);
+    assertThat(horseService.getInbreedingCoefficient(-6, 5).coefficient()).isZero();
+    assertThat(horseService.getInbreedingCoefficient(-1, 10).coefficient()).isZero();
+  }
+
+  @Test
+  public void inbreedingCoefficientOfUnknownHorseThrowsNotFoundException() {
+    assertThrows(NotFoundException.class, () -> horseService.getInbreedingCoefficient(-99, 10));
+    assertThrows(ValidationException.class, () -> horseService.getInbreedingCoefficient(-6, -1));
+  }
+
+  @Test
+  public void halfSiblingsAreRelatedThroughTheirCommonParent() throws Exception {
+    // Issy and Anderson are both foals of Wendy
+    var relationship = horseService.getRelationship(-2, -5, null);
+    assertThat(relationship.coefficient()).isEqualTo(0.25);
+    assertThat(relationship.nearestCommonAncestors())
+        .containsExactly(new CommonAncestorDto(-1L, "Wendy", 1, 1));
+  }
 
+  @Test
+  public void nearestCommonAncestorIsFewestGenerationsBackFromBoth() throws Exception {
+    // Andreas is five generations back on Anna's father's side, but his father Carlo is Anna's grandfather
+    var relationship = horseService.getRelationship(-6, -9, null);
+    assertThat(relationship.nearestCommonAncestors())
+        .containsExactly(new CommonAncestorDto(-3L, "Carlo", 2, 1));
+    assertThat(relationship.coefficient()).isPositive();
+
+    var withinOneGeneration = horseService.getRelationship(-6, -9, 1);
+    assertThat(withinOneGeneration.nearestCommonAncestors()).isEmpty();
+    assertThat(withinOneGeneration.coefficient()).isZero();
+  }
+
+  @Test
+  public void parentIsCommonAncestorOfItselfAndItsFoal() throws Exception {
+    var relationship = horseService.getRelationship(-6, -8, null);
+    assertThat(relationship.nearestCommonAncestors())
+        .containsExactly(new CommonAncestorDto(-8L, "Thomas", 1, 0));
+    // More than 1/2, as Anna's mother is related to Thomas as well, less inbreeding taken into account
+    assertThat(relationship.coefficient()).isCloseTo((73.0 / 128) / Math.sqrt(129.0 / 128 * 9 / 8), within(1e-12));
+  }
+
+  @Test
+  public void foalsOfParentsCreatedConcurrentlyHaveTheirWholePedigree() throws Exception {
+    var thomas = horseService.getById(-8L);
+    var start = new CountDownLatch(1);
+    var executor = Executors.newFixedThreadPool(2);
+    try {
+      // Imported in batches, which are committed at once and then indexed horse by horse
+      var createParents = executor.submit(() -> {
+        start.await();
+        for (int batch = 0; batch < 5; batch++) {
+          List<HorseImportDto> rows = new ArrayList<>();
+          for (int i = 0; i < 200; i++) {
+            rows.add(new HorseImportDto(null, "Racing Parent " + batch + "." + i, null, LocalDate.of(2022, 1, 1), Sex.FEMALE,
+                null, null, null, -8L, null));
+          }
+          horseService.importAll(rows);
+        }
+        return null;
+      });
+      // Creates a foal of the latest parent and Thomas, as soon as the parent is committed, possibly before the index has it
+      var createChildren = executor.submit(() -> {
+        start.await();
+        List<HorseDetailDto> children = new ArrayList<>();
+        Set<Long> linked = new HashSet<>();
+        while (!createParents.isDone()) {
+          var parent = jdbcTemplate.queryForObject("SELECT MAX(id) FROM horse WHERE name LIKE 'Racing Parent %'", Long.class);
+          if (parent != null && linked.add(parent)) {
+            var mother = horseService.getById(parent);
+            children.add(horseService.create(new HorseDetailDto(null, "Racing Child", null, LocalDate.of(2023, 1, 1), Sex.MALE,
+                null, mother, thomas)));
+          }
+        }
+        return children;
+      });
+      start.countDown();
+      createParents.get();
+      var children = createChildren.get();
+      assertThat(children).isNotEmpty();
+      for (HorseDetailDto child : children) {
+        // Thomas is the father and the grandfather, with an inbreeding coefficient of his own of 1/8
+        assertThat(horseService.getInbreedingCoefficient(child.id(), 10).coefficient()).isEqualTo(9.0 / 32);
+        var mother = child.mother();
+        assertThat(horseService.getRelationship(child.id(), mother.id(), null).nearestCommonAncestors())
+            .containsExactly(new CommonAncestorDto(mother.id(), mother.name(), 1, 0));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void unrelatedHorsesHaveNoCommonAncestors() throws Exception {
+    var relationship = horseService.getRelationship(-1, -3, null);
+    assertThat(relationship.nearestCommonAncestors()).isEmpty();
+    assertThat(relationship.coefficient()).isZero();
+    assertThrows(NotFoundException.class, () -> horseService.getRelationship(-1, -99, null));
+  }
+
+  @Test
+  public void descendantsBeyondTheAncestryWindowAreWalkedGenerationByGeneration() throws Exception {
+    // A foal of Thomas, who is five generations down from Carlo, and of Issy, who is no descendant of Carlo
+    var issy = new HorseDetailDto(-2L, "Issy", null, LocalDate.of(2014, 3, 13), Sex.FEMALE, null, null, null);
+    var thomas = new HorseDetailDto(-8L, "Thomas", null, LocalDate.of(2021, 8, 18), Sex.MALE, null, null, null);
+    var foal = horseService.create(new HorseDetailDto(null, "Zoe", null, LocalDate.of(2023, 5, 5), Sex.FEMALE, null, issy, thomas));
+
+    assertThat(horseService.getDescendants(-3L, null))
+        .extracting(HorseDescendantDto::id, HorseDescendantDto::generation)
+        .containsExactlyInAnyOrder(tuple(-10L, 1), tuple(-9L, 1), tuple(-4L, 2), tuple(-6L, 2), tuple(-7L, 3),
+            tuple(-5L, 4), tuple(-8L, 5), tuple(foal.id(), 6));
+  }
 }
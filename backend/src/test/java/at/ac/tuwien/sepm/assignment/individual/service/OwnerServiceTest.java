@@ -0,0 +1,157 @@
+package at.ac.tuwien.sepm.assignment.individual.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.OwnerCreateDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.OwnerDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.OwnerSearchDto;
+import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
+import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
+import at.ac.tuwien.sepm.assignment.individual.persistence.DataGeneratorBean;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+@ActiveProfiles({"test", "datagen"}) // enable "test" spring profile during test execution in order to pick up configuration from application-test.yml
+@SpringBootTest
+public class OwnerServiceTest {
+
+  @Autowired
+  OwnerService ownerService;
+
+  @Autowired
+  Cache<Long, OwnerDto> ownerCache;
+
+  @Autowired
+  DataGeneratorBean bean;
+
+  @BeforeEach
+  public void setup() throws SQLException {
+    bean.generateData();
+  }
+
+  @AfterEach
+  public void cleanup() throws SQLException {
+    bean.cleanData();
+  }
+
+  @Test
+  public void gettingOwnerAgainHitsTheCache() throws NotFoundException {
+    var before = ownerCache.stats();
+    var first = ownerService.getById(-1);
+    var second = ownerService.getById(-1);
+
+    assertThat(second).isEqualTo(first);
+    var stats = ownerCache.stats().minus(before);
+    assertThat(stats.missCount()).isEqualTo(1);
+    assertThat(stats.hitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void gettingAllByIdOnlyLoadsTheMissingOwners() throws NotFoundException {
+    ownerService.getById(-1);
+    var before = ownerCache.stats();
+
+    var owners = ownerService.getAllById(List.of(-1L, -2L));
+
+    assertThat(owners).containsOnlyKeys(-1L, -2L);
+    assertThat(owners.get(-2L).lastName()).isEqualTo("Hinterberger");
+    CacheStats stats = ownerCache.stats().minus(before);
+    assertThat(stats.hitCount()).isEqualTo(1);
+    assertThat(stats.missCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void missingOwnersAreNotCached() {
+    assertThrows(NotFoundException.class, () -> ownerService.getAllById(List.of(-1L, -999L)));
+    assertThrows(NotFoundException.class, () -> ownerService.getById(-999));
+    assertThat(ownerCache.getIfPresent(-999L)).isNull();
+  }
+
+  @Test
+  public void createdOwnerIsCached() throws Exception {
+    var created = ownerService.create(new OwnerCreateDto("Neu", "Besitzer", null));
+
+    assertThat(ownerCache.getIfPresent(created.id())).isEqualTo(created);
+  }
+
+  @Test
+  public void changingTheDataWithScriptsEmptiesTheCache() throws Exception {
+    ownerService.getById(-1);
+    assertThat(ownerCache.getIfPresent(-1L)).isNotNull();
+
+    bean.cleanData();
+
+    assertThat(ownerCache.getIfPresent(-1L)).isNull();
+  }
+
+  @Test
+  public void createAcceptsPlainAndQuotedEmailAddresses() throws Exception {
+    for (final var email : List.of("fritz.mayer@example.com", "\"fritz mayer\"@example.com", "fritz@[192.168.0.1]", "f+m@localhost")) {
+      assertThat(ownerService.create(new OwnerCreateDto("Fritz", "Mayer", email)).email()).isEqualTo(email);
+    }
+  }
+
+  @Test
+  public void createWithInvalidEmailThrowsValidationException() {
+    for (final var email : List.of("fritz", "fritz@", "@example.com", "fritz..mayer@example.com", "fritz@example.", "fritz mayer@example.com",
+        "\"fritz@example.com", "fritz@[example.com")) {
+      var e = assertThrows(ValidationException.class, () -> ownerService.create(new OwnerCreateDto("Fritz", "Mayer", email)));
+      assertThat(e.errors()).containsExactly("Given email is not a valid pattern");
+    }
+  }
+
+  @Test
+  public void createWithLongInvalidEmailFailsFast() {
+    var email = "a".repeat(100_000) + "!";
+    var e = assertTimeoutPreemptively(Duration.ofSeconds(1),
+        () -> assertThrows(ValidationException.class, () -> ownerService.create(new OwnerCreateDto("Fritz", "Mayer", email))));
+    assertThat(e.errors()).containsExactly("Owner email too long: longer than 255 characters", "Given email is not a valid pattern");
+  }
+
+  @Test
+  public void searchRanksOwnersWithAWordStartingWithTheNameFirst() {
+    var owners = ownerService.search(new OwnerSearchDto("ma", 3)).map(OwnerDto::id).toList();
+
+    assertThat(owners).containsExactly(-3L, -4L, -1L);
+  }
+
+  @Test
+  public void searchIgnoresCaseAndExtraWhitespace() {
+    var owners = ownerService.search(new OwnerSearchDto("  martin   HINTER ", null)).map(OwnerDto::id).toList();
+
+    assertThat(owners).containsExactly(-3L);
+  }
+
+  @Test
+  public void searchFindsNamesContainingTheNameInsideOfAWord() {
+    var owners = ownerService.search(new OwnerSearchDto("mann", 10)).map(OwnerDto::id).toList();
+
+    assertThat(owners).containsExactly(-8L, -6L, -5L, -4L);
+  }
+
+  @Test
+  public void searchFindsNamesContainingATermShorterThanATrigramOnlyAtTheStartOfAWord() {
+    assertThat(ownerService.search(new OwnerSearchDto("ik", 10))).isEmpty();
+    assertThat(ownerService.search(new OwnerSearchDto("mik", 10)).map(OwnerDto::id)).containsExactly(-8L);
+  }
+
+  @Test
+  public void searchFindsCreatedOwnersAndForgetsOwnersDeletedByScripts() throws Exception {
+    var created = ownerService.create(new OwnerCreateDto("Zacharias", "Quast", null));
+
+    assertThat(ownerService.search(new OwnerSearchDto("zacharias q", 5))).containsExactly(created);
+    bean.cleanData();
+    assertThat(ownerService.search(new OwnerSearchDto("uzumaki", 5))).isEmpty();
+  }
+}
@@ -0,0 +1,48 @@
+package at.ac.tuwien.sepm.assignment.individual.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.ExecutorService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+
+@ActiveProfiles({"test", "datagen"}) // enable "test" spring profile during test execution in order to pick up configuration from application-test.yml
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "request-threads=virtual")
+public class VirtualRequestThreadsTest {
+
+  @Autowired
+  ServletWebServerApplicationContext context;
+  @Autowired
+  ExecutorService requestThreads;
+  @Autowired
+  TestRestTemplate restTemplate;
+
+  @Test
+  public void virtualThreadsRunTasks() throws Exception {
+    var executor = VirtualThreads.newThreadPerTaskExecutor("test-");
+    try {
+      var thread = executor.submit(Thread::currentThread).get();
+      assertThat(thread.getName()).isEqualTo("test-0");
+      assertThat(thread.isVirtual()).isTrue();
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void tomcatHandlesRequestsOnVirtualThreads() throws Exception {
+    var tomcat = ((TomcatWebServer) context.getWebServer()).getTomcat();
+    assertThat(tomcat.getConnector().getProtocolHandler().getExecutor()).isSameAs(requestThreads);
+    assertThat(requestThreads.submit(Thread::currentThread).get().isVirtual()).isTrue();
+
+    var response = restTemplate.getForEntity("/horses?limit=5", String.class);
+    assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+    assertThat(response.getBody()).contains("Wendy");
+  }
+}
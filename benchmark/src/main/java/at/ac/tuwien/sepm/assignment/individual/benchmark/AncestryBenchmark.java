@@ -0,0 +1,110 @@
+package at.ac.tuwien.sepm.assignment.individual.benchmark;
+
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseDao;
+import at.ac.tuwien.sepm.assignment.individual.persistence.impl.AncestryWindow;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Lookups in the {@link AncestryWindow} against the recursive queries they replace, within {@code generations} generations:
+ * the ancestors of a horse of the last generation, the descendants of a horse of the middle generation,
+ * and whether two horses of the last generation are related.
+ * The closure only reaches {@link HorseDao#ANCESTRY_WINDOW} generations.
+ * Only the descendants are a lookup of the closure itself, the family tree reads the ancestors with
+ * {@code HorseJdbcDao.SQL_SELECT_WITH_ANCESTORS_IN_CLOSURE}, the other two are the plain queries on the table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AncestryBenchmark {
+  static final String SQL_CLOSURE_ANCESTORS = "SELECT ancestor_id FROM horse_ancestry"
+      + " WHERE descendant_id = ? AND depth BETWEEN 1 AND ? ORDER BY depth, ancestor_id";
+  // Related horses have a common ancestor, including either of them, as every horse is its own ancestor of depth 0.
+  static final String SQL_CLOSURE_RELATED = "SELECT EXISTS (SELECT 1 FROM horse_ancestry a"
+      + " JOIN horse_ancestry b ON b.descendant_id = ? AND b.ancestor_id = a.ancestor_id AND b.depth <= ?"
+      + " WHERE a.descendant_id = ? AND a.depth <= ?)";
+  // UNION only drops a horse reached on several lines, if it is reached in the same generation
+  static final String SQL_RECURSIVE_ANCESTORS = "WITH RECURSIVE line(id, depth) AS ("
+      + "SELECT CAST(? AS BIGINT), 0"
+      + " UNION SELECT parent.id, line.depth + 1 FROM line"
+      + " JOIN horse child ON child.id = line.id"
+      + " JOIN horse parent ON parent.id IN (child.mother_id, child.father_id)"
+      + " WHERE line.depth < ?"
+      + ") SELECT id FROM line WHERE depth > 0 GROUP BY id ORDER BY MIN(depth), id";
+  static final String SQL_RECURSIVE_DESCENDANTS = "WITH RECURSIVE line(id, depth) AS ("
+      + "SELECT CAST(? AS BIGINT), 0"
+      + " UNION SELECT child.id, line.depth + 1 FROM line"
+      + " JOIN horse child ON line.id IN (child.mother_id, child.father_id)"
+      + " WHERE line.depth < ?"
+      + ") SELECT id FROM line WHERE depth > 0 GROUP BY id ORDER BY MIN(depth), id";
+  static final String SQL_RECURSIVE_RELATED = "WITH RECURSIVE line(horse, id, depth) AS ("
+      + "SELECT id, id, 0 FROM horse WHERE id IN (?, ?)"
+      + " UNION SELECT line.horse, parent.id, line.depth + 1 FROM line"
+      + " JOIN horse child ON child.id = line.id"
+      + " JOIN horse parent ON parent.id IN (child.mother_id, child.father_id)"
+      + " WHERE line.depth < ?"
+      + ") SELECT EXISTS (SELECT 1 FROM line a JOIN line b ON a.id = b.id WHERE a.horse = ? AND b.horse = ?)";
+
+  @Param({"2", "5"})
+  public int generations;
+
+  private AncestryWindow closure;
+  private JdbcTemplate jdbcTemplate;
+  private long id;
+  private long ancestor;
+  private long other;
+
+  @Setup
+  public void setup(Backend backend) {
+    closure = backend.bean(AncestryWindow.class);
+    jdbcTemplate = backend.bean(JdbcTemplate.class);
+    id = backend.data.firstHorseOf(Backend.GENERATIONS - 1);
+    other = id + 1;
+    ancestor = backend.data.firstHorseOf(Backend.GENERATIONS / 2);
+  }
+
+  @Benchmark
+  public List<Long> ancestorsByClosure() {
+    return jdbcTemplate.queryForList(SQL_CLOSURE_ANCESTORS, Long.class, id, generations);
+  }
+
+  @Benchmark
+  public List<Long> ancestorsByRecursiveQuery() {
+    return jdbcTemplate.queryForList(SQL_RECURSIVE_ANCESTORS, Long.class, id, generations);
+  }
+
+  @Benchmark
+  public List<Long> descendantsByClosure() {
+    return closure.descendants(ancestor, generations);
+  }
+
+  @Benchmark
+  public List<Long> descendantsByRecursiveQuery() {
+    return jdbcTemplate.queryForList(SQL_RECURSIVE_DESCENDANTS, Long.class, ancestor, generations);
+  }
+
+  @Benchmark
+  public Boolean relatedByClosure() {
+    return jdbcTemplate.queryForObject(SQL_CLOSURE_RELATED, Boolean.class, other, generations, id, generations);
+  }
+
+  @Benchmark
+  public Boolean relatedByRecursiveQuery() {
+    return jdbcTemplate.queryForObject(SQL_RECURSIVE_RELATED, Boolean.class, id, other, generations, id, other);
+  }
+}
@@ -0,0 +1,69 @@
+package at.ac.tuwien.sepm.assignment.individual.benchmark;
+
+import at.ac.tuwien.sepm.assignment.individual.SepmIndividualAssignmentApplication;
+import at.ac.tuwien.sepm.assignment.individual.persistence.DerivedData;
+import at.ac.tuwien.sepm.assignment.individual.persistence.PedigreeGenerator;
+import java.sql.SQLException;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * The backend without its web server, on an in-memory H2 database seeded by the {@link PedigreeGenerator} of the backend.
+ * The size of the data set is set with {@code -p horses=…}, there is one owner per ten horses.
+ */
+@State(Scope.Benchmark)
+public class Backend {
+  // Deep enough for the pedigrees of PedigreeBenchmark
+  public static final int GENERATIONS = 21;
+
+  @Param("10000")
+  public int horses;
+
+  public ConfigurableApplicationContext context;
+  public PedigreeGenerator data;
+
+  @Setup(Level.Trial)
+  public void start() throws SQLException {
+    start(WebApplicationType.NONE);
+  }
+
+  /**
+   * Starts the backend and seeds its database.
+   *
+   * @param type of the web server to start, if any
+   * @param arguments command line arguments, on top of the ones every benchmark uses
+   */
+  public void start(WebApplicationType type, String... arguments) throws SQLException {
+    var common = Stream.of("--spring.datasource.url=jdbc:h2:mem:benchmark;INIT=RUNSCRIPT FROM 'classpath:sql/createSchema.sql'",
+        "--spring.main.banner-mode=off",
+        "--logging.file.name=",
+        "--logging.level.root=WARN",
+        "--logging.level.at.ac.tuwien.sepm.assignment.individual=WARN");
+    context = new SpringApplicationBuilder(SepmIndividualAssignmentApplication.class)
+        .web(type)
+        // Command line arguments take precedence over the application.yml of the backend
+        .run(Stream.concat(common, Stream.of(arguments)).toArray(String[]::new));
+    data = new PedigreeGenerator(horses / 10, horses, GENERATIONS, 42);
+    data.generate(context.getBean(DataSource.class));
+    // The data has been inserted behind the back of the DAOs
+    context.getBeansOfType(DerivedData.class).values().forEach(DerivedData::rebuild);
+  }
+
+  @TearDown(Level.Trial)
+  public void stop() {
+    context.close();
+  }
+
+  public <T> T bean(Class<T> type) {
+    return context.getBean(type);
+  }
+}
@@ -0,0 +1,60 @@
+package at.ac.tuwien.sepm.assignment.individual.benchmark;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseListDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.OwnerDto;
+import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
+import at.ac.tuwien.sepm.assignment.individual.mapper.HorseMapper;
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link HorseMapper#entityToListDto(Horse, Map, HorseDetailDto, HorseDetailDto)} on its own, without any data store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HorseMapperBenchmark {
+  private HorseMapper mapper;
+  private Horse horse;
+  private Map<Long, OwnerDto> owners;
+  private HorseDetailDto mother;
+  private HorseDetailDto father;
+
+  @Setup
+  public void setup() {
+    mapper = new HorseMapper();
+    horse = new Horse()
+        .setId(3L)
+        .setName("Belcar")
+        .setDescription("calm brown mare loves apples")
+        .setDateOfBirth(LocalDate.of(2015, 5, 1))
+        .setSex(Sex.FEMALE)
+        .setOwnerId(1L)
+        .setMotherId(1L)
+        .setFatherId(2L);
+    owners = Map.of(1L, new OwnerDto(1L, "Anna", "Huber", "anna.huber@example.com"));
+    mother = new HorseDetailDto(1L, "Lilmo", null, LocalDate.of(2010, 1, 1), Sex.FEMALE, null, null, null);
+    father = new HorseDetailDto(2L, "Dorgol", null, LocalDate.of(2009, 1, 1), Sex.MALE, null, null, null);
+  }
+
+  @Benchmark
+  public HorseListDto entityToListDto() {
+    return mapper.entityToListDto(horse, owners, mother, father);
+  }
+}
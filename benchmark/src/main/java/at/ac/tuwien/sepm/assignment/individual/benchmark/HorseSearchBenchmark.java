@@ -0,0 +1,61 @@
+package at.ac.tuwien.sepm.assignment.individual.benchmark;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseSearchDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.PageDto;
+import at.ac.tuwien.sepm.assignment.individual.entity.Horse;
+import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
+import at.ac.tuwien.sepm.assignment.individual.persistence.HorseDao;
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link HorseDao#search(HorseSearchDto)} for every combination of filters.
+ * {@code filters} is a bit set: 1 name, 2 description, 4 born before, 8 sex, 16 owner name.
+ * {@code limit} 0 means no limit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HorseSearchBenchmark {
+  @Param({"0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15",
+      "16", "17", "18", "19", "20", "21", "22", "23", "24", "25", "26", "27", "28", "29", "30", "31"})
+  public int filters;
+  @Param("50")
+  public int limit;
+
+  private HorseDao dao;
+  private HorseSearchDto search;
+
+  @Setup
+  public void setup(Backend backend) {
+    dao = backend.bean(HorseDao.class);
+    search = new HorseSearchDto(
+        (filters & 1) != 0 ? "bel" : null,
+        (filters & 2) != 0 ? "apples" : null,
+        (filters & 4) != 0 ? LocalDate.of(1990, 1, 1) : null,
+        (filters & 8) != 0 ? Sex.FEMALE : null,
+        (filters & 16) != 0 ? "berg" : null,
+        limit > 0 ? limit : null,
+        null);
+  }
+
+  @Benchmark
+  public PageDto<Horse> search() throws ValidationException {
+    return dao.search(search);
+  }
+}
@@ -0,0 +1,92 @@
+package at.ac.tuwien.sepm.assignment.individual.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+
+/**
+ * {@code GET /horses} and {@code GET /horses/{id}} over HTTP, with many clients at once,
+ * on the platform threads of Tomcat or on virtual threads, as set by {@code request-threads} of the backend.
+ * <p>
+ * Every JMH thread is a client, that sends its next request once it has the response to the last one.
+ * The throughput mode gives the requests per second, the sample time mode their latency percentiles.
+ * {@code virtual} needs the backend installed from a Java 21 build, and the benchmark to run on Java 21 as well.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(256)
+@Fork(1)
+public class HttpLoadBenchmark {
+  @Param({"platform", "virtual"})
+  public String requestThreads;
+
+  @Param("10000")
+  public int horses;
+
+  private final Backend backend = new Backend();
+  private HttpClient client;
+  private HttpRequest search;
+  private HttpRequest getById;
+
+  @Setup(Level.Trial)
+  public void start() throws SQLException {
+    backend.horses = horses;
+    backend.start(WebApplicationType.SERVLET,
+        "--server.port=0",
+        "--request-threads=" + requestThreads,
+        // The access log would fill the disk
+        "--logging.level.access=OFF");
+    var port = ((WebServerApplicationContext) backend.context).getWebServer().getPort();
+    var base = "http://localhost:" + port + "/horses";
+    client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    search = HttpRequest.newBuilder(URI.create(base + "?name=a&limit=20")).build();
+    getById = HttpRequest.newBuilder(URI.create(base + "/" + backend.data.firstHorseOf(5))).build();
+  }
+
+  @TearDown(Level.Trial)
+  public void stop() {
+    backend.stop();
+  }
+
+  @Benchmark
+  public String searchHorses() throws IOException, InterruptedException {
+    return send(search);
+  }
+
+  @Benchmark
+  public String getById() throws IOException, InterruptedException {
+    return send(getById);
+  }
+
+  private String send(HttpRequest request) throws IOException, InterruptedException {
+    var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    if (response.statusCode() != 200) {
+      throw new IllegalStateException(request.uri() + " returned " + response.statusCode());
+    }
+    return response.body();
+  }
+}
@@ -0,0 +1,62 @@
+package at.ac.tuwien.sepm.assignment.individual.benchmark;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.OwnerDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.OwnerSearchDto;
+import at.ac.tuwien.sepm.assignment.individual.persistence.impl.OwnerNameIndex;
+import at.ac.tuwien.sepm.assignment.individual.service.OwnerService;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * {@code OwnerServiceImpl.search} for the autocompletion of the owner of a horse, answered by the {@link OwnerNameIndex},
+ * against the {@code LIKE} query it replaced.
+ * The {@code term} is the start of many names ({@code gr}), of one last name ({@code eder}), or of none ({@code xyz}),
+ * so the last one falls back to the owners listed for its rarest trigram, of which there are none.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OwnerSearchBenchmark {
+  static final String SQL_LIKE_SEARCH = "SELECT * FROM owner"
+      + " WHERE UPPER(first_name||' '||last_name) like UPPER('%'||COALESCE(?, '')||'%') LIMIT ?";
+  // As many owners as the frontend asks for while typing
+  private static final int MAX_AMOUNT = 5;
+
+  @Param({"gr", "eder", "xyz"})
+  public String term;
+
+  private OwnerService service;
+  private JdbcTemplate jdbcTemplate;
+
+  @Setup
+  public void setup(Backend backend) {
+    service = backend.bean(OwnerService.class);
+    jdbcTemplate = backend.bean(JdbcTemplate.class);
+  }
+
+  @Benchmark
+  public List<OwnerDto> searchByIndex() {
+    return service.search(new OwnerSearchDto(term, MAX_AMOUNT)).toList();
+  }
+
+  @Benchmark
+  public List<Map<String, Object>> searchByLikeQuery() {
+    return jdbcTemplate.queryForList(SQL_LIKE_SEARCH, term, MAX_AMOUNT);
+  }
+}
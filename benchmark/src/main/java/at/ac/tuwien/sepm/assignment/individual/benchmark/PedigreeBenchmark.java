@@ -0,0 +1,61 @@
+package at.ac.tuwien.sepm.assignment.individual.benchmark;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseFamilyTreeDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseInbreedingDto;
+import at.ac.tuwien.sepm.assignment.individual.exception.NotFoundException;
+import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
+import at.ac.tuwien.sepm.assignment.individual.service.HorseService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link HorseService#getById(long)}, which loads the whole pedigree, for horses with pedigrees of different depth,
+ * and {@link HorseService#getFamilyTree(long, int)} and {@link HorseService#getInbreedingCoefficient(long, int)}
+ * over all generations of these pedigrees.
+ * Family trees of up to 5 generations are looked up in the ancestry window, deeper ones in the pedigree index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PedigreeBenchmark {
+  @Param({"5", "10", "20"})
+  public int generations;
+
+  private HorseService service;
+  private long id;
+
+  @Setup
+  public void setup(Backend backend) {
+    service = backend.bean(HorseService.class);
+    id = backend.data.firstHorseOf(generations);
+  }
+
+  @Benchmark
+  public HorseDetailDto getById() throws NotFoundException {
+    return service.getById(id);
+  }
+
+  @Benchmark
+  public HorseFamilyTreeDto getFamilyTree() throws NotFoundException, ValidationException {
+    return service.getFamilyTree(id, generations);
+  }
+
+  @Benchmark
+  public HorseInbreedingDto getInbreedingCoefficient() throws NotFoundException, ValidationException {
+    return service.getInbreedingCoefficient(id, generations);
+  }
+}
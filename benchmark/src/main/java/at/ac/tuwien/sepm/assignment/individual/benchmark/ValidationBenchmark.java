@@ -0,0 +1,84 @@
+package at.ac.tuwien.sepm.assignment.individual.benchmark;
+
+import at.ac.tuwien.sepm.assignment.individual.dto.HorseDetailDto;
+import at.ac.tuwien.sepm.assignment.individual.dto.OwnerCreateDto;
+import at.ac.tuwien.sepm.assignment.individual.exception.ValidationException;
+import at.ac.tuwien.sepm.assignment.individual.service.impl.HorseValidator;
+import at.ac.tuwien.sepm.assignment.individual.service.impl.OwnerValidator;
+import at.ac.tuwien.sepm.assignment.individual.type.Sex;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The validators on their own, without any data store.
+ * {@code legacyOwner} is the validation owners had before the rule sets, to compare {@code owner} with,
+ * {@code horseOneByOne} validates a batch the way the bulk import did before {@link HorseValidator#validateAllForCreate(List)}.
+ * Every tenth horse of a batch is invalid.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+  @Param("1000")
+  public int batch;
+
+  private OwnerValidator ownerValidator;
+  private HorseValidator horseValidator;
+  private OwnerCreateDto owner;
+  private List<HorseDetailDto> horses;
+
+  @Setup
+  public void setup() {
+    ownerValidator = new OwnerValidator();
+    horseValidator = new HorseValidator();
+    owner = new OwnerCreateDto("Greta", "Steiner", "greta.steiner@example.com");
+    horses = new ArrayList<>(batch);
+    for (int i = 0; i < batch; i++) {
+      horses.add(new HorseDetailDto(null, i % 10 == 9 ? " " : "Horse " + i, "calm brown mare loves apples",
+          LocalDate.of(2015, 5, 1), Sex.FEMALE, null, null, null));
+    }
+  }
+
+  @Benchmark
+  public void owner() throws ValidationException {
+    ownerValidator.validateForCreate(owner);
+  }
+
+  @Benchmark
+  public void legacyOwner() throws ValidationException {
+    LegacyOwnerValidation.validateForCreate(owner);
+  }
+
+  @Benchmark
+  public List<List<String>> horseBatch() {
+    return horseValidator.validateAllForCreate(horses);
+  }
+
+  @Benchmark
+  public void horseOneByOne(Blackhole blackhole) {
+    for (final var horse : horses) {
+      try {
+        horseValidator.validateForCreate(horse);
+      } catch (ValidationException e) {
+        blackhole.consume(e.errors());
+      }
+    }
+  }
+}
@@ -40,9 +40,8 @@ export class FamilyTreeComponent implements OnInit {
     this.route.params.subscribe(data => {
       horseId = data.id;
     });
-    this.service.getById(horseId).subscribe(data =>{
-      this.horse = data;
-    });
+    this.horse.id = horseId;
+    this.loadTree();
   }
 
   load(){
@@ -52,6 +51,21 @@ export class FamilyTreeComponent implements OnInit {
     } else {
       this.numberOfGenerations = this.tempNumber;
     }
+    this.loadTree();
+  }
+
+  private loadTree(): void {
+    if (this.horse.id === undefined) {
+      return;
+    }
+    this.service.getFamilyTree(this.horse.id, this.numberOfGenerations).subscribe({
+      next: data => {
+        this.horse = data;
+      },
+      error: err => {
+        this.notification.error('Loading family tree failed', err);
+      }
+    });
   }
   delete(id: number){
     return this.service.delete(id).subscribe({
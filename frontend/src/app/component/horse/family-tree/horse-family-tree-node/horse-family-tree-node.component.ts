@@ -32,6 +32,19 @@ export class HorseFamilyTreeNodeComponent {
   hideParents(): void {
     this.hide = !this.hide;
   }
+  expandParents(): void {
+    if (this.horse.id === undefined) {
+      return;
+    }
+    this.service.getFamilyTree(this.horse.id, Math.max(this.generations, 1)).subscribe({
+      next: data => {
+        this.horse = data;
+      },
+      error: err => {
+        this.notification.error('Loading ancestors failed', err);
+      }
+    });
+  }
   delete(id: number){
     return this.service.delete(id).subscribe({
       next: () => {
@@ -10,6 +10,7 @@ export interface Horse {
   owner?: Owner;
   mother?: Horse;
   father?: Horse;
+  hasMoreAncestors?: boolean;
 }
 
 
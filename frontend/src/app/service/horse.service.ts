@@ -51,6 +51,21 @@ export class HorseService {
       baseUri + '/' + id);
   }
 
+  /**
+   * Get the family tree of a horse, limited to a number of generations of ancestors.
+   * Horses at the limit, that have further ancestors, are marked with {@code hasMoreAncestors}.
+   *
+   * @param id the id of the horse to get the family tree of
+   * @param generations the number of generations of ancestors to load
+   * @return an Observable for the family tree
+   */
+  getFamilyTree(id: number, generations: number): Observable<Horse> {
+    const params = new HttpParams()
+      .set('generations', generations);
+    return this.http.get<Horse>(
+      baseUri + '/' + id + '/familytree', { params });
+  }
+
   delete(id: number){
     return this.http.delete<Horse>(
       baseUri + '/' + id